@@ -0,0 +1,39 @@
+/*
+ * Benchmarks for drawing circles.
+ */
+package turtle.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import turtle.Turtle;
+
+/**
+ * Measures {@link Turtle#circle(double)} and
+ * {@link Turtle#circle(double, double)} at several radii.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CircleBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    double radius;
+
+    @Benchmark
+    public void circle(HeadlessTurtle state) {
+        state.get().circle(radius);
+    }
+
+    @Benchmark
+    public void arc(HeadlessTurtle state) {
+        state.get().circle(radius, 45);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Benchmarks for looking up colors.
+ */
+package turtle.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import turtle.Turtle;
+
+/**
+ * Measures the cost of turning color names and values into colors, through
+ * {@link Turtle#penColor(String)} and
+ * {@link Turtle#penColor(double, double, double)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColorBenchmark {
+    @Param({"red", "orange", "lightgoldenrodyellow", "#ff8000"})
+    String name;
+
+    @Benchmark
+    public void penColorName(HeadlessTurtle state) {
+        state.get().penColor(name);
+    }
+
+    @Benchmark
+    public void penColorValues(HeadlessTurtle state) {
+        state.get().penColor(1, 0.5, 0);
+    }
+}
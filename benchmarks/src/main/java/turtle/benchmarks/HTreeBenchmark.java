@@ -0,0 +1,81 @@
+/*
+ * Benchmarks for drawing an H-tree.
+ */
+package turtle.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import turtle.Turtle;
+
+/**
+ * Measures drawing a complete H-tree, as in the {@code HTree} demo, at
+ * several recursion depths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HTreeBenchmark {
+    @Param({"2", "4", "6", "8"})
+    int depth;
+
+    @Benchmark
+    public int hTree(HeadlessTurtle state) {
+        Turtle turtle = state.fresh();
+        drawHTree(turtle, 200, depth);
+        return turtle.getCommandBuffer().size();
+    }
+
+    /**
+     * Draws an H-tree; the same drawing as the {@code HTree} demo.
+     *
+     * @param turtle The Turtle that should draw the tree.
+     * @param length The length of the tree's crossbar.
+     * @param depth The recursion depth.
+     */
+    private static void drawHTree(Turtle turtle, double length, int depth) {
+        if(depth > 0) {
+            turtle.forward(length / 2);
+            turtle.left(90);
+            turtle.forward(length / 2);
+            turtle.right(90);
+
+            drawHTree(turtle, length / 2, depth - 1);
+
+            turtle.right(90);
+            turtle.forward(length);
+            turtle.left(90);
+
+            drawHTree(turtle, length / 2, depth - 1);
+
+            turtle.left(90);
+            turtle.forward(length / 2);
+            turtle.left(90);
+            turtle.forward(length);
+            turtle.right(90);
+            turtle.forward(length / 2);
+            turtle.right(90);
+
+            drawHTree(turtle, length / 2, depth - 1);
+
+            turtle.right(90);
+            turtle.forward(length);
+            turtle.left(90);
+
+            drawHTree(turtle, length / 2, depth - 1);
+
+            turtle.left(90);
+            turtle.forward(length / 2);
+            turtle.right(90);
+            turtle.forward(length / 2);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * The Turtle used by the benchmarks.
+ */
+package turtle.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import turtle.Turtle;
+
+/**
+ * A headless {@link Turtle} for a single benchmark thread. The benchmarks
+ * measure the Turtle itself rather than JavaFX, so the Turtle only records
+ * its commands; the recording is discarded every so often to keep memory
+ * bounded during long measurement runs.
+ */
+@State(Scope.Thread)
+public class HeadlessTurtle {
+    /**
+     * The number of recorded commands after which the recording is
+     * discarded.
+     */
+    private static final int MAX_COMMANDS = 1 << 20;
+
+    /**
+     * The Turtle being benchmarked.
+     */
+    Turtle turtle;
+
+    /**
+     * Creates the headless Turtle.
+     */
+    @Setup
+    public void setup() {
+        turtle = new Turtle();
+        turtle.headless(true);
+    }
+
+    /**
+     * Returns the Turtle, discarding its recording if it has grown too
+     * large.
+     *
+     * @return The Turtle.
+     */
+    Turtle get() {
+        if(turtle.getCommandBuffer().size() > MAX_COMMANDS) {
+            turtle.getCommandBuffer().clear();
+        }
+        return turtle;
+    }
+
+    /**
+     * Returns the Turtle with an empty recording, for benchmarks that draw
+     * a complete picture in each operation.
+     *
+     * @return The Turtle.
+     */
+    Turtle fresh() {
+        turtle.getCommandBuffer().clear();
+        return turtle;
+    }
+}
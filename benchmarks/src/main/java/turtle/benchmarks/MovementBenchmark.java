@@ -0,0 +1,47 @@
+/*
+ * Benchmarks for the Turtle's basic movement.
+ */
+package turtle.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+import turtle.Turtle;
+
+/**
+ * Measures the raw throughput of {@link Turtle#forward(double)} and
+ * {@link Turtle#left(double)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovementBenchmark {
+    @Benchmark
+    public void forward(HeadlessTurtle state) {
+        state.get().forward(10);
+    }
+
+    @Benchmark
+    public void left(HeadlessTurtle state) {
+        state.get().left(10);
+    }
+
+    @Benchmark
+    public void forwardLeft(HeadlessTurtle state) {
+        Turtle turtle = state.get();
+        turtle.forward(10);
+        turtle.left(91);
+    }
+
+    @Benchmark
+    public void forwardPenUp(HeadlessTurtle state) {
+        Turtle turtle = state.get();
+        turtle.penUp();
+        turtle.forward(10);
+        turtle.left(91);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Benchmarks for moving the Turtle to absolute positions.
+ */
+package turtle.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import turtle.Turtle;
+
+/**
+ * Measures {@link Turtle#setPosition(double, double)} with and without a
+ * fill in progress. A headless Turtle builds the outline of a fill just as
+ * a displayed one does, so while filling each move also adds its point to
+ * the outline. The fill is ended and begun again, and the recording
+ * discarded, every so often to keep memory bounded during long measurement
+ * runs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SetPositionBenchmark {
+    /**
+     * The number of moves after which the fill is begun again and the
+     * recording discarded.
+     */
+    private static final int MAX_MOVES = 1 << 20;
+
+    /**
+     * True if the Turtle is filling while it moves.
+     */
+    @Param({"false", "true"})
+    boolean filling;
+
+    /**
+     * The Turtle being benchmarked.
+     */
+    private Turtle turtle;
+
+    /**
+     * The number of positions visited so far.
+     */
+    private int step;
+
+    @Setup
+    public void setup() {
+        turtle = new Turtle();
+        turtle.headless(true);
+        if(filling) {
+            turtle.beginFill();
+        }
+    }
+
+    @Benchmark
+    public void setPosition() {
+        step++;
+        if(step % MAX_MOVES == 0) {
+            if(filling) {
+                turtle.endFill();
+                turtle.beginFill();
+            }
+            turtle.getCommandBuffer().clear();
+        }
+        turtle.setPosition(step & 0xff, (step >> 8) & 0xff);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Benchmarks for the time it takes a program to draw its first line.
+ */
+package turtle.benchmarks;
+
+import javafx.application.Platform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import turtle.Turtle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from a program first using the Turtle until its first
+ * line is on the screen, with and without starting the JavaFX toolkit early
+ * (-Dturtle.prewarm=true), for programs that do some setup of their own
+ * before they draw. The toolkit starts only once per JVM, so every
+ * measurement is a single shot in a fresh fork. Requires a display.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"false", "true"})
+    boolean prewarm;
+
+    /**
+     * The amount of work that the program does before it draws, in
+     * {@link Blackhole#consumeCPU(long)} tokens.
+     */
+    @Param({"0", "50000000"})
+    long setup;
+
+    /**
+     * Requests an early start, if measured, before the Turtle class is
+     * loaded.
+     */
+    @Setup(Level.Trial)
+    public void configure() {
+        System.setProperty("turtle.prewarm", Boolean.toString(prewarm));
+    }
+
+    @Benchmark
+    public void firstLine() {
+        // loading the Turtle class starts the toolkit early, if requested
+        Turtle turtle = Turtle.Turtle;
+        Blackhole.consumeCPU(setup);
+        turtle.speed(Turtle.SPEED_FASTEST);
+        turtle.forward(100);
+        turtle.flush();
+    }
+
+    /**
+     * Closes the world's window so that the fork can exit.
+     */
+    @TearDown(Level.Trial)
+    public void exit() {
+        Platform.exit();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Benchmarks for drawing nested triangles.
+ */
+package turtle.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import turtle.Turtle;
+
+/**
+ * Measures drawing the nested triangles of the {@code Triangles} demo at
+ * several recursion depths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrianglesBenchmark {
+    @Param({"3", "6", "9"})
+    int depth;
+
+    @Benchmark
+    public int triangles(HeadlessTurtle state) {
+        Turtle turtle = state.fresh();
+        triangles(turtle, depth, 300);
+        return turtle.getCommandBuffer().size();
+    }
+
+    /**
+     * Draws a number of concentric triangles; the same drawing as the
+     * {@code Triangles} demo, without its progress output.
+     *
+     * @param turtle The Turtle that should draw the triangles.
+     * @param depth The recursion depth.
+     * @param size The size of the legs of the next triangle.
+     */
+    private static void triangles(Turtle turtle, int depth, int size) {
+        if(depth > 0) {
+            turtle.down();
+            turtle.forward(size);
+            turtle.left(120);
+            turtle.forward(size);
+            turtle.left(120);
+            turtle.forward(size);
+            turtle.left(120);
+            turtle.up();
+            turtle.forward(size / 2);
+            turtle.left(60);
+            triangles(turtle, depth - 1, size / 2);
+            turtle.right(60);
+            turtle.back(size / 2);
+        }
+    }
+}
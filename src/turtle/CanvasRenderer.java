@@ -0,0 +1,1050 @@
+/*
+ * Renders a Turtle's drawing onto a canvas.
+ */
+package turtle;
+
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Arc;
+import javafx.scene.shape.ArcType;
+import javafx.scene.shape.FillRule;
+import javafx.scene.shape.Line;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.Polyline;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.NonInvertibleTransformException;
+import javafx.scene.transform.Transform;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Renderer} that rasterizes lines, fills and text onto a
+ * {@link Canvas} so that the size of the scene graph does not grow with the
+ * size of the drawing. Everything rasterized is also kept in a compact
+ * history, in primitive arrays indexed by location, costing a few dozen
+ * bytes for a line rather than a node, so that what is visible can be
+ * rasterized again when the view changes. The history is bounded: once it
+ * holds {@link History#MAX_ITEMS} items or {@link History#MAX_OPERANDS}
+ * numbers, it is replaced by a single image of the canvas as it is shown,
+ * so memory stays flat however long the drawing grows, at the cost of what
+ * was outside the screen at that moment and of detail beyond the screen's
+ * resolution.
+ *
+ * Anything drawn while a Turtle is filling must end up on top of the fill,
+ * which is not known until the fill ends. Until then the fill's placeholder
+ * and everything drawn after it are kept as live nodes above the canvas, in
+ * order, and they are rasterized as soon as every fill before them has
+ * ended. A fill's outline is traced straight onto the canvas; a JavaFX
+ * path is made for it only if it must be shown live because an earlier
+ * fill has not ended.
+ *
+ * The canvas itself stays fixed on the screen, at the screen's size: the
+ * inverse of the layer's transform is applied to it, and the layer's
+ * transform to its graphics context instead. When the world coordinates or
+ * the size of the screen change, the canvas is cleared and the items of the
+ * history that may be visible are found in the index and rasterized again,
+ * in time proportional to what is visible; lines that continue each other
+ * are joined into single strokes without the vertices that fall within a
+ * pixel of each other, so a zoomed out drawing costs no more than the
+ * pixels it covers. The deferred nodes, which are still in the drawing's
+ * coordinates, simply follow the new transform until they are rasterized.
+ * Lines and arcs that lie entirely outside the canvas are kept in the
+ * history but not rasterized.
+ */
+class CanvasRenderer implements Renderer {
+    /**
+     * The canvas onto which the drawing is rasterized.
+     */
+    private final Canvas canvas;
+
+    /**
+     * The canvas's graphics context.
+     */
+    private final GraphicsContext graphics;
+
+    /**
+     * Holds the placeholders of the fills that have not yet been rasterized
+     * and everything drawn after them, in order.
+     */
+    private final Group deferred;
+
+    /**
+     * The group containing the canvas and the deferred nodes.
+     */
+    private final Group layer;
+
+    /**
+     * The fills that have ended but have not yet been rasterized, by their
+     * placeholders.
+     */
+    private final Map<Group, FinishedFill> finished;
+
+    /**
+     * Everything rasterized onto the canvas, in order.
+     */
+    private final History history;
+
+    /**
+     * The transform from the drawing's coordinates to the screen's under
+     * which the canvas was rasterized; null until the view is first set.
+     */
+    private Transform shown;
+
+    /**
+     * The visible region of the canvas in the drawing's coordinates.
+     */
+    private Bounds visible;
+
+    /**
+     * The color of the stroke being built while the history is rasterized
+     * again; null if there is none.
+     */
+    private Color strokeColor;
+
+    /**
+     * The width of the stroke being built.
+     */
+    private double strokeWidth;
+
+    /**
+     * The x coordinate of the last point kept in the stroke being built.
+     */
+    private double strokeX;
+
+    /**
+     * The y coordinate of the last point kept in the stroke being built.
+     */
+    private double strokeY;
+
+    /**
+     * The x coordinate of the end of the stroke being built.
+     */
+    private double strokeEndX;
+
+    /**
+     * The y coordinate of the end of the stroke being built.
+     */
+    private double strokeEndY;
+
+    /**
+     * Creates a new canvas renderer with a canvas of the specified size.
+     *
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     */
+    CanvasRenderer(double width, double height) {
+        canvas = new Canvas(width, height);
+        graphics = canvas.getGraphicsContext2D();
+        deferred = new Group();
+        finished = new IdentityHashMap<>();
+        layer = new Group(canvas, deferred);
+        history = new History();
+        visible = new BoundingBox(0, 0, width, height);
+    }
+
+    @Override
+    public Node getLayer() {
+        return layer;
+    }
+
+    @Override
+    public void line(double startX, double startY, double endX, double endY,
+                     Color color, double width) {
+        if(isDeferring()) {
+            Line line = new Line(startX, startY, endX, endY);
+            line.setStroke(color);
+            line.setStrokeWidth(width);
+            deferred.getChildren().add(line);
+        }
+        else {
+            history.line(startX, startY, endX, endY, color, width);
+            rasterizeNew();
+        }
+    }
+
+    @Override
+    public void polyline(double[] points, int count, Color color,
+                         double width) {
+        if(isDeferring()) {
+            Polyline polyline = new Polyline(
+                    Arrays.copyOf(points, count * 2));
+            polyline.setStroke(color);
+            polyline.setStrokeWidth(width);
+            deferred.getChildren().add(polyline);
+        }
+        else {
+            history.polyline(points, count, color, width);
+            rasterizeNew();
+        }
+    }
+
+    @Override
+    public void arc(double centerX, double centerY, double radius,
+                    double startAngle, double length, Color color,
+                    double width) {
+        if(isDeferring()) {
+            Arc arc = new Arc(centerX, centerY, radius, radius, startAngle,
+                    length);
+            arc.setType(ArcType.OPEN);
+            arc.setFill(null);
+            arc.setStroke(color);
+            arc.setStrokeWidth(width);
+            deferred.getChildren().add(arc);
+        }
+        else {
+            history.arc(centerX, centerY, radius, startAngle, length, color,
+                    width);
+            rasterizeNew();
+        }
+    }
+
+    @Override
+    public void image(Image image, Transform transform) {
+        if(isDeferring()) {
+            ImageView view = new ImageView(image);
+            view.getTransforms().add(transform);
+            deferred.getChildren().add(view);
+        }
+        else {
+            history.image(image, transform);
+            rasterizeNew();
+        }
+    }
+
+    @Override
+    public void view(Transform toScreen, double width, double height) {
+        if(toScreen == shown && width == canvas.getWidth() &&
+                height == canvas.getHeight()) {
+            return;
+        }
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        try {
+            canvas.getTransforms().setAll(toScreen.createInverse());
+            visible = toScreen.inverseTransform(canvas.getBoundsInLocal());
+        } catch (NonInvertibleTransformException e) {
+            // a degenerate view shows nothing
+            visible = new BoundingBox(0, 0, -1, -1);
+        }
+        graphics.setTransform(new Affine());
+        graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        graphics.setTransform(new Affine(toScreen));
+        shown = toScreen;
+
+        // rasterize what is visible again at the new level of detail
+        if(!visible.isEmpty()) {
+            double pixel = 1 / Math.max(Math.abs(toScreen.getMxx()),
+                    Math.abs(toScreen.getMyy()));
+            history.redraw(this, visible.getMinX(), visible.getMinY(),
+                    visible.getMaxX(), visible.getMaxY(), pixel);
+        }
+    }
+
+    @Override
+    public void beginFill(Group placeholder) {
+        deferred.getChildren().add(placeholder);
+    }
+
+    @Override
+    public void fill(Group placeholder, FillOutline outline, Color color) {
+        finished.put(placeholder, new FinishedFill(outline, color));
+        if(deferred.getChildren().get(0) != placeholder) {
+            // an earlier fill has not ended, so this one is shown as a live
+            // node until it can be rasterized
+            Path path = outline.toPath();
+            path.setStroke(Color.TRANSPARENT);
+            path.setFillRule(FillRule.EVEN_ODD);
+            path.setFill(color);
+            placeholder.getChildren().add(path);
+        }
+
+        // rasterize every finished fill, and everything drawn after it, up to
+        // the first fill that has not ended yet
+        while(!deferred.getChildren().isEmpty()) {
+            Node node = deferred.getChildren().get(0);
+            if(node instanceof Group) {
+                FinishedFill fill = finished.remove(node);
+                if(fill == null) {
+                    break;
+                }
+                history.fill(fill.outline, fill.color);
+            }
+            else if(node instanceof Line) {
+                Line line = (Line)node;
+                history.line(line.getStartX(), line.getStartY(),
+                        line.getEndX(), line.getEndY(),
+                        (Color)line.getStroke(), line.getStrokeWidth());
+            }
+            else if(node instanceof Polyline) {
+                Polyline polyline = (Polyline)node;
+                List<Double> coordinates = polyline.getPoints();
+                double[] points = new double[coordinates.size()];
+                for(int i=0; i<points.length; i++) {
+                    points[i] = coordinates.get(i);
+                }
+                history.polyline(points, points.length / 2,
+                        (Color)polyline.getStroke(),
+                        polyline.getStrokeWidth());
+            }
+            else if(node instanceof Arc) {
+                Arc arc = (Arc)node;
+                history.arc(arc.getCenterX(), arc.getCenterY(),
+                        arc.getRadiusX(), arc.getStartAngle(),
+                        arc.getLength(), (Color)arc.getStroke(),
+                        arc.getStrokeWidth());
+            }
+            else if(node instanceof ImageView) {
+                ImageView view = (ImageView)node;
+                history.image(view.getImage(), view.getTransforms().get(0));
+            }
+            else {
+                Text text = (Text)node;
+                history.text(text.getX(), text.getY(), text.getText(),
+                        (Color)text.getFill(), text.getFont().getSize());
+            }
+            deferred.getChildren().remove(0);
+        }
+        rasterizeNew();
+    }
+
+    @Override
+    public void text(double x, double y, String message, Color color,
+                     double size) {
+        if(isDeferring()) {
+            Text text = new Text(x, y, message);
+            text.setFill(color);
+            text.setFont(Font.font(size));
+            deferred.getChildren().add(text);
+        }
+        else {
+            history.text(x, y, message, color, size);
+            rasterizeNew();
+        }
+    }
+
+    /**
+     * Rasterizes what has been added to the history since it was last
+     * rasterized, and folds the history into an image of the canvas if it
+     * is full.
+     */
+    private void rasterizeNew() {
+        history.rasterize(this);
+        if(history.isFull() && shown != null) {
+            fold();
+        }
+    }
+
+    /**
+     * Replaces the whole history with an image of the canvas as it is
+     * shown, so that the history stays bounded however large the drawing
+     * grows. What is outside the screen is lost, and what is on it is kept
+     * only at the screen's resolution.
+     */
+    private void fold() {
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        // undo the canvas's own transform, one pixel of the canvas to one
+        // pixel of the image
+        parameters.setTransform(shown);
+        parameters.setViewport(new Rectangle2D(0, 0, canvas.getWidth(),
+                canvas.getHeight()));
+        WritableImage image = canvas.snapshot(parameters, null);
+        history.clear();
+        try {
+            history.image(image, shown.createInverse());
+        } catch (NonInvertibleTransformException e) {
+            // a degenerate view shows nothing, so nothing is kept
+        }
+        history.skip();
+    }
+
+    /**
+     * Determines whether or not anything drawn now must be deferred because
+     * a fill that began earlier has not yet been rasterized.
+     *
+     * @return True if drawing must be deferred.
+     */
+    private boolean isDeferring() {
+        return !deferred.getChildren().isEmpty();
+    }
+
+    /**
+     * Determines whether or not a region lies entirely outside the visible
+     * part of the canvas.
+     *
+     * @param minX The smallest x coordinate of the region.
+     * @param minY The smallest y coordinate of the region.
+     * @param maxX The largest x coordinate of the region.
+     * @param maxY The largest y coordinate of the region.
+     *
+     * @return True if nothing in the region would be visible.
+     */
+    private boolean isOutside(double minX, double minY, double maxX,
+                              double maxY) {
+        return maxX < visible.getMinX() || maxY < visible.getMinY() ||
+                minX > visible.getMaxX() || minY > visible.getMaxY();
+    }
+
+    /**
+     * Rasterizes a filled outline onto the canvas using the even/odd fill
+     * rule.
+     *
+     * @param outline The outline to fill.
+     * @param color The fill color.
+     */
+    private void fillOutline(FillOutline outline, Color color) {
+        outline.trace(graphics);
+        graphics.setFillRule(FillRule.EVEN_ODD);
+        graphics.setFill(color);
+        graphics.fill();
+    }
+
+    /**
+     * Continues the stroke being built from the specified point, or ends
+     * it and begins a new one there if it does not end at that point in
+     * the same color and width.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param color The color of the stroke.
+     * @param width The width of the stroke.
+     */
+    private void strokeFrom(double x, double y, Color color, double width) {
+        if(color.equals(strokeColor) && width == strokeWidth &&
+                x == strokeEndX && y == strokeEndY) {
+            return;
+        }
+        endStroke();
+        graphics.beginPath();
+        graphics.moveTo(x, y);
+        strokeColor = color;
+        strokeWidth = width;
+        strokeX = x;
+        strokeY = y;
+        strokeEndX = x;
+        strokeEndY = y;
+    }
+
+    /**
+     * Extends the stroke being built to a point, leaving the point out if
+     * it is within a pixel of the last point kept.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param pixel The width and height of a pixel in the drawing's
+     *              coordinates.
+     */
+    private void strokeTo(double x, double y, double pixel) {
+        strokeEndX = x;
+        strokeEndY = y;
+        if(Math.abs(x - strokeX) >= pixel || Math.abs(y - strokeY) >= pixel) {
+            graphics.lineTo(x, y);
+            strokeX = x;
+            strokeY = y;
+        }
+    }
+
+    /**
+     * Rasterizes the stroke being built onto the canvas, ending at its last
+     * point even if that point was left out, if there is one.
+     */
+    private void endStroke() {
+        if(strokeColor == null) {
+            return;
+        }
+        if(strokeX != strokeEndX || strokeY != strokeEndY) {
+            graphics.lineTo(strokeEndX, strokeEndY);
+        }
+        graphics.setStroke(strokeColor);
+        graphics.setLineWidth(strokeWidth);
+        graphics.stroke();
+        strokeColor = null;
+    }
+
+    /**
+     * Rasterizes a line onto the canvas.
+     *
+     * @param startX The x coordinate of the start of the line.
+     * @param startY The y coordinate of the start of the line.
+     * @param endX The x coordinate of the end of the line.
+     * @param endY The y coordinate of the end of the line.
+     * @param color The color of the line.
+     * @param width The width of the line.
+     */
+    private void strokeLine(double startX, double startY, double endX,
+                            double endY, Color color, double width) {
+        double reach = width / 2;
+        if(isOutside(Math.min(startX, endX) - reach,
+                Math.min(startY, endY) - reach,
+                Math.max(startX, endX) + reach,
+                Math.max(startY, endY) + reach)) {
+            return;
+        }
+        graphics.setStroke(color);
+        graphics.setLineWidth(width);
+        graphics.strokeLine(startX, startY, endX, endY);
+    }
+
+    /**
+     * Rasterizes a path of lines through a number of points onto the canvas
+     * as a single stroke.
+     *
+     * @param points The x and y coordinates of the points, alternately.
+     * @param offset The index of the x coordinate of the first point.
+     * @param count The number of points to use.
+     * @param color The color of the lines.
+     * @param width The width of the lines.
+     */
+    private void strokePolyline(double[] points, int offset, int count,
+                                Color color, double width) {
+        double minX = points[offset];
+        double minY = points[offset + 1];
+        double maxX = minX;
+        double maxY = minY;
+        for(int i=1; i<count; i++) {
+            minX = Math.min(minX, points[offset + i * 2]);
+            minY = Math.min(minY, points[offset + i * 2 + 1]);
+            maxX = Math.max(maxX, points[offset + i * 2]);
+            maxY = Math.max(maxY, points[offset + i * 2 + 1]);
+        }
+        double reach = width / 2;
+        if(isOutside(minX - reach, minY - reach, maxX + reach,
+                maxY + reach)) {
+            return;
+        }
+        graphics.beginPath();
+        graphics.moveTo(points[offset], points[offset + 1]);
+        for(int i=1; i<count; i++) {
+            graphics.lineTo(points[offset + i * 2],
+                    points[offset + i * 2 + 1]);
+        }
+        graphics.setStroke(color);
+        graphics.setLineWidth(width);
+        graphics.stroke();
+    }
+
+    /**
+     * Rasterizes an arc onto the canvas.
+     *
+     * @param centerX The x coordinate of the center of the circle.
+     * @param centerY The y coordinate of the center of the circle.
+     * @param radius The radius of the circle.
+     * @param startAngle The angle at which the arc starts.
+     * @param length The number of degrees that the arc sweeps.
+     * @param color The color of the arc.
+     * @param width The width of the arc.
+     */
+    private void strokeArc(double centerX, double centerY, double radius,
+                           double startAngle, double length, Color color,
+                           double width) {
+        double reach = radius + width / 2;
+        if(isOutside(centerX - reach, centerY - reach, centerX + reach,
+                centerY + reach)) {
+            return;
+        }
+        graphics.setStroke(color);
+        graphics.setLineWidth(width);
+        graphics.strokeArc(centerX - radius, centerY - radius, radius * 2,
+                radius * 2, startAngle, length, ArcType.OPEN);
+    }
+
+    /**
+     * Draws an image onto the canvas.
+     *
+     * @param image The image.
+     * @param transform The transform from the image's pixels into the
+     *                  drawing's coordinates.
+     */
+    private void drawImage(Image image, Transform transform) {
+        Bounds bounds = transform.transform(new BoundingBox(0, 0,
+                image.getWidth(), image.getHeight()));
+        if(isOutside(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(),
+                bounds.getMaxY())) {
+            return;
+        }
+        graphics.save();
+        graphics.transform(new Affine(transform));
+        graphics.drawImage(image, 0, 0);
+        graphics.restore();
+    }
+
+    /**
+     * Rasterizes text onto the canvas.
+     *
+     * @param x The x coordinate of the text.
+     * @param y The y coordinate of the baseline of the text.
+     * @param message The text to draw.
+     * @param color The color of the text.
+     * @param size The size of the font.
+     */
+    private void fillText(double x, double y, String message, Color color,
+                          double size) {
+        graphics.setFont(Font.font(size));
+        graphics.setFill(color);
+        graphics.fillText(message, x, y);
+    }
+
+    /**
+     * Everything rasterized onto a canvas, in order, so that what is
+     * visible can be rasterized again. Each item is stored as a one byte
+     * kind, its numeric operands in a parallel array of doubles and its
+     * colors, outlines, images and strings in a parallel array of objects,
+     * as in a {@link CommandBuffer}, with the index of its first operand
+     * and object; and it is indexed by its bounds in a {@link NumberGrid}.
+     * New items are rasterized from a cursor, which follows the items as
+     * they are added.
+     */
+    private static final class History {
+        /**
+         * The initial capacity of the arrays.
+         */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        /**
+         * The width and height of each cell of the index, in the drawing's
+         * coordinates.
+         */
+        private static final double CELL_SIZE = 64;
+
+        /**
+         * The number of items at which the history is full.
+         */
+        private static final int MAX_ITEMS = 1 << 19;
+
+        /**
+         * The number of operands at which the history is full.
+         */
+        private static final int MAX_OPERANDS = 1 << 22;
+
+        /**
+         * Kind of a line; operands: startX, startY, endX, endY, width;
+         * objects: color.
+         */
+        private static final byte LINE = 0;
+
+        /**
+         * Kind of a path of lines; operands: count, width, then the x and y
+         * coordinates of the points; objects: color.
+         */
+        private static final byte POLYLINE = 1;
+
+        /**
+         * Kind of an arc; operands: centerX, centerY, radius, startAngle,
+         * length, width; objects: color.
+         */
+        private static final byte ARC = 2;
+
+        /**
+         * Kind of an image; objects: image, transform.
+         */
+        private static final byte IMAGE = 3;
+
+        /**
+         * Kind of a fill; objects: outline, color.
+         */
+        private static final byte FILL = 4;
+
+        /**
+         * Kind of text; operands: x, y, size; objects: message, color.
+         */
+        private static final byte TEXT = 5;
+
+        /**
+         * The items, by their bounds.
+         */
+        private final NumberGrid index;
+
+        /**
+         * The kinds of the items, in order.
+         */
+        private byte[] kinds;
+
+        /**
+         * The index of the first operand of each item.
+         */
+        private int[] operandStarts;
+
+        /**
+         * The index of the first object of each item.
+         */
+        private int[] objectStarts;
+
+        /**
+         * The number of items.
+         */
+        private int size;
+
+        /**
+         * The numeric operands of the items, in order.
+         */
+        private double[] operands;
+
+        /**
+         * The number of operands in use.
+         */
+        private int operandCount;
+
+        /**
+         * The objects referenced by the items, in order.
+         */
+        private Object[] objects;
+
+        /**
+         * The number of objects in use.
+         */
+        private int objectCount;
+
+        /**
+         * The index of the first item that has not been rasterized.
+         */
+        private int next;
+
+        /**
+         * Creates a new, empty history.
+         */
+        History() {
+            index = new NumberGrid(CELL_SIZE);
+            kinds = new byte[INITIAL_CAPACITY];
+            operandStarts = new int[INITIAL_CAPACITY];
+            objectStarts = new int[INITIAL_CAPACITY];
+            operands = new double[INITIAL_CAPACITY * 4];
+            objects = new Object[INITIAL_CAPACITY];
+        }
+
+        /**
+         * Adds a line.
+         *
+         * @param startX The x coordinate of the start of the line.
+         * @param startY The y coordinate of the start of the line.
+         * @param endX The x coordinate of the end of the line.
+         * @param endY The y coordinate of the end of the line.
+         * @param color The color of the line.
+         * @param width The width of the line.
+         */
+        void line(double startX, double startY, double endX, double endY,
+                  Color color, double width) {
+            double reach = width / 2;
+            add(LINE, 5, 1, Math.min(startX, endX) - reach,
+                    Math.min(startY, endY) - reach,
+                    Math.max(startX, endX) + reach,
+                    Math.max(startY, endY) + reach);
+            operands[operandCount++] = startX;
+            operands[operandCount++] = startY;
+            operands[operandCount++] = endX;
+            operands[operandCount++] = endY;
+            operands[operandCount++] = width;
+            objects[objectCount++] = color;
+        }
+
+        /**
+         * Adds a path of lines through a number of points.
+         *
+         * @param points The x and y coordinates of the points, alternately.
+         * @param count The number of points to use.
+         * @param color The color of the lines.
+         * @param width The width of the lines.
+         */
+        void polyline(double[] points, int count, Color color,
+                      double width) {
+            double minX = points[0];
+            double minY = points[1];
+            double maxX = minX;
+            double maxY = minY;
+            for(int i=1; i<count; i++) {
+                minX = Math.min(minX, points[i * 2]);
+                minY = Math.min(minY, points[i * 2 + 1]);
+                maxX = Math.max(maxX, points[i * 2]);
+                maxY = Math.max(maxY, points[i * 2 + 1]);
+            }
+            double reach = width / 2;
+            add(POLYLINE, 2 + count * 2, 1, minX - reach, minY - reach,
+                    maxX + reach, maxY + reach);
+            operands[operandCount++] = count;
+            operands[operandCount++] = width;
+            System.arraycopy(points, 0, operands, operandCount, count * 2);
+            operandCount += count * 2;
+            objects[objectCount++] = color;
+        }
+
+        /**
+         * Adds an arc of a circle.
+         *
+         * @param centerX The x coordinate of the center of the circle.
+         * @param centerY The y coordinate of the center of the circle.
+         * @param radius The radius of the circle.
+         * @param startAngle The angle at which the arc starts.
+         * @param length The number of degrees that the arc sweeps.
+         * @param color The color of the arc.
+         * @param width The width of the arc.
+         */
+        void arc(double centerX, double centerY, double radius,
+                 double startAngle, double length, Color color,
+                 double width) {
+            double reach = radius + width / 2;
+            add(ARC, 6, 1, centerX - reach, centerY - reach,
+                    centerX + reach, centerY + reach);
+            operands[operandCount++] = centerX;
+            operands[operandCount++] = centerY;
+            operands[operandCount++] = radius;
+            operands[operandCount++] = startAngle;
+            operands[operandCount++] = length;
+            operands[operandCount++] = width;
+            objects[objectCount++] = color;
+        }
+
+        /**
+         * Adds an image.
+         *
+         * @param image The image.
+         * @param transform The transform from the image's pixels into the
+         *                  drawing's coordinates.
+         */
+        void image(Image image, Transform transform) {
+            Bounds bounds = transform.transform(new BoundingBox(0, 0,
+                    image.getWidth(), image.getHeight()));
+            add(IMAGE, 0, 2, bounds.getMinX(), bounds.getMinY(),
+                    bounds.getMaxX(), bounds.getMaxY());
+            objects[objectCount++] = image;
+            objects[objectCount++] = transform;
+        }
+
+        /**
+         * Adds a filled outline.
+         *
+         * @param outline The outline to fill.
+         * @param color The fill color.
+         */
+        void fill(FillOutline outline, Color color) {
+            double[] bounds = outline.bounds();
+            add(FILL, 0, 2, bounds[0], bounds[1], bounds[2], bounds[3]);
+            objects[objectCount++] = outline;
+            objects[objectCount++] = color;
+        }
+
+        /**
+         * Adds text.
+         *
+         * @param x The x coordinate of the text.
+         * @param y The y coordinate of the baseline of the text.
+         * @param message The text to draw.
+         * @param color The color of the text.
+         * @param size The size of the font.
+         */
+        void text(double x, double y, String message, Color color,
+                  double size) {
+            // generous bounds, since measuring text is slow: no character
+            // is wider than the font is tall
+            add(TEXT, 3, 2, x - size, y - size * 2,
+                    x + size * (message.length() + 1), y + size);
+            operands[operandCount++] = x;
+            operands[operandCount++] = y;
+            operands[operandCount++] = size;
+            objects[objectCount++] = message;
+            objects[objectCount++] = color;
+        }
+
+        /**
+         * Determines whether or not the history has grown as large as it
+         * may.
+         *
+         * @return True if the history is full.
+         */
+        boolean isFull() {
+            return size >= MAX_ITEMS || operandCount >= MAX_OPERANDS;
+        }
+
+        /**
+         * Removes every item.
+         */
+        void clear() {
+            Arrays.fill(objects, 0, objectCount, null);
+            size = 0;
+            operandCount = 0;
+            objectCount = 0;
+            next = 0;
+            index.clear();
+        }
+
+        /**
+         * Moves the cursor past every item, as though they had all been
+         * rasterized.
+         */
+        void skip() {
+            next = size;
+        }
+
+        /**
+         * Rasterizes the items that have not been rasterized since they
+         * were added.
+         *
+         * @param renderer The renderer onto whose canvas to rasterize them.
+         */
+        void rasterize(CanvasRenderer renderer) {
+            for(int i=next; i<size; i++) {
+                rasterize(renderer, i);
+            }
+            next = size;
+        }
+
+        /**
+         * Rasterizes the items that may intersect a region, in order, at
+         * the level of detail of a pixel of the specified size: lines and
+         * paths of lines that continue each other in the same color and
+         * width are joined into one stroke, leaving out the vertices that
+         * are within a pixel of the one before.
+         *
+         * @param renderer The renderer onto whose canvas to rasterize them.
+         * @param minX The smallest x coordinate of the region.
+         * @param minY The smallest y coordinate of the region.
+         * @param maxX The largest x coordinate of the region.
+         * @param maxY The largest y coordinate of the region.
+         * @param pixel The width and height of a pixel in the drawing's
+         *              coordinates.
+         */
+        void redraw(CanvasRenderer renderer, double minX, double minY,
+                    double maxX, double maxY, double pixel) {
+            for(int item : index.query(minX, minY, maxX, maxY)) {
+                int at = operandStarts[item];
+                int object = objectStarts[item];
+                if(kinds[item] == LINE) {
+                    renderer.strokeFrom(operands[at], operands[at + 1],
+                            (Color)objects[object], operands[at + 4]);
+                    renderer.strokeTo(operands[at + 2], operands[at + 3],
+                            pixel);
+                }
+                else if(kinds[item] == POLYLINE) {
+                    int count = (int)operands[at];
+                    renderer.strokeFrom(operands[at + 2], operands[at + 3],
+                            (Color)objects[object], operands[at + 1]);
+                    for(int i=1; i<count; i++) {
+                        renderer.strokeTo(operands[at + 2 + i * 2],
+                                operands[at + 3 + i * 2], pixel);
+                    }
+                }
+                else {
+                    renderer.endStroke();
+                    rasterize(renderer, item);
+                }
+            }
+            renderer.endStroke();
+            next = size;
+        }
+
+        /**
+         * Rasterizes an item.
+         *
+         * @param renderer The renderer onto whose canvas to rasterize it.
+         * @param item The number of the item.
+         */
+        private void rasterize(CanvasRenderer renderer, int item) {
+            int at = operandStarts[item];
+            int object = objectStarts[item];
+            switch(kinds[item]) {
+                case LINE:
+                    renderer.strokeLine(operands[at], operands[at + 1],
+                            operands[at + 2], operands[at + 3],
+                            (Color)objects[object], operands[at + 4]);
+                    break;
+                case POLYLINE:
+                    renderer.strokePolyline(operands, at + 2,
+                            (int)operands[at], (Color)objects[object],
+                            operands[at + 1]);
+                    break;
+                case ARC:
+                    renderer.strokeArc(operands[at], operands[at + 1],
+                            operands[at + 2], operands[at + 3],
+                            operands[at + 4], (Color)objects[object],
+                            operands[at + 5]);
+                    break;
+                case IMAGE:
+                    renderer.drawImage((Image)objects[object],
+                            (Transform)objects[object + 1]);
+                    break;
+                case FILL:
+                    renderer.fillOutline((FillOutline)objects[object],
+                            (Color)objects[object + 1]);
+                    break;
+                default:
+                    renderer.fillText(operands[at], operands[at + 1],
+                            (String)objects[object],
+                            (Color)objects[object + 1], operands[at + 2]);
+                    break;
+            }
+        }
+
+        /**
+         * Appends the kind of an item, making room for its operands and
+         * objects, and indexes it.
+         *
+         * @param kind The kind of the item.
+         * @param operandsNeeded The number of operands of the item.
+         * @param objectsNeeded The number of objects of the item.
+         * @param minX The smallest x coordinate of the item's bounds.
+         * @param minY The smallest y coordinate of the item's bounds.
+         * @param maxX The largest x coordinate of the item's bounds.
+         * @param maxY The largest y coordinate of the item's bounds.
+         */
+        private void add(byte kind, int operandsNeeded, int objectsNeeded,
+                         double minX, double minY, double maxX,
+                         double maxY) {
+            if(size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                operandStarts = Arrays.copyOf(operandStarts, size * 2);
+                objectStarts = Arrays.copyOf(objectStarts, size * 2);
+            }
+            if(operandCount + operandsNeeded > operands.length) {
+                operands = Arrays.copyOf(operands, Math.max(
+                        operands.length * 2, operandCount + operandsNeeded));
+            }
+            if(objectCount + objectsNeeded > objects.length) {
+                objects = Arrays.copyOf(objects, objects.length * 2);
+            }
+            kinds[size] = kind;
+            operandStarts[size] = operandCount;
+            objectStarts[size] = objectCount;
+            index.add(size, minX, minY, maxX, maxY);
+            size++;
+        }
+    }
+
+    /**
+     * A fill that has ended, waiting for the fills before it to end.
+     */
+    private static final class FinishedFill {
+        /**
+         * The outline of the fill.
+         */
+        private final FillOutline outline;
+
+        /**
+         * The fill color.
+         */
+        private final Color color;
+
+        /**
+         * Creates a new finished fill.
+         *
+         * @param outline The outline of the fill.
+         * @param color The fill color.
+         */
+        FinishedFill(FillOutline outline, Color color) {
+            this.outline = outline;
+            this.color = color;
+        }
+    }
+}
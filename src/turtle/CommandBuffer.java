@@ -0,0 +1,390 @@
+/*
+ * A compact, in-memory recording of the commands issued to a Turtle.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the drawing commands issued to a {@link Turtle} into a compact
+ * in-memory buffer. Each command is stored as a one byte opcode followed by
+ * its numeric operands in a parallel array of doubles; colors are stored as
+ * their packed ARGB values, and strings are kept in a separate table.
+ * Recording does not require the JavaFX toolkit to be running, and a
+ * recording may later be replayed into any {@link CommandVisitor}.
+ *
+ * A command buffer is not thread safe.
+ */
+public class CommandBuffer implements CommandVisitor {
+    /**
+     * The initial capacity of the opcode and operand arrays.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Opcode for a pen up move; operands: x, y.
+     */
+    static final byte MOVE_TO = 0;
+
+    /**
+     * Opcode for a pen down move; operands: x, y.
+     */
+    static final byte LINE_TO = 1;
+
+    /**
+     * Opcode for a change of heading; operands: heading.
+     */
+    static final byte HEADING = 2;
+
+    /**
+     * Opcode for a change of pen color; operands: packed ARGB color.
+     */
+    static final byte PEN_COLOR = 3;
+
+    /**
+     * Opcode for a change of fill color; operands: packed ARGB color.
+     */
+    static final byte FILL_COLOR = 4;
+
+    /**
+     * Opcode for a change of pen width; operands: width.
+     */
+    static final byte PEN_WIDTH = 5;
+
+    /**
+     * Opcode for the start of a fill.
+     */
+    static final byte BEGIN_FILL = 6;
+
+    /**
+     * Opcode for the end of a fill.
+     */
+    static final byte END_FILL = 7;
+
+    /**
+     * Opcode for drawn text; the message is in the string table.
+     */
+    static final byte TEXT = 8;
+
+    /**
+     * Opcode for a change of background color; operands: packed ARGB
+     * color.
+     */
+    static final byte BACKGROUND = 9;
+
+    /**
+     * Opcode for a pen down move along an arc; operands: x, y, centerX,
+     * centerY, sweep.
+     */
+    static final byte ARC_TO = 10;
+
+    /**
+     * The opcodes of the recorded commands, in order.
+     */
+    private byte[] opcodes;
+
+    /**
+     * The number of recorded commands.
+     */
+    private int size;
+
+    /**
+     * The numeric operands of the recorded commands, in order.
+     */
+    private double[] operands;
+
+    /**
+     * The number of operands in use.
+     */
+    private int operandCount;
+
+    /**
+     * The strings referenced by the recorded commands, in order.
+     */
+    private final List<String> strings;
+
+    /**
+     * The number of recorded line segments.
+     */
+    private int segmentCount;
+
+    /**
+     * Creates a new, empty command buffer.
+     */
+    public CommandBuffer() {
+        opcodes = new byte[INITIAL_CAPACITY];
+        operands = new double[INITIAL_CAPACITY * 2];
+        strings = new ArrayList<>();
+    }
+
+    /**
+     * Returns the number of commands in the buffer.
+     *
+     * @return The number of recorded commands.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of line segments drawn by the recorded commands.
+     *
+     * @return The number of recorded line segments.
+     */
+    public int segmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Discards all of the recorded commands.
+     */
+    public void clear() {
+        size = 0;
+        operandCount = 0;
+        segmentCount = 0;
+        strings.clear();
+    }
+
+    /**
+     * Replays the recorded commands, in order, into the specified
+     * {@link CommandVisitor}.
+     *
+     * @param visitor The visitor that should receive the commands.
+     */
+    public void replay(CommandVisitor visitor) {
+        cursor().replay(visitor, size);
+    }
+
+    /**
+     * Returns a cursor positioned at the first recorded command.
+     *
+     * @return The new cursor.
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        add(MOVE_TO);
+        add(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        add(LINE_TO);
+        add(x, y);
+        segmentCount++;
+    }
+
+    @Override
+    public void arcTo(double x, double y, double centerX, double centerY,
+                      double sweep) {
+        add(ARC_TO);
+        add(x, y);
+        add(centerX, centerY);
+        add(sweep);
+        segmentCount++;
+    }
+
+    @Override
+    public void heading(double heading) {
+        add(HEADING);
+        add(heading);
+    }
+
+    @Override
+    public void penColor(Color color) {
+        add(PEN_COLOR);
+        add(Palette.toArgb(color));
+    }
+
+    @Override
+    public void fillColor(Color color) {
+        add(FILL_COLOR);
+        add(Palette.toArgb(color));
+    }
+
+    @Override
+    public void penWidth(int width) {
+        add(PEN_WIDTH);
+        add(width);
+    }
+
+    @Override
+    public void beginFill() {
+        add(BEGIN_FILL);
+    }
+
+    @Override
+    public void endFill() {
+        add(END_FILL);
+    }
+
+    @Override
+    public void text(String message) {
+        add(TEXT);
+        strings.add(message);
+    }
+
+    @Override
+    public void background(Color color) {
+        add(BACKGROUND);
+        add(Palette.toArgb(color));
+    }
+
+    /**
+     * Appends an opcode to the buffer, growing it if necessary.
+     *
+     * @param opcode The opcode to append.
+     */
+    private void add(byte opcode) {
+        if(size == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, size * 2);
+        }
+        opcodes[size++] = opcode;
+    }
+
+    /**
+     * Appends a single operand to the buffer, growing it if necessary.
+     *
+     * @param value The operand to append.
+     */
+    private void add(double value) {
+        ensureOperandCapacity(1);
+        operands[operandCount++] = value;
+    }
+
+    /**
+     * Appends a pair of operands to the buffer, growing it if necessary.
+     *
+     * @param x The first operand to append.
+     * @param y The second operand to append.
+     */
+    private void add(double x, double y) {
+        ensureOperandCapacity(2);
+        operands[operandCount++] = x;
+        operands[operandCount++] = y;
+    }
+
+    /**
+     * Makes sure that there is room for the specified number of additional
+     * operands.
+     *
+     * @param count The number of operands about to be appended.
+     */
+    private void ensureOperandCapacity(int count) {
+        if(operandCount + count > operands.length) {
+            operands = Arrays.copyOf(operands, operands.length * 2);
+        }
+    }
+
+    /**
+     * A position in the buffer from which the recorded commands can be
+     * replayed. A cursor can be copied, so that replaying can later resume
+     * from a remembered position without starting over.
+     */
+    final class Cursor {
+        /**
+         * The number of the next command to replay.
+         */
+        private int command;
+
+        /**
+         * The offset of the next command's first operand.
+         */
+        private int operand;
+
+        /**
+         * The offset of the next command's string, if it has one.
+         */
+        private int string;
+
+        /**
+         * Returns the number of the next command to replay.
+         *
+         * @return The cursor's position.
+         */
+        int position() {
+            return command;
+        }
+
+        /**
+         * Makes a new cursor at the same position as this one.
+         *
+         * @return The new cursor.
+         */
+        Cursor copy() {
+            Cursor copy = new Cursor();
+            copy.command = command;
+            copy.operand = operand;
+            copy.string = string;
+            return copy;
+        }
+
+        /**
+         * Replays the recorded commands from the cursor's position up to,
+         * but not including, the specified command, and moves the cursor
+         * there.
+         *
+         * @param visitor The visitor that should receive the commands.
+         * @param end The number of the command at which to stop.
+         */
+        void replay(CommandVisitor visitor, int end) {
+            for(; command<end; command++) {
+                switch(opcodes[command]) {
+                    case MOVE_TO:
+                        visitor.moveTo(operands[operand],
+                                operands[operand + 1]);
+                        operand += 2;
+                        break;
+                    case LINE_TO:
+                        visitor.lineTo(operands[operand],
+                                operands[operand + 1]);
+                        operand += 2;
+                        break;
+                    case ARC_TO:
+                        visitor.arcTo(operands[operand],
+                                operands[operand + 1], operands[operand + 2],
+                                operands[operand + 3], operands[operand + 4]);
+                        operand += 5;
+                        break;
+                    case HEADING:
+                        visitor.heading(operands[operand++]);
+                        break;
+                    case PEN_COLOR:
+                        visitor.penColor(Palette.fromArgb(
+                                (int)operands[operand++]));
+                        break;
+                    case FILL_COLOR:
+                        visitor.fillColor(Palette.fromArgb(
+                                (int)operands[operand++]));
+                        break;
+                    case PEN_WIDTH:
+                        visitor.penWidth((int)operands[operand++]);
+                        break;
+                    case BEGIN_FILL:
+                        visitor.beginFill();
+                        break;
+                    case END_FILL:
+                        visitor.endFill();
+                        break;
+                    case TEXT:
+                        visitor.text(strings.get(string++));
+                        break;
+                    case BACKGROUND:
+                        visitor.background(Palette.fromArgb(
+                                (int)operands[operand++]));
+                        break;
+                    default:
+                        throw new IllegalStateException("bad opcode: "
+                                + opcodes[command]);
+                }
+            }
+        }
+    }
+}
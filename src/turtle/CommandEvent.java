@@ -0,0 +1,62 @@
+/*
+ * A JDK Flight Recorder event for a command issued to a Turtle.
+ */
+package turtle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded by JDK Flight Recorder for every command issued to a
+ * {@link Turtle} while the event is enabled. The event's duration is the
+ * time that the command took to return to its caller. If the command changed
+ * the scene, the event is committed in the JavaFX application thread once
+ * those changes have been applied.
+ */
+@Name("turtle.Command")
+@Label("Turtle Command")
+@Category("Turtle")
+@Description("A command issued to a Turtle")
+@StackTrace(false)
+class CommandEvent extends Event {
+    /**
+     * The kind of command, e.g. "move" or "turn".
+     */
+    @Label("Command")
+    String command;
+
+    /**
+     * The thread that issued the command.
+     */
+    @Label("Turtle Thread")
+    Thread turtleThread;
+
+    /**
+     * The time that the issuing thread spent blocked, waiting for queued
+     * changes or animations.
+     */
+    @Label("Blocked")
+    @Timespan
+    long blocked;
+
+    /**
+     * The time that the JavaFX application thread spent applying the
+     * command's changes to the scene.
+     */
+    @Label("FX Thread Time")
+    @Timespan
+    long fxThreadTime;
+
+    /**
+     * The time from the command being issued until its changes had been
+     * applied to the scene, including any animation.
+     */
+    @Label("Round Trip")
+    @Timespan
+    long roundTrip;
+}
@@ -0,0 +1,104 @@
+/*
+ * Forwards the commands issued to a Turtle to several visitors.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A {@link CommandVisitor} that forwards every command, in order, to each of
+ * several other visitors.
+ */
+class CommandMulticaster implements CommandVisitor {
+    /**
+     * The visitors to which commands are forwarded.
+     */
+    private final CommandVisitor[] visitors;
+
+    /**
+     * Creates a new multicaster.
+     *
+     * @param visitors The visitors to which commands should be forwarded.
+     */
+    CommandMulticaster(CommandVisitor... visitors) {
+        this.visitors = visitors;
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.moveTo(x, y);
+        }
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.lineTo(x, y);
+        }
+    }
+
+    @Override
+    public void arcTo(double x, double y, double centerX, double centerY,
+                      double sweep) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.arcTo(x, y, centerX, centerY, sweep);
+        }
+    }
+
+    @Override
+    public void heading(double heading) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.heading(heading);
+        }
+    }
+
+    @Override
+    public void penColor(Color color) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.penColor(color);
+        }
+    }
+
+    @Override
+    public void fillColor(Color color) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.fillColor(color);
+        }
+    }
+
+    @Override
+    public void penWidth(int width) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.penWidth(width);
+        }
+    }
+
+    @Override
+    public void beginFill() {
+        for(CommandVisitor visitor : visitors) {
+            visitor.beginFill();
+        }
+    }
+
+    @Override
+    public void endFill() {
+        for(CommandVisitor visitor : visitors) {
+            visitor.endFill();
+        }
+    }
+
+    @Override
+    public void text(String message) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.text(message);
+        }
+    }
+
+    @Override
+    public void background(Color color) {
+        for(CommandVisitor visitor : visitors) {
+            visitor.background(color);
+        }
+    }
+}
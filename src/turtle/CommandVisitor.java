@@ -0,0 +1,100 @@
+/*
+ * Receives the drawing commands issued to a Turtle, either as they are
+ * issued or when a recorded drawing is replayed.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A visitor over the drawing commands issued to a {@link Turtle}. All
+ * coordinates are in the Turtle's world, i.e. with the origin (0,0) in the
+ * center of the canvas and y positive in the UP direction.
+ */
+public interface CommandVisitor {
+    /**
+     * Called when the Turtle moves to the specified location with its pen
+     * up.
+     *
+     * @param x The Turtle's new x coordinate.
+     * @param y The Turtle's new y coordinate.
+     */
+    void moveTo(double x, double y);
+
+    /**
+     * Called when the Turtle moves to the specified location with its pen
+     * down, drawing a line from its previous location.
+     *
+     * @param x The Turtle's new x coordinate.
+     * @param y The Turtle's new y coordinate.
+     */
+    void lineTo(double x, double y);
+
+    /**
+     * Called when the Turtle moves along an arc of a circle with its pen
+     * down, drawing the arc from its previous location.
+     *
+     * @param x The Turtle's new x coordinate.
+     * @param y The Turtle's new y coordinate.
+     * @param centerX The x coordinate of the center of the circle.
+     * @param centerY The y coordinate of the center of the circle.
+     * @param sweep The number of degrees that the arc sweeps
+     *              counterclockwise; negative if the arc is clockwise.
+     */
+    void arcTo(double x, double y, double centerX, double centerY,
+               double sweep);
+
+    /**
+     * Called when the Turtle turns.
+     *
+     * @param heading The Turtle's new heading in degrees, measured
+     *                counterclockwise from east.
+     */
+    void heading(double heading);
+
+    /**
+     * Called when the Turtle's pen color changes.
+     *
+     * @param color The new pen color.
+     */
+    void penColor(Color color);
+
+    /**
+     * Called when the Turtle's fill color changes.
+     *
+     * @param color The new fill color.
+     */
+    void fillColor(Color color);
+
+    /**
+     * Called when the width of the Turtle's pen changes.
+     *
+     * @param width The new pen width.
+     */
+    void penWidth(int width);
+
+    /**
+     * Called when the Turtle begins drawing a shape that should be filled.
+     */
+    void beginFill();
+
+    /**
+     * Called when the Turtle fills the shape drawn since the last call to
+     * {@link #beginFill()}.
+     */
+    void endFill();
+
+    /**
+     * Called when the Turtle draws text at its current location.
+     *
+     * @param message The text that was drawn.
+     */
+    void text(String message);
+
+    /**
+     * Called when the background color of the Turtle's world changes.
+     *
+     * @param color The new background color.
+     */
+    void background(Color color);
+}
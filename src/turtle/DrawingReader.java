@@ -0,0 +1,205 @@
+/*
+ * Replays a drawing that was saved to a binary drawing file.
+ */
+package turtle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays a drawing that was saved by a {@link DrawingWriter} into any
+ * {@link CommandVisitor}: a {@link Turtle} (see {@link Turtle#load(Path)}),
+ * a {@link CommandBuffer}, an {@link SvgWriter} or a {@link PngWriter}.
+ *
+ * The file is memory-mapped a window at a time rather than read onto the
+ * heap, so recordings of any size, including ones larger than the heap,
+ * replay in constant memory and at the speed at which the operating system
+ * can page them in.
+ */
+public final class DrawingReader {
+    /**
+     * The size of the part of the file that is mapped at once.
+     */
+    private static final long WINDOW_SIZE = 1 << 28;
+
+    /**
+     * The file being replayed.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The size of the file.
+     */
+    private final long size;
+
+    /**
+     * The mapped part of the file.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * The position in the file of the start of the mapped part.
+     */
+    private long base;
+
+    /**
+     * Creates a new reader for the specified file.
+     *
+     * @param channel The file being replayed.
+     *
+     * @throws IOException If the size of the file cannot be determined.
+     */
+    private DrawingReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        size = channel.size();
+    }
+
+    /**
+     * Replays the drawing saved in the specified file, in order, into the
+     * specified {@link CommandVisitor}.
+     *
+     * @param path The file in which the drawing was saved.
+     * @param visitor The visitor that should receive the commands.
+     *
+     * @throws IOException If the file cannot be read or is not a drawing
+     *                     file.
+     */
+    public static void replay(Path path, CommandVisitor visitor)
+            throws IOException {
+        try(FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            new DrawingReader(channel).replay(visitor);
+        }
+    }
+
+    /**
+     * Replays the commands in the file.
+     *
+     * @param visitor The visitor that should receive the commands.
+     *
+     * @throws IOException If the file cannot be read or is not a drawing
+     *                     file.
+     */
+    private void replay(CommandVisitor visitor) throws IOException {
+        map(0, WINDOW_SIZE);
+        require(2 * Integer.BYTES);
+        if(window.getInt() != DrawingWriter.MAGIC) {
+            throw new IOException("not a drawing file");
+        }
+        int version = window.getInt();
+        if(version != DrawingWriter.VERSION) {
+            throw new IOException("unsupported drawing file version: "
+                    + version);
+        }
+
+        while(base + window.position() < size) {
+            require(1);
+            byte opcode = window.get();
+            switch(opcode) {
+                case CommandBuffer.MOVE_TO:
+                    require(2 * Double.BYTES);
+                    visitor.moveTo(window.getDouble(), window.getDouble());
+                    break;
+                case CommandBuffer.LINE_TO:
+                    require(2 * Double.BYTES);
+                    visitor.lineTo(window.getDouble(), window.getDouble());
+                    break;
+                case CommandBuffer.ARC_TO:
+                    require(5 * Double.BYTES);
+                    visitor.arcTo(window.getDouble(), window.getDouble(),
+                            window.getDouble(), window.getDouble(),
+                            window.getDouble());
+                    break;
+                case CommandBuffer.HEADING:
+                    require(Double.BYTES);
+                    visitor.heading(window.getDouble());
+                    break;
+                case CommandBuffer.PEN_COLOR:
+                    require(Integer.BYTES);
+                    visitor.penColor(Palette.fromArgb(window.getInt()));
+                    break;
+                case CommandBuffer.FILL_COLOR:
+                    require(Integer.BYTES);
+                    visitor.fillColor(Palette.fromArgb(window.getInt()));
+                    break;
+                case CommandBuffer.PEN_WIDTH:
+                    require(Integer.BYTES);
+                    visitor.penWidth(window.getInt());
+                    break;
+                case CommandBuffer.BEGIN_FILL:
+                    visitor.beginFill();
+                    break;
+                case CommandBuffer.END_FILL:
+                    visitor.endFill();
+                    break;
+                case CommandBuffer.TEXT:
+                    visitor.text(readString());
+                    break;
+                case CommandBuffer.BACKGROUND:
+                    require(Integer.BYTES);
+                    visitor.background(Palette.fromArgb(window.getInt()));
+                    break;
+                default:
+                    throw new IOException("bad opcode: " + opcode);
+            }
+        }
+    }
+
+    /**
+     * Reads a string: its length in bytes followed by its UTF-8 encoding.
+     *
+     * @return The string.
+     *
+     * @throws IOException If the file cannot be read or ends too soon.
+     */
+    private String readString() throws IOException {
+        require(Integer.BYTES);
+        int length = window.getInt();
+        if(length < 0) {
+            throw new IOException("bad text length: " + length);
+        }
+        require(length);
+        byte[] bytes = new byte[length];
+        window.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes sure that the specified number of bytes following the current
+     * position are mapped, mapping the next window of the file if they are
+     * not.
+     *
+     * @param count The number of bytes about to be read.
+     *
+     * @throws IOException If the file cannot be mapped or ends too soon.
+     */
+    private void require(int count) throws IOException {
+        if(window.remaining() < count) {
+            long position = base + window.position();
+            if(size - position < count) {
+                throw new EOFException("drawing file ends in the middle of "
+                        + "a command");
+            }
+            map(position, Math.max(count, WINDOW_SIZE));
+        }
+    }
+
+    /**
+     * Maps a window of the file, no larger than what is left of the file.
+     *
+     * @param position The position in the file at which the window starts.
+     * @param length The size of the window.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    private void map(long position, long length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(length, size - position));
+        base = position;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Saves the commands issued to a Turtle to a binary drawing file.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link CommandVisitor} that saves a Turtle's drawing to a compact binary
+ * file, which can be replayed later with {@link DrawingReader}. The writer
+ * can be attached to a Turtle while it draws, using
+ * {@link Turtle#record(CommandVisitor)}, or a finished recording can be
+ * replayed into it using {@link CommandBuffer#replay(CommandVisitor)}.
+ *
+ * The file starts with a four byte magic number and a four byte version,
+ * followed by the commands in order. Each command is its one byte
+ * {@link CommandBuffer} opcode followed by its operands: coordinates,
+ * headings and sweeps as eight byte doubles, colors as their packed ARGB
+ * values and pen widths as four byte ints, and text as its length in bytes
+ * followed by the text in UTF-8. All values are big-endian.
+ *
+ * Commands are gathered in a direct buffer and written to the file in large
+ * blocks. The writer must be closed to write the last of them.
+ */
+public class DrawingWriter implements CommandVisitor, Closeable {
+    /**
+     * The magic number at the start of every drawing file: "TRTL".
+     */
+    static final int MAGIC = 0x5452544c;
+
+    /**
+     * The version of the file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The size of the buffer in which commands are gathered.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The size of the largest command other than text: an arc.
+     */
+    private static final int LARGEST_COMMAND = 1 + 5 * Double.BYTES;
+
+    /**
+     * The file to which the drawing is written.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The buffer in which commands are gathered before they are written.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a new drawing writer that saves the drawing to the specified
+     * file, replacing it if it already exists.
+     *
+     * @param path The file to which the drawing should be saved.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public DrawingWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        reserve(LARGEST_COMMAND);
+        buffer.put(CommandBuffer.MOVE_TO);
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        reserve(LARGEST_COMMAND);
+        buffer.put(CommandBuffer.LINE_TO);
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+    }
+
+    @Override
+    public void arcTo(double x, double y, double centerX, double centerY,
+                      double sweep) {
+        reserve(LARGEST_COMMAND);
+        buffer.put(CommandBuffer.ARC_TO);
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+        buffer.putDouble(centerX);
+        buffer.putDouble(centerY);
+        buffer.putDouble(sweep);
+    }
+
+    @Override
+    public void heading(double heading) {
+        reserve(LARGEST_COMMAND);
+        buffer.put(CommandBuffer.HEADING);
+        buffer.putDouble(heading);
+    }
+
+    @Override
+    public void penColor(Color color) {
+        writeColor(CommandBuffer.PEN_COLOR, color);
+    }
+
+    @Override
+    public void fillColor(Color color) {
+        writeColor(CommandBuffer.FILL_COLOR, color);
+    }
+
+    @Override
+    public void penWidth(int width) {
+        reserve(LARGEST_COMMAND);
+        buffer.put(CommandBuffer.PEN_WIDTH);
+        buffer.putInt(width);
+    }
+
+    @Override
+    public void beginFill() {
+        reserve(LARGEST_COMMAND);
+        buffer.put(CommandBuffer.BEGIN_FILL);
+    }
+
+    @Override
+    public void endFill() {
+        reserve(LARGEST_COMMAND);
+        buffer.put(CommandBuffer.END_FILL);
+    }
+
+    @Override
+    public void text(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        reserve(1 + Integer.BYTES);
+        buffer.put(CommandBuffer.TEXT);
+        buffer.putInt(bytes.length);
+        int written = 0;
+        while(written < bytes.length) {
+            // text longer than the buffer is written a bufferful at a time
+            reserve(1);
+            int count = Math.min(buffer.remaining(), bytes.length - written);
+            buffer.put(bytes, written, count);
+            written += count;
+        }
+    }
+
+    @Override
+    public void background(Color color) {
+        writeColor(CommandBuffer.BACKGROUND, color);
+    }
+
+    /**
+     * Writes the commands that are still in the buffer and closes the file.
+     *
+     * @throws IOException If the commands cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if(channel.isOpen()) {
+            try {
+                drain();
+            }
+            finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a command that changes a color.
+     *
+     * @param opcode The command's opcode.
+     * @param color The new color.
+     */
+    private void writeColor(byte opcode, Color color) {
+        reserve(LARGEST_COMMAND);
+        buffer.put(opcode);
+        buffer.putInt(Palette.toArgb(color));
+    }
+
+    /**
+     * Makes sure that there is room in the buffer for the specified number
+     * of bytes, writing the buffer to the file if there is not.
+     *
+     * @param count The number of bytes about to be put in the buffer.
+     */
+    private void reserve(int count) {
+        if(buffer.remaining() < count) {
+            try {
+                drain();
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes everything in the buffer to the file and empties the buffer.
+     *
+     * @throws IOException If the buffer cannot be written.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * A line, arc, fill or text in a Turtle's drawing.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A single element of a {@link Turtle}'s drawing, as found by a
+ * {@link SpatialIndex}: a line, an arc, a fill or a piece of text. All
+ * coordinates are in the Turtle's world.
+ */
+public final class DrawnElement {
+    /**
+     * The kind of a straight line.
+     */
+    public static final int LINE = 0;
+
+    /**
+     * The kind of an arc of a circle.
+     */
+    public static final int ARC = 1;
+
+    /**
+     * The kind of a filled shape.
+     */
+    public static final int FILL = 2;
+
+    /**
+     * The kind of a piece of text.
+     */
+    public static final int TEXT = 3;
+
+    /**
+     * The kind of element; one of {@link #LINE}, {@link #ARC},
+     * {@link #FILL} or {@link #TEXT}.
+     */
+    private final int kind;
+
+    /**
+     * The position of the element in the drawing; elements drawn later
+     * have larger orders.
+     */
+    private final long order;
+
+    /**
+     * The element's geometry. A line is its start and end point; an arc is
+     * its start point, center and sweep; a fill is the x/y pairs of the
+     * vertices of its outline, with arcs flattened.
+     */
+    private final double[] geometry;
+
+    /**
+     * The smallest x coordinate of the element's bounds.
+     */
+    private final double minX;
+
+    /**
+     * The smallest y coordinate of the element's bounds.
+     */
+    private final double minY;
+
+    /**
+     * The largest x coordinate of the element's bounds.
+     */
+    private final double maxX;
+
+    /**
+     * The largest y coordinate of the element's bounds.
+     */
+    private final double maxY;
+
+    /**
+     * The element's color.
+     */
+    private final Color color;
+
+    /**
+     * The width of the pen that drew the element; zero for fills and text.
+     */
+    private final int width;
+
+    /**
+     * The text of a text element; null otherwise.
+     */
+    private final String text;
+
+    /**
+     * Creates a new element.
+     *
+     * @param kind The kind of element.
+     * @param order The position of the element in the drawing.
+     * @param geometry The element's geometry.
+     * @param minX The smallest x coordinate of the element's bounds.
+     * @param minY The smallest y coordinate of the element's bounds.
+     * @param maxX The largest x coordinate of the element's bounds.
+     * @param maxY The largest y coordinate of the element's bounds.
+     * @param color The element's color.
+     * @param width The width of the pen that drew the element.
+     * @param text The text of a text element, or null.
+     */
+    DrawnElement(int kind, long order, double[] geometry, double minX,
+                 double minY, double maxX, double maxY, Color color,
+                 int width, String text) {
+        this.kind = kind;
+        this.order = order;
+        this.geometry = geometry;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.color = color;
+        this.width = width;
+        this.text = text;
+    }
+
+    /**
+     * Returns the kind of element.
+     *
+     * @return One of {@link #LINE}, {@link #ARC}, {@link #FILL} or
+     *         {@link #TEXT}.
+     */
+    public int getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the smallest x coordinate of the element's bounds.
+     *
+     * @return The left edge of the bounds.
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Returns the smallest y coordinate of the element's bounds.
+     *
+     * @return The bottom edge of the bounds.
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Returns the largest x coordinate of the element's bounds.
+     *
+     * @return The right edge of the bounds.
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns the largest y coordinate of the element's bounds.
+     *
+     * @return The top edge of the bounds.
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Returns the element's color: the pen color of a line, arc or text,
+     * or the fill color of a fill.
+     *
+     * @return The element's color.
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Returns the width of the pen that drew a line or arc.
+     *
+     * @return The pen width; zero for fills and text.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the text of a text element.
+     *
+     * @return The text, or null if the element is not text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the position of the element in the drawing.
+     *
+     * @return The element's order; elements drawn later have larger orders.
+     */
+    long order() {
+        return order;
+    }
+
+    /**
+     * Determines whether or not the element covers a point: a line or arc
+     * if the point is under the pen's stroke, a fill if the point is inside
+     * its outline (by the even/odd rule), and text if the point is inside
+     * its bounds.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param tolerance The additional distance from a line or arc at which
+     *                  the point still counts as covered.
+     *
+     * @return True if the point is covered by the element.
+     */
+    boolean covers(double x, double y, double tolerance) {
+        double reach = width / 2.0 + tolerance;
+        switch(kind) {
+            case LINE:
+                return distanceToLine(x, y) <= reach;
+            case ARC:
+                return distanceToArc(x, y) <= reach;
+            case FILL:
+                return insideOutline(x, y);
+            default:
+                return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        }
+    }
+
+    /**
+     * Returns the distance from a point to the line.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     *
+     * @return The distance to the nearest point on the line.
+     */
+    private double distanceToLine(double x, double y) {
+        double startX = geometry[0];
+        double startY = geometry[1];
+        double lineX = geometry[2] - startX;
+        double lineY = geometry[3] - startY;
+        double lengthSquared = lineX * lineX + lineY * lineY;
+        double t = lengthSquared == 0 ? 0 :
+                ((x - startX) * lineX + (y - startY) * lineY) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - (startX + t * lineX), y - (startY + t * lineY));
+    }
+
+    /**
+     * Returns the distance from a point to the arc.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     *
+     * @return The distance to the nearest point on the arc.
+     */
+    private double distanceToArc(double x, double y) {
+        double centerX = geometry[2];
+        double centerY = geometry[3];
+        double sweep = geometry[4];
+        double radius = Math.hypot(geometry[0] - centerX,
+                geometry[1] - centerY);
+        double start = Math.toDegrees(Math.atan2(geometry[1] - centerY,
+                geometry[0] - centerX));
+        double angle = Math.toDegrees(Math.atan2(y - centerY, x - centerX));
+
+        // the angle swept from the start of the arc to the point
+        double swept = sweep >= 0 ? angle - start : start - angle;
+        swept = ((swept % 360) + 360) % 360;
+        if(Math.abs(sweep) >= 360 || swept <= Math.abs(sweep)) {
+            return Math.abs(Math.hypot(x - centerX, y - centerY) - radius);
+        }
+
+        // otherwise the nearest point is one of the ends
+        double endRadians = Math.toRadians(start + sweep);
+        double endX = centerX + radius * Math.cos(endRadians);
+        double endY = centerY + radius * Math.sin(endRadians);
+        return Math.min(Math.hypot(x - geometry[0], y - geometry[1]),
+                Math.hypot(x - endX, y - endY));
+    }
+
+    /**
+     * Determines whether or not a point is inside the outline of a fill,
+     * using the even/odd rule.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     *
+     * @return True if the point is inside the outline.
+     */
+    private boolean insideOutline(double x, double y) {
+        boolean inside = false;
+        int count = geometry.length / 2;
+        for(int i=0, j=count-1; i<count; j=i++) {
+            double xi = geometry[i * 2];
+            double yi = geometry[i * 2 + 1];
+            double xj = geometry[j * 2];
+            double yj = geometry[j * 2 + 1];
+            if((yi > y) != (yj > y) &&
+                    x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public String toString() {
+        String[] kinds = {"LINE", "ARC", "FILL", "TEXT"};
+        return "DrawnElement[" + kinds[kind] + " (" + minX + ", " + minY +
+                ")-(" + maxX + ", " + maxY + ")" +
+                (text != null ? " \"" + text + "\"" : "") + "]";
+    }
+}
@@ -0,0 +1,784 @@
+/*
+ * A recorded drawing that can be placed any number of times.
+ */
+package turtle;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A drawing recorded once by {@link Turtle#figure(Runnable)}, relative to
+ * the Turtle's location and heading when it was recorded, that can be
+ * placed again and again with {@link Turtle#place(Figure, double)} at
+ * other locations, headings and scales.
+ *
+ * A figure is rasterized once for each scale at which it is shown, and
+ * every placement at that scale shares the image (though the images that
+ * have been used least recently are forgotten once the figure's images
+ * hold more than {@link #MAX_CACHED_PIXELS} pixels), so that placing a figure
+ * adds a single node to the scene (or a single image to the canvas)
+ * however large the figure is. Recursive drawings can therefore be built
+ * from figures of figures, with a scene that grows with the depth of the
+ * recursion rather than with the size of the drawing. Lines are as many
+ * pixels wide as the pen that drew them at any scale, as they are when
+ * they are drawn directly, but the image is scaled with the world
+ * afterwards, so zooming in shows its pixels. As with a
+ * {@link PngWriter}, text in a figure is not shown, though anything
+ * attached with {@link Turtle#record(CommandVisitor)} receives it.
+ */
+public final class Figure {
+    /**
+     * The largest width or height of the image of a figure, in pixels.
+     */
+    private static final int MAX_IMAGE_SIZE = 4096;
+
+    /**
+     * The most pixels that the images of a figure that are kept may hold
+     * together; enough for one image of the largest size. The images that
+     * have been used least recently are forgotten first, but the one used
+     * last is always kept.
+     */
+    private static final long MAX_CACHED_PIXELS =
+            (long)MAX_IMAGE_SIZE * MAX_IMAGE_SIZE;
+
+    /**
+     * The number of resolutions at which a figure may be rasterized for
+     * each doubling of its scale. A figure is rasterized at the nearest of
+     * them at or above the scale at which it is shown.
+     */
+    private static final int RESOLUTIONS_PER_DOUBLING = 8;
+
+    /**
+     * The figure's commands, relative to the Turtle that recorded it: at
+     * the origin, facing east.
+     */
+    private final CommandBuffer commands;
+
+    /**
+     * The x coordinate at which the Turtle ended.
+     */
+    private final double endX;
+
+    /**
+     * The y coordinate at which the Turtle ended.
+     */
+    private final double endY;
+
+    /**
+     * The heading at which the Turtle ended.
+     */
+    private final double endHeading;
+
+    /**
+     * The smallest x coordinate of the figure.
+     */
+    private final double minX;
+
+    /**
+     * The smallest y coordinate of the figure.
+     */
+    private final double minY;
+
+    /**
+     * The largest x coordinate of the figure.
+     */
+    private final double maxX;
+
+    /**
+     * The largest y coordinate of the figure.
+     */
+    private final double maxY;
+
+    /**
+     * The widest pen used in the figure.
+     */
+    private final int maxPenWidth;
+
+    /**
+     * The images of the figure that are kept, by resolution, from the one
+     * used least recently to the one used last.
+     */
+    private final Map<Integer, Raster> rasters;
+
+    /**
+     * The number of pixels in the images that are kept.
+     */
+    private long cachedPixels;
+
+    /**
+     * Creates a new figure.
+     *
+     * @param recorder The recorder of the figure's commands.
+     * @param endX The x coordinate at which the Turtle ended.
+     * @param endY The y coordinate at which the Turtle ended.
+     * @param endHeading The heading at which the Turtle ended.
+     */
+    private Figure(Recorder recorder, double endX, double endY,
+                   double endHeading) {
+        commands = recorder.commands;
+        this.endX = endX;
+        this.endY = endY;
+        this.endHeading = endHeading;
+        minX = recorder.minX;
+        minY = recorder.minY;
+        maxX = recorder.maxX;
+        maxY = recorder.maxY;
+        maxPenWidth = recorder.maxPenWidth;
+        rasters = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the number of commands in the figure.
+     *
+     * @return The number of commands.
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Sends the figure's commands, relative to the Turtle that recorded
+     * it, to a visitor.
+     *
+     * @param visitor The visitor.
+     */
+    void replay(CommandVisitor visitor) {
+        commands.replay(visitor);
+    }
+
+    /**
+     * Returns the x coordinate at which the Turtle ended, relative to
+     * where it started.
+     *
+     * @return The x coordinate.
+     */
+    double getEndX() {
+        return endX;
+    }
+
+    /**
+     * Returns the y coordinate at which the Turtle ended, relative to
+     * where it started.
+     *
+     * @return The y coordinate.
+     */
+    double getEndY() {
+        return endY;
+    }
+
+    /**
+     * Returns the heading at which the Turtle ended, relative to the one
+     * at which it started.
+     *
+     * @return The heading in degrees, counterclockwise.
+     */
+    double getEndHeading() {
+        return endHeading;
+    }
+
+    /**
+     * Returns an image of the figure for showing it at the specified
+     * scale, rasterizing it if no image at that resolution is kept, and
+     * forgetting the images used least recently if the images kept would
+     * hold too many pixels. Requires the JavaFX toolkit, but may be called in
+     * any thread.
+     *
+     * @param scale The number of pixels on the screen per unit of the
+     *              figure.
+     *
+     * @return The image.
+     */
+    synchronized Raster raster(double scale) {
+        int resolution = (int)Math.ceil(Math.log(scale) / Math.log(2) *
+                RESOLUTIONS_PER_DOUBLING);
+        Raster raster = rasters.get(resolution);
+        if(raster == null) {
+            raster = rasterize(Math.pow(2,
+                    (double)resolution / RESOLUTIONS_PER_DOUBLING));
+            rasters.put(resolution, raster);
+            cachedPixels += raster.pixels();
+            Iterator<Raster> eldest = rasters.values().iterator();
+            while(cachedPixels > MAX_CACHED_PIXELS && rasters.size() > 1) {
+                cachedPixels -= eldest.next().pixels();
+                eldest.remove();
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Rasterizes the figure on a transparent background.
+     *
+     * @param scale The number of pixels per unit of the figure, which is
+     *              reduced if the image would be too large.
+     *
+     * @return The image.
+     */
+    private Raster rasterize(double scale) {
+        // leave room for the widest line and its antialiasing
+        double margin = maxPenWidth / 2.0 + 1;
+        double extent = Math.max(maxX - minX, maxY - minY);
+        if(extent * scale + margin * 2 > MAX_IMAGE_SIZE) {
+            scale = (MAX_IMAGE_SIZE - margin * 2) / extent;
+        }
+        int width = (int)Math.ceil((maxX - minX) * scale + margin * 2);
+        int height = (int)Math.ceil((maxY - minY) * scale + margin * 2);
+        double left = minX - margin / scale;
+        double top = maxY + margin / scale;
+
+        PngWriter png = new PngWriter(OutputStream.nullOutputStream(), width,
+                height, left, top, scale);
+        png.background(Color.TRANSPARENT);
+        commands.replay(png);
+        WritableImage image = new WritableImage(width, height);
+        png.write(image.getPixelWriter());
+        return new Raster(image, scale, left, top);
+    }
+
+    /**
+     * Returns the cosine of an angle, exactly for multiples of 90 degrees.
+     *
+     * @param degrees The angle in degrees.
+     *
+     * @return The cosine.
+     */
+    private static double cosine(double degrees) {
+        return degrees % 90 == 0 ? sine(degrees + 90) :
+                Math.cos(Math.toRadians(degrees));
+    }
+
+    /**
+     * Returns the sine of an angle, exactly for multiples of 90 degrees.
+     *
+     * @param degrees The angle in degrees.
+     *
+     * @return The sine.
+     */
+    private static double sine(double degrees) {
+        if(degrees % 90 == 0) {
+            // the number of counterclockwise quarter turns from east
+            int quarters = ((int)(degrees % 360 / 90) + 4) % 4;
+            return quarters == 1 ? 1 : quarters == 3 ? -1 : 0;
+        }
+        return Math.sin(Math.toRadians(degrees));
+    }
+
+    /**
+     * An image of a figure and the region of the figure that it shows.
+     */
+    static final class Raster {
+        /**
+         * The image.
+         */
+        private final Image image;
+
+        /**
+         * The number of pixels per unit of the figure.
+         */
+        private final double scale;
+
+        /**
+         * The x coordinate in the figure of the image's left edge.
+         */
+        private final double left;
+
+        /**
+         * The y coordinate in the figure of the image's top edge.
+         */
+        private final double top;
+
+        /**
+         * Creates a new image of a figure.
+         *
+         * @param image The image.
+         * @param scale The number of pixels per unit of the figure.
+         * @param left The x coordinate of the image's left edge.
+         * @param top The y coordinate of the image's top edge.
+         */
+        Raster(Image image, double scale, double left, double top) {
+            this.image = image;
+            this.scale = scale;
+            this.left = left;
+            this.top = top;
+        }
+
+        /**
+         * Returns the image.
+         *
+         * @return The image.
+         */
+        Image getImage() {
+            return image;
+        }
+
+        /**
+         * Returns the number of pixels in the image.
+         *
+         * @return The width of the image times its height.
+         */
+        long pixels() {
+            return (long)image.getWidth() * (long)image.getHeight();
+        }
+    }
+
+    /**
+     * Records the commands of a Turtle relative to its location and heading
+     * when the recording started.
+     */
+    static final class Recorder implements CommandVisitor {
+        /**
+         * The commands, relative to the start.
+         */
+        private final CommandBuffer commands;
+
+        /**
+         * The x coordinate at which the Turtle started.
+         */
+        private final double originX;
+
+        /**
+         * The y coordinate at which the Turtle started.
+         */
+        private final double originY;
+
+        /**
+         * The heading at which the Turtle started.
+         */
+        private final double heading;
+
+        /**
+         * The cosine of the rotation from the Turtle's world into the
+         * figure.
+         */
+        private final double cosine;
+
+        /**
+         * The sine of the rotation from the Turtle's world into the
+         * figure.
+         */
+        private final double sine;
+
+        /**
+         * The smallest x coordinate so far.
+         */
+        private double minX;
+
+        /**
+         * The smallest y coordinate so far.
+         */
+        private double minY;
+
+        /**
+         * The largest x coordinate so far.
+         */
+        private double maxX;
+
+        /**
+         * The largest y coordinate so far.
+         */
+        private double maxY;
+
+        /**
+         * The widest pen so far.
+         */
+        private int maxPenWidth;
+
+        /**
+         * Creates a new recorder.
+         *
+         * @param originX The x coordinate at which the Turtle starts.
+         * @param originY The y coordinate at which the Turtle starts.
+         * @param heading The heading at which the Turtle starts.
+         */
+        Recorder(double originX, double originY, double heading) {
+            commands = new CommandBuffer();
+            this.originX = originX;
+            this.originY = originY;
+            this.heading = heading;
+            cosine = cosine(-heading);
+            sine = sine(-heading);
+            maxPenWidth = 1;
+        }
+
+        /**
+         * Ends the recording.
+         *
+         * @param x The x coordinate at which the Turtle ended.
+         * @param y The y coordinate at which the Turtle ended.
+         * @param heading The heading at which the Turtle ended.
+         *
+         * @return The recorded figure.
+         */
+        Figure finish(double x, double y, double heading) {
+            return new Figure(this, localX(x, y), localY(x, y),
+                    heading - this.heading);
+        }
+
+        @Override
+        public void moveTo(double x, double y) {
+            commands.moveTo(include(x, y), localY(x, y));
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            commands.lineTo(include(x, y), localY(x, y));
+        }
+
+        @Override
+        public void arcTo(double x, double y, double centerX,
+                          double centerY, double sweep) {
+            double radius = Math.hypot(x - centerX, y - centerY);
+            double localCenterX = localX(centerX, centerY);
+            double localCenterY = localY(centerX, centerY);
+            // the whole circle bounds the arc
+            minX = Math.min(minX, localCenterX - radius);
+            minY = Math.min(minY, localCenterY - radius);
+            maxX = Math.max(maxX, localCenterX + radius);
+            maxY = Math.max(maxY, localCenterY + radius);
+            commands.arcTo(localX(x, y), localY(x, y), localCenterX,
+                    localCenterY, sweep);
+        }
+
+        @Override
+        public void heading(double heading) {
+            commands.heading(heading - this.heading);
+        }
+
+        @Override
+        public void penColor(Color color) {
+            commands.penColor(color);
+        }
+
+        @Override
+        public void fillColor(Color color) {
+            commands.fillColor(color);
+        }
+
+        @Override
+        public void penWidth(int width) {
+            maxPenWidth = Math.max(maxPenWidth, width);
+            commands.penWidth(width);
+        }
+
+        @Override
+        public void beginFill() {
+            commands.beginFill();
+        }
+
+        @Override
+        public void endFill() {
+            commands.endFill();
+        }
+
+        @Override
+        public void text(String message) {
+            commands.text(message);
+        }
+
+        @Override
+        public void background(Color color) {
+            // the background is not part of a figure
+        }
+
+        /**
+         * Includes a point in the bounds of the figure.
+         *
+         * @param x The x coordinate in the Turtle's world.
+         * @param y The y coordinate in the Turtle's world.
+         *
+         * @return The x coordinate of the point in the figure.
+         */
+        private double include(double x, double y) {
+            double localX = localX(x, y);
+            double localY = localY(x, y);
+            if(commands.size() == 0) {
+                minX = localX;
+                minY = localY;
+                maxX = localX;
+                maxY = localY;
+            }
+            minX = Math.min(minX, localX);
+            minY = Math.min(minY, localY);
+            maxX = Math.max(maxX, localX);
+            maxY = Math.max(maxY, localY);
+            return localX;
+        }
+
+        /**
+         * Translates a point in the Turtle's world into the figure.
+         *
+         * @param x The x coordinate in the Turtle's world.
+         * @param y The y coordinate in the Turtle's world.
+         *
+         * @return The x coordinate in the figure.
+         */
+        private double localX(double x, double y) {
+            return (x - originX) * cosine - (y - originY) * sine;
+        }
+
+        /**
+         * Translates a point in the Turtle's world into the figure.
+         *
+         * @param x The x coordinate in the Turtle's world.
+         * @param y The y coordinate in the Turtle's world.
+         *
+         * @return The y coordinate in the figure.
+         */
+        private double localY(double x, double y) {
+            return (x - originX) * sine + (y - originY) * cosine;
+        }
+    }
+
+    /**
+     * Places a figure in the Turtle's world: translates its commands to a
+     * location, heading and scale and sends them on to another visitor,
+     * leaving out those that would not change the visitor's state.
+     */
+    static final class Placement implements CommandVisitor {
+        /**
+         * The visitor that receives the placed commands, or null.
+         */
+        private final CommandVisitor target;
+
+        /**
+         * The x coordinate at which the figure is placed.
+         */
+        private final double originX;
+
+        /**
+         * The y coordinate at which the figure is placed.
+         */
+        private final double originY;
+
+        /**
+         * The heading at which the figure is placed.
+         */
+        private final double heading;
+
+        /**
+         * The cosine of the rotation from the figure into the Turtle's
+         * world, times the scale.
+         */
+        private final double cosine;
+
+        /**
+         * The sine of the rotation from the figure into the Turtle's
+         * world, times the scale.
+         */
+        private final double sine;
+
+        /**
+         * The target's x coordinate.
+         */
+        private double x;
+
+        /**
+         * The target's y coordinate.
+         */
+        private double y;
+
+        /**
+         * The target's heading.
+         */
+        private double facing;
+
+        /**
+         * The target's pen color.
+         */
+        private Color penColor;
+
+        /**
+         * The target's fill color.
+         */
+        private Color fillColor;
+
+        /**
+         * The target's pen width.
+         */
+        private int penWidth;
+
+        /**
+         * Creates a new placement.
+         *
+         * @param target The visitor that receives the placed commands, or
+         *               null if they are not needed.
+         * @param originX The x coordinate at which the figure is placed.
+         * @param originY The y coordinate at which the figure is placed.
+         * @param heading The heading at which the figure is placed.
+         * @param scale The scale of the figure; negative to turn it
+         *              around.
+         */
+        Placement(CommandVisitor target, double originX, double originY,
+                  double heading, double scale) {
+            this.target = target;
+            this.originX = originX;
+            this.originY = originY;
+            this.heading = scale < 0 ? heading + 180 : heading;
+            cosine = cosine(this.heading) * Math.abs(scale);
+            sine = sine(this.heading) * Math.abs(scale);
+        }
+
+        /**
+         * Sends a figure's placed commands to the target, which has the
+         * Turtle's state, and then restores the Turtle's pen and colors.
+         *
+         * @param figure The figure.
+         * @param penColor The Turtle's pen color.
+         * @param fillColor The Turtle's fill color.
+         * @param penWidth The Turtle's pen width.
+         * @param heading The Turtle's heading before the figure is placed.
+         */
+        void replay(Figure figure, Color penColor, Color fillColor,
+                    int penWidth, double heading) {
+            x = originX;
+            y = originY;
+            facing = heading;
+            this.penColor = penColor;
+            this.fillColor = fillColor;
+            this.penWidth = penWidth;
+            figure.replay(this);
+            penColor(penColor);
+            fillColor(fillColor);
+            penWidth(penWidth);
+            heading(figure.endHeading);
+        }
+
+        /**
+         * Translates a point in the figure into the Turtle's world.
+         *
+         * @param x The x coordinate in the figure.
+         * @param y The y coordinate in the figure.
+         *
+         * @return The x coordinate in the Turtle's world.
+         */
+        double worldX(double x, double y) {
+            return originX + x * cosine - y * sine;
+        }
+
+        /**
+         * Translates a point in the figure into the Turtle's world.
+         *
+         * @param x The x coordinate in the figure.
+         * @param y The y coordinate in the figure.
+         *
+         * @return The y coordinate in the Turtle's world.
+         */
+        double worldY(double x, double y) {
+            return originY + x * sine + y * cosine;
+        }
+
+        /**
+         * Translates a heading in the figure into the Turtle's world.
+         *
+         * @param heading The heading in the figure.
+         *
+         * @return The heading in the Turtle's world.
+         */
+        double worldHeading(double heading) {
+            return this.heading + heading;
+        }
+
+        /**
+         * Returns the transform from the pixels of an image of the figure
+         * into the drawing's coordinates, in which the y axis points down.
+         *
+         * @param raster The image.
+         *
+         * @return The transform.
+         */
+        Affine toDrawing(Raster raster) {
+            double left = worldX(raster.left, raster.top);
+            double top = worldY(raster.left, raster.top);
+            return new Affine(cosine / raster.scale, sine / raster.scale,
+                    left, -sine / raster.scale, cosine / raster.scale, -top);
+        }
+
+        @Override
+        public void moveTo(double x, double y) {
+            double toX = worldX(x, y);
+            double toY = worldY(x, y);
+            if(toX != this.x || toY != this.y) {
+                this.x = toX;
+                this.y = toY;
+                target.moveTo(toX, toY);
+            }
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            this.x = worldX(x, y);
+            this.y = worldY(x, y);
+            target.lineTo(this.x, this.y);
+        }
+
+        @Override
+        public void arcTo(double x, double y, double centerX,
+                          double centerY, double sweep) {
+            // a rotation and a uniform scale keep the arc's direction
+            this.x = worldX(x, y);
+            this.y = worldY(x, y);
+            target.arcTo(this.x, this.y, worldX(centerX, centerY),
+                    worldY(centerX, centerY), sweep);
+        }
+
+        @Override
+        public void heading(double heading) {
+            double to = worldHeading(heading);
+            if(to != facing) {
+                facing = to;
+                target.heading(to);
+            }
+        }
+
+        @Override
+        public void penColor(Color color) {
+            if(!color.equals(penColor)) {
+                penColor = color;
+                target.penColor(color);
+            }
+        }
+
+        @Override
+        public void fillColor(Color color) {
+            if(!color.equals(fillColor)) {
+                fillColor = color;
+                target.fillColor(color);
+            }
+        }
+
+        @Override
+        public void penWidth(int width) {
+            if(width != penWidth) {
+                penWidth = width;
+                target.penWidth(width);
+            }
+        }
+
+        @Override
+        public void beginFill() {
+            target.beginFill();
+        }
+
+        @Override
+        public void endFill() {
+            target.endFill();
+        }
+
+        @Override
+        public void text(String message) {
+            target.text(message);
+        }
+
+        @Override
+        public void background(Color color) {
+            // a figure has no background
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * The outline of a shape that a Turtle is filling.
+ */
+package turtle;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.shape.ArcTo;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+
+import java.util.Arrays;
+
+/**
+ * The outline of a shape that a {@link Turtle} is filling, in the drawing's
+ * coordinates. The outline is built in primitive arrays, in the same way as
+ * a {@link CommandBuffer}, without creating any JavaFX objects, so adding to
+ * it costs the same however many vertices it already has. Once the fill
+ * ends, a renderer either turns the outline into a single {@link Path} or
+ * traces it directly onto a canvas.
+ *
+ * An outline is built by the Turtle's thread and handed over to the JavaFX
+ * application thread when the fill ends; it must not be modified after
+ * that.
+ */
+final class FillOutline {
+    /**
+     * The initial capacity of the kind and coordinate arrays.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Kind of a move to the start of the outline; coordinates: x, y.
+     */
+    private static final byte MOVE_TO = 0;
+
+    /**
+     * Kind of a straight edge; coordinates: x, y.
+     */
+    private static final byte LINE_TO = 1;
+
+    /**
+     * Kind of an edge along an arc of no more than 180 degrees; coordinates:
+     * x, y, centerX, centerY and the sweep in degrees, counterclockwise on
+     * the screen.
+     */
+    private static final byte ARC_TO = 2;
+
+    /**
+     * The kinds of the elements of the outline, in order.
+     */
+    private byte[] kinds;
+
+    /**
+     * The number of elements in the outline.
+     */
+    private int size;
+
+    /**
+     * The coordinates of the elements of the outline, in order.
+     */
+    private double[] coordinates;
+
+    /**
+     * The number of coordinates in use.
+     */
+    private int coordinateCount;
+
+    /**
+     * Creates a new outline that starts at the specified point.
+     *
+     * @param x The x coordinate of the start of the outline.
+     * @param y The y coordinate of the start of the outline.
+     */
+    FillOutline(double x, double y) {
+        kinds = new byte[INITIAL_CAPACITY];
+        coordinates = new double[INITIAL_CAPACITY * 2];
+        add(MOVE_TO, 2);
+        coordinates[coordinateCount++] = x;
+        coordinates[coordinateCount++] = y;
+    }
+
+    /**
+     * Returns the number of elements in the outline, including the move to
+     * its start.
+     *
+     * @return The number of elements.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a straight edge to the outline.
+     *
+     * @param x The x coordinate of the end of the edge.
+     * @param y The y coordinate of the end of the edge.
+     */
+    void lineTo(double x, double y) {
+        add(LINE_TO, 2);
+        coordinates[coordinateCount++] = x;
+        coordinates[coordinateCount++] = y;
+    }
+
+    /**
+     * Adds an edge along an arc of a circle of no more than 180 degrees to
+     * the outline.
+     *
+     * @param x The x coordinate of the end of the edge.
+     * @param y The y coordinate of the end of the edge.
+     * @param centerX The x coordinate of the center of the circle.
+     * @param centerY The y coordinate of the center of the circle.
+     * @param sweep The number of degrees that the arc sweeps
+     *              counterclockwise on the screen; negative if it sweeps
+     *              clockwise.
+     */
+    void arcTo(double x, double y, double centerX, double centerY,
+               double sweep) {
+        add(ARC_TO, 5);
+        coordinates[coordinateCount++] = x;
+        coordinates[coordinateCount++] = y;
+        coordinates[coordinateCount++] = centerX;
+        coordinates[coordinateCount++] = centerY;
+        coordinates[coordinateCount++] = sweep;
+    }
+
+    /**
+     * Returns the bounds of the outline, taking the whole circle of each
+     * arc.
+     *
+     * @return The smallest x and y coordinates and the largest x and y
+     *         coordinates, in that order.
+     */
+    double[] bounds() {
+        double[] bounds = {coordinates[0], coordinates[1], coordinates[0],
+                coordinates[1]};
+        int c = 0;
+        for(int i=0; i<size; i++) {
+            double x = coordinates[c++];
+            double y = coordinates[c++];
+            double reach = 0;
+            if(kinds[i] == ARC_TO) {
+                double centerX = coordinates[c++];
+                double centerY = coordinates[c++];
+                c++;
+                reach = Math.hypot(x - centerX, y - centerY);
+                x = centerX;
+                y = centerY;
+            }
+            bounds[0] = Math.min(bounds[0], x - reach);
+            bounds[1] = Math.min(bounds[1], y - reach);
+            bounds[2] = Math.max(bounds[2], x + reach);
+            bounds[3] = Math.max(bounds[3], y + reach);
+        }
+        return bounds;
+    }
+
+    /**
+     * Makes a JavaFX path with the same outline.
+     *
+     * @return The new path.
+     */
+    Path toPath() {
+        PathElement[] elements = new PathElement[size];
+        int c = 0;
+        for(int i=0; i<size; i++) {
+            double x = coordinates[c++];
+            double y = coordinates[c++];
+            switch(kinds[i]) {
+                case MOVE_TO:
+                    elements[i] = new MoveTo(x, y);
+                    break;
+                case LINE_TO:
+                    elements[i] = new LineTo(x, y);
+                    break;
+                default:
+                    double centerX = coordinates[c++];
+                    double centerY = coordinates[c++];
+                    double sweep = coordinates[c++];
+                    double radius = Math.hypot(x - centerX, y - centerY);
+                    // a clockwise arc sweeps in the positive angle
+                    // direction in JavaFX coordinates
+                    elements[i] = new ArcTo(radius, radius, 0, x, y, false,
+                            sweep < 0);
+                    break;
+            }
+        }
+        return new Path(elements);
+    }
+
+    /**
+     * Traces the outline as the current path of a graphics context,
+     * replacing any path that it already has.
+     *
+     * @param graphics The graphics context.
+     */
+    void trace(GraphicsContext graphics) {
+        double fromX = 0;
+        double fromY = 0;
+        int c = 0;
+        graphics.beginPath();
+        for(int i=0; i<size; i++) {
+            double x = coordinates[c++];
+            double y = coordinates[c++];
+            switch(kinds[i]) {
+                case MOVE_TO:
+                    graphics.moveTo(x, y);
+                    break;
+                case LINE_TO:
+                    graphics.lineTo(x, y);
+                    break;
+                default:
+                    double centerX = coordinates[c++];
+                    double centerY = coordinates[c++];
+                    traceArc(graphics, fromX, fromY, x, y, centerX, centerY,
+                            coordinates[c++]);
+                    break;
+            }
+            fromX = x;
+            fromY = y;
+        }
+    }
+
+    /**
+     * Appends an arc to the current path of a graphics context, which
+     * describes arcs by their start angle and length rather than by their
+     * end points. The length is the arc's own sweep, not the difference
+     * between the angles of its ends, which would turn a tiny arc whose end
+     * angle rounds past its start angle into a whole circle.
+     *
+     * @param graphics The graphics context.
+     * @param fromX The x coordinate of the start of the arc.
+     * @param fromY The y coordinate of the start of the arc.
+     * @param x The x coordinate of the end of the arc.
+     * @param y The y coordinate of the end of the arc.
+     * @param centerX The x coordinate of the center of the circle.
+     * @param centerY The y coordinate of the center of the circle.
+     * @param sweep The number of degrees that the arc sweeps
+     *              counterclockwise on the screen.
+     */
+    private static void traceArc(GraphicsContext graphics, double fromX,
+                                 double fromY, double x, double y,
+                                 double centerX, double centerY,
+                                 double sweep) {
+        double radius = Math.hypot(x - centerX, y - centerY);
+
+        // angles are measured counterclockwise as seen on the screen
+        double startAngle = Math.toDegrees(
+                Math.atan2(centerY - fromY, fromX - centerX));
+        graphics.arc(centerX, centerY, radius, radius, startAngle, sweep);
+    }
+
+    /**
+     * Adds an element, growing the arrays if necessary.
+     *
+     * @param kind The kind of element.
+     * @param count The number of coordinates that the element has.
+     */
+    private void add(byte kind, int count) {
+        if(size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+        }
+        if(coordinateCount + count > coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates,
+                    Math.max(coordinates.length * 2, coordinateCount + count));
+        }
+        kinds[size++] = kind;
+    }
+}
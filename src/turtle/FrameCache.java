@@ -0,0 +1,229 @@
+/*
+ * Saves rendered tiles so that frames can be rendered from them.
+ */
+package turtle;
+
+import java.util.Arrays;
+
+/**
+ * Saves the tiles of the frames that a {@link PngWriter} renders at its
+ * checkpoints, so that a tile can be rendered at any step by rendering
+ * only what appears between the nearest checkpoint before that step and
+ * the step on top of the saved tile, instead of everything before it.
+ *
+ * A checkpoint is a step at which no fill has begun that has not ended, so
+ * that the primitives that appear before it come before all those that
+ * appear after it. Each tile is saved at a checkpoint the first time it is
+ * rendered past it, and only if something in it has changed since the
+ * checkpoint before; a tile is saved with the background it was rendered
+ * on, and used only for frames with the same background. The saved tiles
+ * take at most a quarter of the heap: when they would take more, every
+ * other checkpoint is forgotten, and so on, so that rendering a tile costs
+ * at most twice as much as before each time. The tiles of a frame may be
+ * rendered concurrently.
+ */
+class FrameCache {
+    /**
+     * The most bytes that the saved tiles may take.
+     */
+    private static final long MAX_BYTES = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * The rasterizer that renders the tiles.
+     */
+    private final Rasterizer rasterizer;
+
+    /**
+     * The saved tiles, by tile and then by checkpoint; null for a tile that
+     * has not been saved at any checkpoint.
+     */
+    private final Snapshot[][] snapshots;
+
+    /**
+     * The steps of the checkpoints, in increasing order.
+     */
+    private int[] checkpoints;
+
+    /**
+     * The number of checkpoints.
+     */
+    private int count;
+
+    /**
+     * The number of checkpoints from one at which tiles are saved to the
+     * next; a power of two.
+     */
+    private int spacing;
+
+    /**
+     * The number of bytes that the saved tiles take.
+     */
+    private long bytes;
+
+    /**
+     * Creates a new cache without any checkpoints.
+     *
+     * @param rasterizer The rasterizer that renders the tiles.
+     * @param tiles The number of tiles in a frame.
+     */
+    FrameCache(Rasterizer rasterizer, int tiles) {
+        this.rasterizer = rasterizer;
+        snapshots = new Snapshot[tiles][];
+        checkpoints = new int[16];
+        spacing = 1;
+    }
+
+    /**
+     * Adds a checkpoint. Checkpoints must be added in increasing order and
+     * before any tile is rendered.
+     *
+     * @param step The step of the checkpoint.
+     */
+    void checkpoint(int step) {
+        if(count == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, count * 2);
+        }
+        checkpoints[count++] = step;
+    }
+
+    /**
+     * Renders a tile as it was before the specified step, saving it at the
+     * checkpoints that it is rendered past.
+     *
+     * @param tile The number of the tile in the frame.
+     * @param left The x coordinate of the tile's left edge.
+     * @param top The y coordinate of the tile's top edge.
+     * @param width The width of the tile.
+     * @param height The height of the tile.
+     * @param pixels The tile's pixels, filled with the background.
+     * @param until The first step that is not rendered.
+     * @param background The background color as a packed ARGB value.
+     */
+    void render(int tile, int left, int top, int width, int height,
+                float[] pixels, int until, int background) {
+        // the last checkpoint at or before the step
+        int last = Arrays.binarySearch(checkpoints, 0, count, until);
+        if(last < 0) {
+            last = -last - 2;
+        }
+        int from = 0;
+        int next = 0;
+        Snapshot base = find(tile, last, background);
+        if(base != null) {
+            System.arraycopy(base.pixels, 0, pixels, 0, pixels.length);
+            from = checkpoints[base.checkpoint];
+            next = base.checkpoint + 1;
+        }
+        boolean changed = false;
+        for(int c=next; c<=last; c++) {
+            changed |= rasterizer.render(left, top, width, height, pixels,
+                    from, checkpoints[c]) > 0;
+            from = checkpoints[c];
+            if(changed && save(tile, c, background, pixels)) {
+                changed = false;
+            }
+        }
+        rasterizer.render(left, top, width, height, pixels, from, until);
+    }
+
+    /**
+     * Finds the saved tile at the last checkpoint at or before the
+     * specified one with the specified background.
+     *
+     * @param tile The number of the tile.
+     * @param last The index of the last checkpoint to consider.
+     * @param background The background color as a packed ARGB value.
+     *
+     * @return The saved tile; null if there is none.
+     */
+    private synchronized Snapshot find(int tile, int last, int background) {
+        Snapshot[] saved = snapshots[tile];
+        if(saved == null) {
+            return null;
+        }
+        for(int c=last; c>=0; c--) {
+            if(saved[c] != null && saved[c].background == background) {
+                return saved[c];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves a tile at a checkpoint, unless tiles are not saved at that
+     * checkpoint, forgetting every other checkpoint while the saved tiles
+     * take too much memory.
+     *
+     * @param tile The number of the tile.
+     * @param checkpoint The index of the checkpoint.
+     * @param background The background color as a packed ARGB value.
+     * @param pixels The tile's pixels at the checkpoint.
+     *
+     * @return True if the tile was saved.
+     */
+    private synchronized boolean save(int tile, int checkpoint,
+                                      int background, float[] pixels) {
+        if(checkpoint % spacing != 0) {
+            return false;
+        }
+        if(snapshots[tile] == null) {
+            snapshots[tile] = new Snapshot[count];
+        }
+        Snapshot[] saved = snapshots[tile];
+        if(saved[checkpoint] != null) {
+            bytes -= saved[checkpoint].pixels.length * 4L;
+        }
+        saved[checkpoint] = new Snapshot(checkpoint, background,
+                pixels.clone());
+        bytes += pixels.length * 4L;
+        while(bytes > MAX_BYTES && spacing < count) {
+            spacing *= 2;
+            for(Snapshot[] forget : snapshots) {
+                if(forget == null) {
+                    continue;
+                }
+                for(int c=0; c<count; c++) {
+                    if(forget[c] != null && c % spacing != 0) {
+                        bytes -= forget[c].pixels.length * 4L;
+                        forget[c] = null;
+                    }
+                }
+            }
+        }
+        return saved[checkpoint] != null;
+    }
+
+    /**
+     * A tile saved at a checkpoint.
+     */
+    private static final class Snapshot {
+        /**
+         * The index of the checkpoint.
+         */
+        private final int checkpoint;
+
+        /**
+         * The background on which the tile was rendered, as a packed ARGB
+         * value.
+         */
+        private final int background;
+
+        /**
+         * The tile's pixels, premultiplied.
+         */
+        private final float[] pixels;
+
+        /**
+         * Creates a new saved tile.
+         *
+         * @param checkpoint The index of the checkpoint.
+         * @param background The background as a packed ARGB value.
+         * @param pixels The tile's pixels.
+         */
+        Snapshot(int checkpoint, int background, float[] pixels) {
+            this.checkpoint = checkpoint;
+            this.background = background;
+            this.pixels = pixels;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * A spatial index of rectangular bounds.
+ */
+package turtle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A sparse uniform grid that indexes items by their bounding rectangles, so
+ * that the items intersecting a region can be found without looking at every
+ * item. Items are added incrementally; an item may be added several times
+ * with different bounds (e.g. once for each segment of a polyline) and is
+ * reported once by a query. Items that span very many cells are kept in a
+ * separate list that every query checks.
+ *
+ * A grid is not thread safe.
+ *
+ * @param <T> The type of the indexed items.
+ */
+class Grid<T> {
+    /**
+     * The number of cells above which an item is not added to the cells it
+     * spans but to the list of large items.
+     */
+    private static final int MAX_CELLS = 64;
+
+    /**
+     * The width and height of each cell.
+     */
+    private final double cellSize;
+
+    /**
+     * The cells that contain at least one item, by their packed column and
+     * row.
+     */
+    private final Map<Long, List<Entry<T>>> cells;
+
+    /**
+     * The items that span too many cells to be added to each of them.
+     */
+    private final List<Entry<T>> large;
+
+    /**
+     * Creates a new, empty grid.
+     *
+     * @param cellSize The width and height of each cell.
+     */
+    Grid(double cellSize) {
+        this.cellSize = cellSize;
+        cells = new HashMap<>();
+        large = new ArrayList<>();
+    }
+
+    /**
+     * Adds an item with the specified bounds.
+     *
+     * @param item The item to add.
+     * @param minX The smallest x coordinate of the item's bounds.
+     * @param minY The smallest y coordinate of the item's bounds.
+     * @param maxX The largest x coordinate of the item's bounds.
+     * @param maxY The largest y coordinate of the item's bounds.
+     */
+    void add(T item, double minX, double minY, double maxX, double maxY) {
+        Entry<T> entry = new Entry<>(item, minX, minY, maxX, maxY);
+        int left = cell(minX);
+        int top = cell(minY);
+        int right = cell(maxX);
+        int bottom = cell(maxY);
+        if((long)(right - left + 1) * (bottom - top + 1) > MAX_CELLS) {
+            large.add(entry);
+            return;
+        }
+        for(int column=left; column<=right; column++) {
+            for(int row=top; row<=bottom; row++) {
+                cells.computeIfAbsent(key(column, row),
+                        k -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Returns every item with bounds that intersect the specified region.
+     *
+     * @param minX The smallest x coordinate of the region.
+     * @param minY The smallest y coordinate of the region.
+     * @param maxX The largest x coordinate of the region.
+     * @param maxY The largest y coordinate of the region.
+     *
+     * @return The items in the region, in no particular order.
+     */
+    Set<T> query(double minX, double minY, double maxX, double maxY) {
+        Set<T> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        int left = cell(minX);
+        int top = cell(minY);
+        int right = cell(maxX);
+        int bottom = cell(maxY);
+        if((long)(right - left + 1) * (bottom - top + 1) <= cells.size()) {
+            for(int column=left; column<=right; column++) {
+                for(int row=top; row<=bottom; row++) {
+                    collect(cells.get(key(column, row)), found, minX, minY,
+                            maxX, maxY);
+                }
+            }
+        }
+        else {
+            // the region covers more cells than are occupied
+            for(List<Entry<T>> cell : cells.values()) {
+                collect(cell, found, minX, minY, maxX, maxY);
+            }
+        }
+        collect(large, found, minX, minY, maxX, maxY);
+        return found;
+    }
+
+    /**
+     * Adds the items in a list of entries that intersect a region to a set.
+     *
+     * @param entries The entries, or null.
+     * @param found The set to which the items should be added.
+     * @param minX The smallest x coordinate of the region.
+     * @param minY The smallest y coordinate of the region.
+     * @param maxX The largest x coordinate of the region.
+     * @param maxY The largest y coordinate of the region.
+     */
+    private static <T> void collect(List<Entry<T>> entries, Set<T> found,
+                                    double minX, double minY, double maxX,
+                                    double maxY) {
+        if(entries == null) {
+            return;
+        }
+        for(Entry<T> entry : entries) {
+            if(entry.minX <= maxX && entry.maxX >= minX &&
+                    entry.minY <= maxY && entry.maxY >= minY) {
+                found.add(entry.item);
+            }
+        }
+    }
+
+    /**
+     * Returns the column or row of the cell containing a coordinate.
+     *
+     * @param coordinate The x or y coordinate.
+     *
+     * @return The cell's column or row.
+     */
+    private int cell(double coordinate) {
+        double cell = Math.floor(coordinate / cellSize);
+        return (int)Math.max(Integer.MIN_VALUE / 2,
+                Math.min(Integer.MAX_VALUE / 2, cell));
+    }
+
+    /**
+     * Packs a column and row into the key of a cell.
+     *
+     * @param column The cell's column.
+     * @param row The cell's row.
+     *
+     * @return The cell's key.
+     */
+    private static long key(int column, int row) {
+        return (long)column << 32 | (row & 0xffffffffL);
+    }
+
+    /**
+     * An item and its bounds.
+     *
+     * @param <T> The type of the item.
+     */
+    private static final class Entry<T> {
+        /**
+         * The item.
+         */
+        private final T item;
+
+        /**
+         * The smallest x coordinate of the item's bounds.
+         */
+        private final double minX;
+
+        /**
+         * The smallest y coordinate of the item's bounds.
+         */
+        private final double minY;
+
+        /**
+         * The largest x coordinate of the item's bounds.
+         */
+        private final double maxX;
+
+        /**
+         * The largest y coordinate of the item's bounds.
+         */
+        private final double maxY;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param item The item.
+         * @param minX The smallest x coordinate of the item's bounds.
+         * @param minY The smallest y coordinate of the item's bounds.
+         * @param maxX The largest x coordinate of the item's bounds.
+         * @param maxY The largest y coordinate of the item's bounds.
+         */
+        Entry(T item, double minX, double minY, double maxX, double maxY) {
+            this.item = item;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+    }
+}
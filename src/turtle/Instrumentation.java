@@ -0,0 +1,294 @@
+/*
+ * Measures the commands issued to a Turtle.
+ */
+package turtle;
+
+import javafx.util.Duration;
+import jdk.jfr.EventType;
+
+import java.util.Arrays;
+
+/**
+ * Collects the metrics of a single {@link Turtle} and records a
+ * {@link CommandEvent} for each of its commands while the event is enabled
+ * in JDK Flight Recorder.
+ *
+ * A command is measured from {@link #begin()} to {@link #end(String)} in
+ * the thread that issued it. If it changed the scene, the Turtle commits the
+ * {@link Runnable} returned by {@link #end(String)} after those changes; it
+ * runs in the JavaFX application thread once they have been applied,
+ * measuring the command's round trip. Every command is traced this way
+ * while the event is enabled; otherwise only one in
+ * {@link #SAMPLE_INTERVAL} is, to measure latency cheaply.
+ */
+class Instrumentation {
+    /**
+     * The type of the JFR event recorded for each command.
+     */
+    private static final EventType COMMAND_EVENT =
+            EventType.getEventType(CommandEvent.class);
+
+    /**
+     * The round trip latency of one in this many commands is sampled while
+     * the JFR event is disabled.
+     */
+    private static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * The number of recent latency samples that are kept.
+     */
+    private static final int LATENCY_SAMPLES = 1024;
+
+    /**
+     * The number of commands executed. Written only by the issuing thread.
+     */
+    private volatile long commandCount;
+
+    /**
+     * The number of lines and arcs drawn. Written only by the issuing
+     * thread.
+     */
+    private volatile long segmentCount;
+
+    /**
+     * The number of elements in the outline of the fill in progress; zero
+     * if the Turtle is not filling. Written only by the issuing thread.
+     */
+    private volatile int fillSize;
+
+    /**
+     * Indicates whether or not the Turtle is headless; a headless Turtle
+     * never changes the scene, so its commands are not timed unless the JFR
+     * event is enabled.
+     */
+    private boolean headless;
+
+    /**
+     * The total time that the issuing thread has spent blocked.
+     */
+    private long blocked;
+
+    /**
+     * The number of changes committed to the scene.
+     */
+    private long commits;
+
+    /**
+     * The time at which the current command began.
+     */
+    private long start;
+
+    /**
+     * The blocked time when the current command began.
+     */
+    private long blockedAtStart;
+
+    /**
+     * The number of changes committed when the current command began.
+     */
+    private long commitsAtStart;
+
+    /**
+     * The JFR event for the current command; null if the event is disabled.
+     */
+    private CommandEvent event;
+
+    /**
+     * The time that the JavaFX application thread has spent applying
+     * changes since the last traced command. Only used in the JavaFX
+     * application thread.
+     */
+    private long fxThreadTime;
+
+    /**
+     * The most recent round trip latencies in nanoseconds, used as a ring
+     * buffer.
+     */
+    private final long[] latencies;
+
+    /**
+     * The total number of latencies sampled. Guarded by
+     * {@link #latencies}.
+     */
+    private long latencyCount;
+
+    /**
+     * Creates a new, empty set of measurements.
+     */
+    Instrumentation() {
+        latencies = new long[LATENCY_SAMPLES];
+    }
+
+    /**
+     * Called by the issuing thread when a command begins.
+     */
+    void begin() {
+        if(COMMAND_EVENT.isEnabled()) {
+            event = new CommandEvent();
+            event.begin();
+        }
+        if(!headless) {
+            start = System.nanoTime();
+        }
+        blockedAtStart = blocked;
+        commitsAtStart = commits;
+    }
+
+    /**
+     * Called by the issuing thread when a command ends.
+     *
+     * @param command The kind of command.
+     *
+     * @return A change that should be committed to trace the command's round
+     *         trip, or null if it should not be traced.
+     */
+    Runnable end(String command) {
+        commandCount++;
+        CommandEvent event = this.event;
+        this.event = null;
+        if(event != null) {
+            event.end();
+            event.command = command;
+            event.turtleThread = Thread.currentThread();
+            event.blocked = blocked - blockedAtStart;
+        }
+
+        boolean traced = commits != commitsAtStart &&
+                (event != null || commandCount % SAMPLE_INTERVAL == 0);
+        if(traced) {
+            return new Trace(start, event);
+        }
+        if(event != null) {
+            event.commit();
+        }
+        return null;
+    }
+
+    /**
+     * Called when the Turtle enters or leaves headless mode.
+     *
+     * @param headless True if the Turtle is headless, false otherwise.
+     */
+    void headless(boolean headless) {
+        this.headless = headless;
+    }
+
+    /**
+     * Called by the issuing thread when a line or arc is drawn.
+     */
+    void segmentDrawn() {
+        segmentCount++;
+    }
+
+    /**
+     * Called by the issuing thread when the outline of the fill in progress
+     * changes.
+     *
+     * @param size The number of elements in the outline; zero if the fill
+     *             has ended.
+     */
+    void fillChanged(int size) {
+        fillSize = size;
+    }
+
+    /**
+     * Called by the issuing thread when a change is committed to the scene.
+     */
+    void committed() {
+        commits++;
+    }
+
+    /**
+     * Called by the issuing thread after it was blocked.
+     *
+     * @param nanos The time that it spent blocked, in nanoseconds.
+     */
+    void blocked(long nanos) {
+        blocked += nanos;
+    }
+
+    /**
+     * Called in the JavaFX application thread after it applied a change.
+     *
+     * @param nanos The time that it spent applying the change, in
+     *              nanoseconds.
+     */
+    void applied(long nanos) {
+        fxThreadTime += nanos;
+    }
+
+    /**
+     * Takes a snapshot of the metrics.
+     *
+     * @param nodeCount The number of nodes in the scene.
+     *
+     * @return The snapshot.
+     */
+    TurtleMetrics snapshot(int nodeCount) {
+        long[] samples;
+        synchronized(latencies) {
+            samples = Arrays.copyOf(latencies,
+                    (int)Math.min(latencyCount, LATENCY_SAMPLES));
+        }
+        Duration mean = Duration.ZERO;
+        Duration p99 = Duration.ZERO;
+        if(samples.length > 0) {
+            Arrays.sort(samples);
+            double total = 0;
+            for(long sample : samples) {
+                total += sample;
+            }
+            mean = Duration.millis(total / samples.length / 1e6);
+            int index = (int)Math.ceil(samples.length * 0.99) - 1;
+            p99 = Duration.millis(samples[index] / 1e6);
+        }
+        return new TurtleMetrics(commandCount, segmentCount, nodeCount,
+                fillSize, mean, p99);
+    }
+
+    /**
+     * A queued change that measures a command's round trip once all of its
+     * changes have been applied, and commits its JFR event.
+     */
+    private class Trace implements Runnable {
+        /**
+         * The time at which the command began.
+         */
+        private final long start;
+
+        /**
+         * The command's JFR event; null if the event is disabled.
+         */
+        private final CommandEvent event;
+
+        /**
+         * Creates a new trace.
+         *
+         * @param start The time at which the command began.
+         * @param event The command's JFR event, or null.
+         */
+        Trace(long start, CommandEvent event) {
+            this.start = start;
+            this.event = event;
+        }
+
+        /**
+         * Records the command's round trip. Called in the JavaFX application
+         * thread.
+         */
+        @Override
+        public void run() {
+            long roundTrip = System.nanoTime() - start;
+            synchronized(latencies) {
+                latencies[(int)(latencyCount++ % LATENCY_SAMPLES)] =
+                        roundTrip;
+            }
+            if(event != null) {
+                event.fxThreadTime = fxThreadTime;
+                event.roundTrip = roundTrip;
+                event.commit();
+            }
+            fxThreadTime = 0;
+        }
+    }
+}
@@ -0,0 +1,702 @@
+/*
+ * Draws Lindenmayer systems with a Turtle.
+ */
+package turtle;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A Lindenmayer system: an axiom, and rules that rewrite symbols into
+ * strings of symbols, expanded a number of times and drawn by a
+ * {@link Turtle}. Symbols are mapped to the Turtle's actions; by default
+ * F and G move forward drawing a line, f moves forward without drawing,
+ * + and - turn left and right, and [ and ] save and restore the Turtle's
+ * location, heading and pen. Symbols without an action are only rewritten.
+ *
+ * The expanded string is never built. It is expanded depth first, keeping
+ * only the position in each of the strings being rewritten, so the memory
+ * used is proportional to the depth rather than to the length of the
+ * expansion, and the actions are streamed into the Turtle as they are
+ * reached. Consecutive moves and turns are drawn in batches with
+ * {@link Turtle#walk(double[])}.
+ *
+ * The expansion may also be split into pieces of about
+ * {@link #PIECE_SIZE} symbols that are expanded in parallel on the common
+ * fork/join pool, a bounded number of pieces ahead of the Turtle, and drawn
+ * in order, so that the drawing is exactly the same as a sequential one.
+ */
+public class LSystem {
+    /**
+     * The actions to which symbols may be mapped.
+     */
+    public enum Action {
+        /**
+         * Moves forward, drawing a line if the pen is down.
+         */
+        FORWARD,
+
+        /**
+         * Moves forward without drawing.
+         */
+        MOVE,
+
+        /**
+         * Turns left by the angle.
+         */
+        LEFT,
+
+        /**
+         * Turns right by the angle.
+         */
+        RIGHT,
+
+        /**
+         * Lifts the pen.
+         */
+        PEN_UP,
+
+        /**
+         * Puts the pen down.
+         */
+        PEN_DOWN,
+
+        /**
+         * Saves the Turtle's location, heading and pen.
+         */
+        PUSH,
+
+        /**
+         * Restores the Turtle's most recently saved location, heading and
+         * pen, moving it there without drawing.
+         */
+        POP
+    }
+
+    /**
+     * The approximate number of symbols in each piece of an expansion that
+     * is expanded in parallel.
+     */
+    public static final long PIECE_SIZE = 1 << 16;
+
+    /**
+     * The largest number of moves drawn by a single walk.
+     */
+    private static final int BATCH_SIZE = 8192;
+
+    /**
+     * The initial string.
+     */
+    private final String axiom;
+
+    /**
+     * The replacement of each symbol that is rewritten.
+     */
+    private final Map<Character, String> rules;
+
+    /**
+     * The action of each symbol that is mapped to one.
+     */
+    private final Map<Character, Action> actions;
+
+    /**
+     * The distance moved by each move.
+     */
+    private double distance;
+
+    /**
+     * The number of degrees turned by each turn.
+     */
+    private double angle;
+
+    /**
+     * Creates a new L-system with no rules and the default actions.
+     *
+     * @param axiom The initial string.
+     * @param distance The distance moved by each move.
+     * @param angle The number of degrees turned by each turn.
+     */
+    public LSystem(String axiom, double distance, double angle) {
+        this.axiom = axiom;
+        this.distance = distance;
+        this.angle = angle;
+        rules = new HashMap<>();
+        actions = new HashMap<>();
+        actions.put('F', Action.FORWARD);
+        actions.put('G', Action.FORWARD);
+        actions.put('f', Action.MOVE);
+        actions.put('+', Action.LEFT);
+        actions.put('-', Action.RIGHT);
+        actions.put('[', Action.PUSH);
+        actions.put(']', Action.POP);
+    }
+
+    /**
+     * Adds a rule that rewrites a symbol, replacing any earlier rule for
+     * the same symbol.
+     *
+     * @param symbol The symbol to rewrite.
+     * @param replacement The string that replaces the symbol.
+     */
+    public void rule(char symbol, String replacement) {
+        rules.put(symbol, replacement);
+    }
+
+    /**
+     * Maps a symbol to an action, replacing any earlier action.
+     *
+     * @param symbol The symbol.
+     * @param action The action, or null if the symbol should do nothing.
+     */
+    public void action(char symbol, Action action) {
+        if(action == null) {
+            actions.remove(symbol);
+        }
+        else {
+            actions.put(symbol, action);
+        }
+    }
+
+    /**
+     * Sets the distance moved by each move.
+     *
+     * @param distance The distance.
+     */
+    public void distance(double distance) {
+        this.distance = distance;
+    }
+
+    /**
+     * Returns the distance moved by each move.
+     *
+     * @return The distance.
+     */
+    public double distance() {
+        return distance;
+    }
+
+    /**
+     * Sets the number of degrees turned by each turn.
+     *
+     * @param angle The number of degrees.
+     */
+    public void angle(double angle) {
+        this.angle = angle;
+    }
+
+    /**
+     * Returns the number of degrees turned by each turn.
+     *
+     * @return The number of degrees.
+     */
+    public double angle() {
+        return angle;
+    }
+
+    /**
+     * Returns the length of the string that the axiom expands into, without
+     * expanding it.
+     *
+     * @param depth The number of times the rules are applied.
+     *
+     * @return The number of symbols in the expansion, or
+     *         {@link Long#MAX_VALUE} if there are more than that.
+     */
+    public long length(int depth) {
+        Grammar grammar = new Grammar(depth);
+        long[] lengths = grammar.lengths()[depth];
+        long length = 0;
+        for(char symbol : grammar.axiom) {
+            length = add(length, lengths[symbol]);
+        }
+        return length;
+    }
+
+    /**
+     * Expands the axiom and draws the result with a Turtle.
+     *
+     * @param turtle The Turtle that draws.
+     * @param depth The number of times the rules are applied.
+     */
+    public void draw(Turtle turtle, int depth) {
+        draw(turtle, depth, false);
+    }
+
+    /**
+     * Expands the axiom and draws the result with a Turtle, expanding
+     * pieces of it in parallel if requested. Either way the Turtle is used
+     * only by the calling thread, and draws exactly the same thing.
+     *
+     * @param turtle The Turtle that draws.
+     * @param depth The number of times the rules are applied.
+     * @param parallel True if the expansion should be split into pieces
+     *                 that are expanded in parallel.
+     */
+    public void draw(Turtle turtle, int depth, boolean parallel) {
+        Grammar grammar = new Grammar(depth);
+        Interpreter interpreter = new Interpreter(grammar, turtle);
+        if(parallel) {
+            drawInParallel(grammar, interpreter);
+        }
+        else {
+            Expander expander = new Expander(grammar, grammar.axiom,
+                    depth);
+            int symbol;
+            while((symbol = expander.next()) >= 0) {
+                interpreter.apply(grammar.actions[symbol]);
+            }
+        }
+        interpreter.flush();
+    }
+
+    /**
+     * Splits the expansion into pieces, expands them in parallel and draws
+     * them in order. Only a bounded number of pieces are expanded ahead of
+     * the one being drawn.
+     *
+     * @param grammar The rules and actions.
+     * @param interpreter The interpreter that draws the pieces.
+     */
+    private static void drawInParallel(Grammar grammar,
+                                       Interpreter interpreter) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = pool.getParallelism() * 2 + 1;
+        Deque<ForkJoinTask<char[]>> pending = new ArrayDeque<>();
+        long[][] lengths = grammar.lengths();
+
+        // walk down the expansion, as the expander does, until a symbol
+        // expands into no more than a piece
+        int depth = grammar.depth;
+        char[][] texts = new char[depth + 1][];
+        int[] positions = new int[depth + 1];
+        texts[0] = grammar.axiom;
+        int level = 0;
+
+        char[] symbols = new char[16];
+        int[] remaining = new int[16];
+        int count = 0;
+        long size = 0;
+        while(level >= 0) {
+            if(positions[level] == texts[level].length) {
+                level--;
+                continue;
+            }
+            char symbol = texts[level][positions[level]++];
+            long length = lengths[depth - level][symbol];
+            if(length > PIECE_SIZE) {
+                // too long; split its replacement
+                level++;
+                texts[level] = grammar.rules[symbol];
+                positions[level] = 0;
+                continue;
+            }
+
+            // gather short pieces into one task
+            if(count == symbols.length) {
+                symbols = Arrays.copyOf(symbols, count * 2);
+                remaining = Arrays.copyOf(remaining, count * 2);
+            }
+            symbols[count] = symbol;
+            remaining[count] = depth - level;
+            count++;
+            size += length;
+            if(size >= PIECE_SIZE) {
+                pending.add(pool.submit(expansion(grammar, symbols,
+                        remaining, count)));
+                count = 0;
+                size = 0;
+                if(pending.size() >= window) {
+                    interpreter.applyAll(pending.remove().join());
+                }
+            }
+        }
+        if(count > 0) {
+            pending.add(pool.submit(expansion(grammar, symbols, remaining,
+                    count)));
+        }
+        while(!pending.isEmpty()) {
+            interpreter.applyAll(pending.remove().join());
+        }
+    }
+
+    /**
+     * Makes a task that expands a number of symbols, each a number of
+     * times, into the symbols in their expansions that have actions.
+     *
+     * @param grammar The rules and actions.
+     * @param symbols The symbols to expand. The array is copied.
+     * @param remaining The number of times each symbol is rewritten. The
+     *                  array is copied.
+     * @param count The number of symbols.
+     *
+     * @return The task.
+     */
+    private static ForkJoinTask<char[]> expansion(Grammar grammar,
+                                                  char[] symbols,
+                                                  int[] remaining,
+                                                  int count) {
+        char[] pieceSymbols = Arrays.copyOf(symbols, count);
+        int[] pieceRemaining = Arrays.copyOf(remaining, count);
+        return ForkJoinTask.adapt(() -> {
+            char[] expanded = new char[64];
+            int size = 0;
+            for(int i=0; i<count; i++) {
+                Expander expander = new Expander(grammar,
+                        new char[] {pieceSymbols[i]}, pieceRemaining[i]);
+                int symbol;
+                while((symbol = expander.next()) >= 0) {
+                    if(size == expanded.length) {
+                        expanded = Arrays.copyOf(expanded, size * 2);
+                    }
+                    expanded[size++] = (char)symbol;
+                }
+            }
+            return Arrays.copyOf(expanded, size);
+        });
+    }
+
+    /**
+     * Adds two lengths, stopping at {@link Long#MAX_VALUE}.
+     *
+     * @param a The first length.
+     * @param b The second length.
+     *
+     * @return The sum.
+     */
+    private static long add(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * The rules and actions of the L-system, by symbol, as they were when
+     * it began to be drawn.
+     */
+    private final class Grammar {
+        /**
+         * The initial string.
+         */
+        private final char[] axiom;
+
+        /**
+         * The number of times the rules are applied.
+         */
+        private final int depth;
+
+        /**
+         * The replacement of each symbol, or null if it is not rewritten.
+         */
+        private final char[][] rules;
+
+        /**
+         * The action of each symbol, or null if it has none.
+         */
+        private final Action[] actions;
+
+        /**
+         * The distance moved by each move.
+         */
+        private final double distance;
+
+        /**
+         * The number of degrees turned by each turn.
+         */
+        private final double angle;
+
+        /**
+         * Captures the L-system's current rules and actions.
+         *
+         * @param depth The number of times the rules are applied.
+         */
+        Grammar(int depth) {
+            if(depth < 0) {
+                throw new IllegalArgumentException("bad depth: " + depth);
+            }
+            this.depth = depth;
+            axiom = LSystem.this.axiom.toCharArray();
+            distance = LSystem.this.distance;
+            angle = LSystem.this.angle;
+
+            // every symbol that can appear indexes the tables directly
+            int size = 0;
+            for(char symbol : axiom) {
+                size = Math.max(size, symbol + 1);
+            }
+            for(Map.Entry<Character, String> rule :
+                    LSystem.this.rules.entrySet()) {
+                size = Math.max(size, rule.getKey() + 1);
+                for(char symbol : rule.getValue().toCharArray()) {
+                    size = Math.max(size, symbol + 1);
+                }
+            }
+            rules = new char[size][];
+            actions = new Action[size];
+            for(Map.Entry<Character, String> rule :
+                    LSystem.this.rules.entrySet()) {
+                rules[rule.getKey()] = rule.getValue().toCharArray();
+            }
+            for(Map.Entry<Character, Action> action :
+                    LSystem.this.actions.entrySet()) {
+                if(action.getKey() < size) {
+                    actions[action.getKey()] = action.getValue();
+                }
+            }
+        }
+
+        /**
+         * Computes the length of the expansion of each symbol after each
+         * number of rewrites, up to the depth.
+         *
+         * @return The lengths, by the number of rewrites and then by
+         *         symbol.
+         */
+        long[][] lengths() {
+            long[][] lengths = new long[depth + 1][rules.length];
+            Arrays.fill(lengths[0], 1);
+            for(int rewrites=1; rewrites<=depth; rewrites++) {
+                for(int symbol=0; symbol<rules.length; symbol++) {
+                    if(rules[symbol] == null) {
+                        lengths[rewrites][symbol] = 1;
+                        continue;
+                    }
+                    long length = 0;
+                    for(char replaced : rules[symbol]) {
+                        length = add(length,
+                                lengths[rewrites - 1][replaced]);
+                    }
+                    lengths[rewrites][symbol] = length;
+                }
+            }
+            return lengths;
+        }
+    }
+
+    /**
+     * Expands a string depth first, returning the symbols of the expansion
+     * that have actions one at a time. Only the position in each of the
+     * strings being rewritten is kept.
+     */
+    private static final class Expander {
+        /**
+         * The rules and actions.
+         */
+        private final Grammar grammar;
+
+        /**
+         * The number of times the initial string is rewritten.
+         */
+        private final int depth;
+
+        /**
+         * The string being rewritten at each level, the initial string
+         * first.
+         */
+        private final char[][] texts;
+
+        /**
+         * The position of the next symbol in each string.
+         */
+        private final int[] positions;
+
+        /**
+         * The deepest level being rewritten, or -1 at the end.
+         */
+        private int level;
+
+        /**
+         * Creates a new expander.
+         *
+         * @param grammar The rules and actions.
+         * @param text The initial string.
+         * @param depth The number of times the string is rewritten.
+         */
+        Expander(Grammar grammar, char[] text, int depth) {
+            this.grammar = grammar;
+            this.depth = depth;
+            texts = new char[depth + 1][];
+            positions = new int[depth + 1];
+            texts[0] = text;
+        }
+
+        /**
+         * Returns the next symbol of the expansion that has an action.
+         *
+         * @return The symbol, or -1 at the end of the expansion.
+         */
+        int next() {
+            while(level >= 0) {
+                char[] text = texts[level];
+                if(positions[level] == text.length) {
+                    level--;
+                    continue;
+                }
+                char symbol = text[positions[level]++];
+                char[] rule = level < depth ? grammar.rules[symbol] : null;
+                if(rule != null) {
+                    level++;
+                    texts[level] = rule;
+                    positions[level] = 0;
+                }
+                else if(grammar.actions[symbol] != null) {
+                    return symbol;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Performs the actions of an expansion with a Turtle. Moves and turns
+     * are gathered into batches that are drawn with a single walk.
+     */
+    private static final class Interpreter {
+        /**
+         * The rules and actions.
+         */
+        private final Grammar grammar;
+
+        /**
+         * The Turtle that draws.
+         */
+        private final Turtle turtle;
+
+        /**
+         * The distances and degrees of the batch of moves, alternately.
+         */
+        private final double[] steps;
+
+        /**
+         * The number of moves in the batch.
+         */
+        private int count;
+
+        /**
+         * The number of degrees to turn left before the batch.
+         */
+        private double turn;
+
+        /**
+         * The saved locations, headings and pens, the most recent first.
+         */
+        private final Deque<double[]> saved;
+
+        /**
+         * Creates a new interpreter.
+         *
+         * @param grammar The rules and actions.
+         * @param turtle The Turtle that draws.
+         */
+        Interpreter(Grammar grammar, Turtle turtle) {
+            this.grammar = grammar;
+            this.turtle = turtle;
+            steps = new double[BATCH_SIZE * 2];
+            saved = new ArrayDeque<>();
+        }
+
+        /**
+         * Performs the actions of a number of symbols.
+         *
+         * @param symbols The symbols, each of which has an action.
+         */
+        void applyAll(char[] symbols) {
+            for(char symbol : symbols) {
+                apply(grammar.actions[symbol]);
+            }
+        }
+
+        /**
+         * Performs an action.
+         *
+         * @param action The action.
+         */
+        void apply(Action action) {
+            switch(action) {
+                case FORWARD:
+                    steps[count * 2] = grammar.distance;
+                    steps[count * 2 + 1] = 0;
+                    count++;
+                    if(count == BATCH_SIZE) {
+                        flush();
+                    }
+                    break;
+                case LEFT:
+                    addTurn(grammar.angle);
+                    break;
+                case RIGHT:
+                    addTurn(-grammar.angle);
+                    break;
+                case MOVE: {
+                    flush();
+                    boolean down = turtle.isPenDown();
+                    turtle.penUp();
+                    turtle.forward(grammar.distance);
+                    if(down) {
+                        turtle.penDown();
+                    }
+                    break;
+                }
+                case PEN_UP:
+                    flush();
+                    turtle.penUp();
+                    break;
+                case PEN_DOWN:
+                    flush();
+                    turtle.penDown();
+                    break;
+                case PUSH:
+                    flush();
+                    saved.push(new double[] {turtle.getX(), turtle.getY(),
+                            turtle.getHeading(), turtle.isPenDown() ? 1 : 0});
+                    break;
+                case POP: {
+                    flush();
+                    double[] state = saved.poll();
+                    if(state == null) {
+                        throw new IllegalArgumentException(
+                                "restored more states than were saved");
+                    }
+                    turtle.penUp();
+                    turtle.goTo(state[0], state[1]);
+                    turtle.setHeading(state[2]);
+                    if(state[3] != 0) {
+                        turtle.penDown();
+                    }
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Adds a turn left to the batch, after its last move.
+         *
+         * @param degrees The number of degrees to turn left.
+         */
+        private void addTurn(double degrees) {
+            if(count == 0) {
+                turn += degrees;
+            }
+            else {
+                steps[count * 2 - 1] += degrees;
+            }
+        }
+
+        /**
+         * Draws the batch of moves and turns.
+         */
+        void flush() {
+            if(turn != 0) {
+                turtle.left(turn);
+                turn = 0;
+            }
+            if(count > 0) {
+                turtle.walk(Arrays.copyOf(steps, count * 2));
+                count = 0;
+            }
+        }
+    }
+}
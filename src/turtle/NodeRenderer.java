@@ -0,0 +1,643 @@
+/*
+ * Renders a Turtle's drawing as retained JavaFX nodes.
+ */
+package turtle;
+
+import javafx.collections.ObservableList;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Arc;
+import javafx.scene.shape.ArcType;
+import javafx.scene.shape.FillRule;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.Polyline;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.transform.NonInvertibleTransformException;
+import javafx.scene.transform.Transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Renderer} that adds JavaFX nodes to the scene graph for the lines,
+ * fills and text in the drawing. Contiguous lines of the same color and width
+ * are merged into a single {@link Polyline}; a new one is started only when
+ * the pen is lifted, the style changes, or something else is drawn in between.
+ *
+ * Every node is indexed by location, and only the nodes that intersect the
+ * visible region are attached to the scene graph; when the region changes,
+ * the nodes that are now visible are found in the index and attached in the
+ * order in which they were drawn. The placeholders of fills that have not
+ * ended yet are always attached. Changing the view therefore costs time in
+ * proportion to the number of nodes that are visible, not to the size of
+ * the drawing.
+ *
+ * Every stroke keeps all of its points, but its polyline shows them at the
+ * current level of detail: when the last shown point of a stroke is less
+ * than a pixel from the point before it, the next point replaces it rather
+ * than being added, so that the number of points shown is bounded by the
+ * stroke's size on the screen rather than by the number of lines in it.
+ * The size of a pixel is rounded down to a power of two, and a stroke's
+ * polyline is rebuilt from its points when it is shown at a different
+ * size, so zooming in shows every detail again.
+ */
+class NodeRenderer implements Renderer {
+    /**
+     * The width and height of each cell of the index of nodes.
+     */
+    private static final double CELL_SIZE = 64;
+
+    /**
+     * The number of consecutive lines of a path that are indexed together
+     * by their combined bounds.
+     */
+    private static final int PATH_CHUNK = 64;
+
+    /**
+     * The group to which the visible nodes are added.
+     */
+    private final Group layer;
+
+    /**
+     * Every node in the drawing, by location.
+     */
+    private final Grid<Placed> index;
+
+    /**
+     * The placeholders of the fills that have not ended yet.
+     */
+    private final Map<Group, Placed> openFills;
+
+    /**
+     * The number of nodes drawn so far.
+     */
+    private long count;
+
+    /**
+     * The node drawn most recently.
+     */
+    private Placed last;
+
+    /**
+     * The smallest x coordinate of the visible region.
+     */
+    private double viewMinX;
+
+    /**
+     * The smallest y coordinate of the visible region.
+     */
+    private double viewMinY;
+
+    /**
+     * The largest x coordinate of the visible region.
+     */
+    private double viewMaxX;
+
+    /**
+     * The largest y coordinate of the visible region.
+     */
+    private double viewMaxY;
+
+    /**
+     * The size of a pixel on the screen in the drawing's coordinates,
+     * rounded down to a power of two; the level of detail.
+     */
+    private double pixel;
+
+    /**
+     * The stroke to which the next line is appended if it continues it, or
+     * null if there is no current stroke.
+     */
+    private Stroke stroke;
+
+    /**
+     * The x coordinate of the end of the current stroke.
+     */
+    private double strokeX;
+
+    /**
+     * The y coordinate of the end of the current stroke.
+     */
+    private double strokeY;
+
+    /**
+     * Creates a new node renderer. Everything is visible until the visible
+     * region is set.
+     */
+    NodeRenderer() {
+        layer = new Group();
+        index = new Grid<>(CELL_SIZE);
+        openFills = new IdentityHashMap<>();
+        viewMinX = Double.NEGATIVE_INFINITY;
+        viewMinY = Double.NEGATIVE_INFINITY;
+        viewMaxX = Double.POSITIVE_INFINITY;
+        viewMaxY = Double.POSITIVE_INFINITY;
+        pixel = 1;
+    }
+
+    @Override
+    public Node getLayer() {
+        return layer;
+    }
+
+    @Override
+    public void line(double startX, double startY, double endX, double endY,
+                     Color color, double width) {
+        double reach = width / 2;
+        double minX = Math.min(startX, endX) - reach;
+        double minY = Math.min(startY, endY) - reach;
+        double maxX = Math.max(startX, endX) + reach;
+        double maxY = Math.max(startY, endY) + reach;
+
+        if(!continuesStroke(startX, startY, color, width)) {
+            stroke = newStroke(startX, startY, color, width);
+        }
+        stroke.lineTo(endX, endY, pixel);
+        index.add(stroke, minX, minY, maxX, maxY);
+        if(stroke.polyline.getParent() == null &&
+                isVisible(minX, minY, maxX, maxY)) {
+            // the stroke is the most recent node, so it goes on top
+            layer.getChildren().add(stroke.polyline);
+        }
+        strokeX = endX;
+        strokeY = endY;
+    }
+
+    @Override
+    public void polyline(double[] points, int count, Color color,
+                         double width) {
+        if(!continuesStroke(points[0], points[1], color, width)) {
+            stroke = newStroke(points[0], points[1], color, width);
+        }
+        // the first point is where the stroke already ends
+        stroke.lineTo(points, 1, count, pixel);
+
+        // index the path in chunks so that a long path is found only where
+        // it actually goes
+        double reach = width / 2;
+        boolean visible = false;
+        for(int first=0; first<count - 1; first+=PATH_CHUNK) {
+            int end = Math.min(count - 1, first + PATH_CHUNK);
+            double minX = points[first * 2];
+            double minY = points[first * 2 + 1];
+            double maxX = minX;
+            double maxY = minY;
+            for(int i=first + 1; i<=end; i++) {
+                minX = Math.min(minX, points[i * 2]);
+                minY = Math.min(minY, points[i * 2 + 1]);
+                maxX = Math.max(maxX, points[i * 2]);
+                maxY = Math.max(maxY, points[i * 2 + 1]);
+            }
+            index.add(stroke, minX - reach, minY - reach, maxX + reach,
+                    maxY + reach);
+            visible |= isVisible(minX - reach, minY - reach, maxX + reach,
+                    maxY + reach);
+        }
+        if(visible && stroke.polyline.getParent() == null) {
+            // the stroke is the most recent node, so it goes on top
+            layer.getChildren().add(stroke.polyline);
+        }
+        strokeX = points[count * 2 - 2];
+        strokeY = points[count * 2 - 1];
+    }
+
+    @Override
+    public void arc(double centerX, double centerY, double radius,
+                    double startAngle, double length, Color color,
+                    double width) {
+        Arc arc = new Arc(centerX, centerY, radius, radius, startAngle,
+                length);
+        arc.setType(ArcType.OPEN);
+        arc.setFill(null);
+        arc.setStroke(color);
+        arc.setStrokeWidth(width);
+        add(arc, arc.getBoundsInLocal());
+    }
+
+    @Override
+    public void image(Image image, Transform transform) {
+        ImageView view = new ImageView(image);
+        view.getTransforms().add(transform);
+        add(view, view.getBoundsInParent());
+    }
+
+    @Override
+    public void beginFill(Group placeholder) {
+        // the fill's bounds are not known until it ends, so it stays
+        // attached until then
+        Placed placed = new Placed(placeholder, count++);
+        openFills.put(placeholder, placed);
+        last = placed;
+        layer.getChildren().add(placeholder);
+    }
+
+    @Override
+    public void fill(Group placeholder, FillOutline outline, Color color) {
+        // the whole outline becomes a single node at once
+        Path path = outline.toPath();
+        path.setStroke(Color.TRANSPARENT);
+        path.setFillRule(FillRule.EVEN_ODD);
+        path.setFill(color);
+        placeholder.getChildren().add(path);
+
+        Placed placed = openFills.remove(placeholder);
+        Bounds bounds = path.getBoundsInLocal();
+        index.add(placed, bounds.getMinX(), bounds.getMinY(),
+                bounds.getMaxX(), bounds.getMaxY());
+        if(!isVisible(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(),
+                bounds.getMaxY())) {
+            layer.getChildren().remove(placeholder);
+        }
+    }
+
+    @Override
+    public void text(double x, double y, String message, Color color,
+                     double size) {
+        Text text = new Text(x, y, message);
+        text.setFill(color);
+        if(size != Font.getDefault().getSize()) {
+            text.setFont(Font.font(size));
+        }
+        add(text, text.getBoundsInLocal());
+    }
+
+    @Override
+    public void view(Transform toScreen, double width, double height) {
+        Bounds visible;
+        try {
+            visible = toScreen.inverseTransform(
+                    new BoundingBox(0, 0, width, height));
+        } catch (NonInvertibleTransformException e) {
+            // a degenerate view shows nothing
+            visible = new BoundingBox(0, 0, -1, -1);
+        }
+        pixel = Math.scalb(1.0, Math.getExponent(1 / Math.max(
+                Math.abs(toScreen.getMxx()), Math.abs(toScreen.getMyy()))));
+        show(visible.getMinX(), visible.getMinY(), visible.getMaxX(),
+                visible.getMaxY());
+    }
+
+    /**
+     * Attaches the nodes that intersect the visible region, and only those,
+     * in the order in which they were drawn, showing each stroke at the
+     * current level of detail.
+     *
+     * @param minX The smallest x coordinate of the visible region.
+     * @param minY The smallest y coordinate of the visible region.
+     * @param maxX The largest x coordinate of the visible region.
+     * @param maxY The largest y coordinate of the visible region.
+     */
+    private void show(double minX, double minY, double maxX, double maxY) {
+        viewMinX = minX;
+        viewMinY = minY;
+        viewMaxX = maxX;
+        viewMaxY = maxY;
+
+        List<Placed> visible = new ArrayList<>(
+                index.query(minX, minY, maxX, maxY));
+        visible.addAll(openFills.values());
+        visible.sort(Comparator.comparingLong(placed -> placed.order));
+
+        List<Node> nodes = new ArrayList<>(visible.size());
+        for(Placed placed : visible) {
+            if(placed instanceof Stroke) {
+                ((Stroke)placed).show(pixel);
+            }
+            nodes.add(placed.node);
+        }
+        layer.getChildren().setAll(nodes);
+    }
+
+    /**
+     * Starts a new stroke, which becomes the most recent node. It is neither
+     * indexed nor attached until its first line is added.
+     *
+     * @param startX The x coordinate of the start of the stroke.
+     * @param startY The y coordinate of the start of the stroke.
+     * @param color The color of the stroke.
+     * @param width The width of the stroke.
+     *
+     * @return The stroke.
+     */
+    private Stroke newStroke(double startX, double startY, Color color,
+                             double width) {
+        Polyline polyline = new Polyline();
+        polyline.setStroke(color);
+        polyline.setStrokeWidth(width);
+        Stroke started = new Stroke(polyline, count++, startX, startY);
+        last = started;
+        return started;
+    }
+
+    /**
+     * Adds a new node to the drawing, attaching it if it is visible.
+     *
+     * @param node The node to add.
+     * @param bounds The node's bounds.
+     */
+    private void add(Node node, Bounds bounds) {
+        add(node, bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(),
+                bounds.getMaxY());
+    }
+
+    /**
+     * Adds a new node to the drawing, attaching it if it is visible.
+     *
+     * @param node The node to add.
+     * @param minX The smallest x coordinate of the node's bounds.
+     * @param minY The smallest y coordinate of the node's bounds.
+     * @param maxX The largest x coordinate of the node's bounds.
+     * @param maxY The largest y coordinate of the node's bounds.
+     */
+    private void add(Node node, double minX, double minY, double maxX,
+                     double maxY) {
+        Placed placed = new Placed(node, count++);
+        index.add(placed, minX, minY, maxX, maxY);
+        if(isVisible(minX, minY, maxX, maxY)) {
+            layer.getChildren().add(node);
+        }
+        last = placed;
+    }
+
+    /**
+     * Determines whether or not a region intersects the visible region.
+     *
+     * @param minX The smallest x coordinate of the region.
+     * @param minY The smallest y coordinate of the region.
+     * @param maxX The largest x coordinate of the region.
+     * @param maxY The largest y coordinate of the region.
+     *
+     * @return True if the region is at least partly visible.
+     */
+    private boolean isVisible(double minX, double minY, double maxX,
+                              double maxY) {
+        return minX <= viewMaxX && maxX >= viewMinX &&
+                minY <= viewMaxY && maxY >= viewMinY;
+    }
+
+    /**
+     * Determines whether or not a line starting at the specified point with
+     * the specified style continues the current stroke, i.e. starts where
+     * the stroke ends, has the same style, and nothing has been drawn on top
+     * of the stroke since.
+     *
+     * @param startX The x coordinate of the start of the line.
+     * @param startY The y coordinate of the start of the line.
+     * @param color The color of the line.
+     * @param width The width of the line.
+     *
+     * @return True if the line can be appended to the current stroke.
+     */
+    private boolean continuesStroke(double startX, double startY,
+                                    Color color, double width) {
+        if(stroke == null || stroke != last) {
+            return false;
+        }
+        Polyline polyline = stroke.polyline;
+        return startX == strokeX && startY == strokeY &&
+                polyline.getStrokeWidth() == width &&
+                color.equals(polyline.getStroke());
+    }
+
+    /**
+     * A node in the drawing and its place in the order in which the nodes
+     * were drawn.
+     */
+    private static class Placed {
+        /**
+         * The node.
+         */
+        private final Node node;
+
+        /**
+         * The node's place in the drawing; later nodes are on top.
+         */
+        private final long order;
+
+        /**
+         * Creates a new placed node.
+         *
+         * @param node The node.
+         * @param order The node's place in the drawing.
+         */
+        Placed(Node node, long order) {
+            this.node = node;
+            this.order = order;
+        }
+    }
+
+    /**
+     * A stroke: contiguous lines of the same color and width, shown as a
+     * single polyline. The stroke keeps every one of its points, and the
+     * polyline shows them at a level of detail.
+     */
+    private static final class Stroke extends Placed {
+        /**
+         * The polyline that shows the stroke.
+         */
+        private final Polyline polyline;
+
+        /**
+         * The x and y coordinates of every point of the stroke, alternately.
+         */
+        private double[] points;
+
+        /**
+         * The number of coordinates in {@link #points}.
+         */
+        private int size;
+
+        /**
+         * The size of a pixel at which the polyline shows the points; zero
+         * if it does not show them yet.
+         */
+        private double shown;
+
+        /**
+         * Creates a new stroke with a single point, which is not shown until
+         * a line is added.
+         *
+         * @param polyline The polyline that shows the stroke.
+         * @param order The stroke's place in the drawing.
+         * @param startX The x coordinate of the start of the stroke.
+         * @param startY The y coordinate of the start of the stroke.
+         */
+        Stroke(Polyline polyline, long order, double startX, double startY) {
+            super(polyline, order);
+            this.polyline = polyline;
+            points = new double[16];
+            points[0] = startX;
+            points[1] = startY;
+            size = 2;
+        }
+
+        /**
+         * Adds a line from the end of the stroke to the specified point.
+         *
+         * @param x The x coordinate of the end of the line.
+         * @param y The y coordinate of the end of the line.
+         * @param pixel The size of a pixel at which the stroke is shown.
+         */
+        void lineTo(double x, double y, double pixel) {
+            if(size == points.length) {
+                points = Arrays.copyOf(points, size * 2);
+            }
+            points[size++] = x;
+            points[size++] = y;
+            if(shown != pixel) {
+                show(pixel);
+                return;
+            }
+
+            ObservableList<Double> shownPoints = polyline.getPoints();
+            int end = shownPoints.size();
+            if(end >= 4 && isShort(shownPoints.get(end - 4),
+                    shownPoints.get(end - 3), shownPoints.get(end - 2),
+                    shownPoints.get(end - 1), pixel)) {
+                // the last line is too short to see; merge it with this one
+                shownPoints.set(end - 2, x);
+                shownPoints.set(end - 1, y);
+            }
+            else {
+                shownPoints.addAll(x, y);
+            }
+        }
+
+        /**
+         * Adds lines from the end of the stroke through a number of points.
+         *
+         * @param path The x and y coordinates of the points, alternately.
+         * @param from The index of the first point to add.
+         * @param to The index after the last point to add.
+         * @param pixel The size of a pixel at which the stroke is shown.
+         */
+        void lineTo(double[] path, int from, int to, double pixel) {
+            int start = size;
+            append(path, from, to);
+            if(shown != pixel) {
+                show(pixel);
+                return;
+            }
+
+            // continue from the last two shown points, so that short lines
+            // are merged exactly as they are one line at a time
+            ObservableList<Double> shownPoints = polyline.getPoints();
+            int end = shownPoints.size();
+            int seed = Math.min(end, 4);
+            double[] kept = new double[seed + size - start];
+            for(int i=0; i<seed; i++) {
+                kept[i] = shownPoints.get(end - seed + i);
+            }
+            shownPoints.remove(end - seed, end);
+            int count = merge(points, start, size, kept, seed, pixel);
+            shownPoints.addAll(box(kept, count));
+        }
+
+        /**
+         * Shows the stroke's points at the specified level of detail,
+         * rebuilding its polyline if it shows them at another.
+         *
+         * @param pixel The size of a pixel at which to show the stroke.
+         */
+        void show(double pixel) {
+            if(shown == pixel) {
+                return;
+            }
+            double[] kept = new double[size];
+            int count = merge(points, 0, size, kept, 0, pixel);
+            polyline.getPoints().setAll(box(kept, count));
+            shown = pixel;
+        }
+
+        /**
+         * Adds points to the end of the stroke's points.
+         *
+         * @param path The x and y coordinates of the points, alternately.
+         * @param from The index of the first point to add.
+         * @param to The index after the last point to add.
+         */
+        private void append(double[] path, int from, int to) {
+            int count = (to - from) * 2;
+            if(size + count > points.length) {
+                points = Arrays.copyOf(points,
+                        Math.max(points.length * 2, size + count));
+            }
+            System.arraycopy(path, from * 2, points, size, count);
+            size += count;
+        }
+
+        /**
+         * Copies points to the end of the points that are kept, replacing
+         * the last kept point instead whenever the line that ends at it is
+         * shorter than a pixel.
+         *
+         * @param source The coordinates of the points to copy.
+         * @param from The index of the first coordinate to copy.
+         * @param to The index after the last coordinate to copy.
+         * @param kept The coordinates of the points kept so far, with room
+         *             for the copied ones.
+         * @param count The number of coordinates kept so far.
+         * @param pixel The size of a pixel.
+         *
+         * @return The number of coordinates kept.
+         */
+        private static int merge(double[] source, int from, int to,
+                                 double[] kept, int count, double pixel) {
+            for(int i=from; i<to; i+=2) {
+                if(count >= 4 && isShort(kept[count - 4], kept[count - 3],
+                        kept[count - 2], kept[count - 1], pixel)) {
+                    // the last line is too short to see; merge it
+                    count -= 2;
+                }
+                kept[count++] = source[i];
+                kept[count++] = source[i + 1];
+            }
+            return count;
+        }
+
+        /**
+         * Determines whether or not a line is too short to see.
+         *
+         * @param startX The x coordinate of the start of the line.
+         * @param startY The y coordinate of the start of the line.
+         * @param endX The x coordinate of the end of the line.
+         * @param endY The y coordinate of the end of the line.
+         * @param pixel The size of a pixel.
+         *
+         * @return True if the line is less than a pixel long in both
+         *         directions.
+         */
+        private static boolean isShort(double startX, double startY,
+                                       double endX, double endY,
+                                       double pixel) {
+            return Math.abs(endX - startX) < pixel &&
+                    Math.abs(endY - startY) < pixel;
+        }
+
+        /**
+         * Boxes coordinates for a polyline's list of points.
+         *
+         * @param coordinates The coordinates.
+         * @param count The number of coordinates to box.
+         *
+         * @return The boxed coordinates.
+         */
+        private static List<Double> box(double[] coordinates, int count) {
+            List<Double> boxed = new ArrayList<>(count);
+            for(int i=0; i<count; i++) {
+                boxed.add(coordinates[i]);
+            }
+            return boxed;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * A spatial index of numbered items.
+ */
+package turtle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A sparse uniform grid, like a {@link Grid}, that indexes items which are
+ * known only by their numbers, keeping them in arrays of ints rather than
+ * in lists of objects, so that an item costs four bytes for each cell it
+ * spans. Items that span very many cells are kept in a separate list that
+ * every query checks.
+ *
+ * Each item may also have a key, such as the step at which it was drawn.
+ * If the keys never decrease in the order in which the items are added,
+ * the items in each cell are in the order of their keys, and the items
+ * with keys in a range are found without looking at the others.
+ *
+ * A grid is not thread safe, but it may be queried concurrently once it is
+ * no longer modified.
+ */
+class NumberGrid {
+    /**
+     * The number of cells above which an item is not added to the cells
+     * it spans but to the list of large items.
+     */
+    private static final int MAX_CELLS = 64;
+
+    /**
+     * The width and height of each cell.
+     */
+    private final double cellSize;
+
+    /**
+     * The cells that contain at least one item, by their packed column and
+     * row.
+     */
+    private final Map<Long, Cell> cells;
+
+    /**
+     * The numbers of the items that span too many cells.
+     */
+    private int[] large;
+
+    /**
+     * The bounds of the large items: minX, minY, maxX and maxY for each.
+     */
+    private double[] largeBounds;
+
+    /**
+     * The number of large items.
+     */
+    private int largeCount;
+
+    /**
+     * Creates a new, empty grid.
+     *
+     * @param cellSize The width and height of each cell.
+     */
+    NumberGrid(double cellSize) {
+        this.cellSize = cellSize;
+        cells = new HashMap<>();
+        large = new int[16];
+        largeBounds = new double[16 * 4];
+    }
+
+    /**
+     * Adds an item with the specified bounds. Items are added once each.
+     *
+     * @param item The number of the item.
+     * @param minX The smallest x coordinate of the item's bounds.
+     * @param minY The smallest y coordinate of the item's bounds.
+     * @param maxX The largest x coordinate of the item's bounds.
+     * @param maxY The largest y coordinate of the item's bounds.
+     */
+    void add(int item, double minX, double minY, double maxX, double maxY) {
+        int left = cell(minX);
+        int top = cell(minY);
+        int right = cell(maxX);
+        int bottom = cell(maxY);
+        if((long)(right - left + 1) * (bottom - top + 1) > MAX_CELLS) {
+            if(largeCount == large.length) {
+                large = Arrays.copyOf(large, largeCount * 2);
+                largeBounds = Arrays.copyOf(largeBounds, largeCount * 2 * 4);
+            }
+            large[largeCount] = item;
+            largeBounds[largeCount * 4] = minX;
+            largeBounds[largeCount * 4 + 1] = minY;
+            largeBounds[largeCount * 4 + 2] = maxX;
+            largeBounds[largeCount * 4 + 3] = maxY;
+            largeCount++;
+            return;
+        }
+        for(int column=left; column<=right; column++) {
+            for(int row=top; row<=bottom; row++) {
+                cells.computeIfAbsent(key(column, row),
+                        k -> new Cell()).add(item);
+            }
+        }
+    }
+
+    /**
+     * Removes every item.
+     */
+    void clear() {
+        cells.clear();
+        largeCount = 0;
+    }
+
+    /**
+     * Returns the numbers of the items that may intersect a region, in
+     * increasing order, each once.
+     *
+     * @param minX The x coordinate of the region's left edge.
+     * @param minY The y coordinate of the region's top edge.
+     * @param maxX The x coordinate of the region's right edge, which is
+     *             not in the region.
+     * @param maxY The y coordinate of the region's bottom edge, which is
+     *             not in the region.
+     *
+     * @return The numbers of the items.
+     */
+    int[] query(double minX, double minY, double maxX, double maxY) {
+        return query(minX, minY, maxX, maxY, null, 0, 0);
+    }
+
+    /**
+     * Returns the numbers of the items that may intersect a region and
+     * have keys in a range, in increasing order, each once.
+     *
+     * @param minX The x coordinate of the region's left edge.
+     * @param minY The y coordinate of the region's top edge.
+     * @param maxX The x coordinate of the region's right edge, which is
+     *             not in the region.
+     * @param maxY The y coordinate of the region's bottom edge, which is
+     *             not in the region.
+     * @param keys The keys of the items, by number, which never decrease
+     *             in the order in which the items were added; null to
+     *             find every item in the region.
+     * @param from The first key of the range.
+     * @param until The first key after the range.
+     *
+     * @return The numbers of the items.
+     */
+    int[] query(double minX, double minY, double maxX, double maxY,
+                int[] keys, int from, int until) {
+        int firstColumn = cell(minX);
+        int firstRow = cell(minY);
+        int lastColumn = Math.max(firstColumn, cellBefore(maxX));
+        int lastRow = Math.max(firstRow, cellBefore(maxY));
+        int[] found = new int[16];
+        int count = 0;
+        for(int column=firstColumn; column<=lastColumn; column++) {
+            for(int row=firstRow; row<=lastRow; row++) {
+                Cell cell = cells.get(key(column, row));
+                if(cell == null) {
+                    continue;
+                }
+                int first = keys == null ? 0 : cell.find(keys, from);
+                int length = (keys == null ? cell.size :
+                        cell.find(keys, until)) - first;
+                if(count + length > found.length) {
+                    found = Arrays.copyOf(found,
+                            Math.max(found.length * 2, count + length));
+                }
+                System.arraycopy(cell.items, first, found, count, length);
+                count += length;
+            }
+        }
+        for(int i=0; i<largeCount; i++) {
+            int b = i * 4;
+            if((keys == null ||
+                    keys[large[i]] >= from && keys[large[i]] < until) &&
+                    largeBounds[b] <= maxX &&
+                    largeBounds[b + 2] >= minX &&
+                    largeBounds[b + 1] <= maxY &&
+                    largeBounds[b + 3] >= minY) {
+                if(count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = large[i];
+            }
+        }
+
+        // an item may be in several of the cells, and the large items are
+        // not in order with the others
+        Arrays.sort(found, 0, count);
+        int unique = 0;
+        for(int i=0; i<count; i++) {
+            if(unique == 0 || found[unique - 1] != found[i]) {
+                found[unique++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, unique);
+    }
+
+    /**
+     * Returns the column or row of the cell containing a coordinate.
+     *
+     * @param coordinate The x or y coordinate.
+     *
+     * @return The cell's column or row.
+     */
+    private int cell(double coordinate) {
+        return clamp(Math.floor(coordinate / cellSize));
+    }
+
+    /**
+     * Returns the column or row of the last cell that begins before a
+     * coordinate.
+     *
+     * @param coordinate The x or y coordinate.
+     *
+     * @return The cell's column or row.
+     */
+    private int cellBefore(double coordinate) {
+        return clamp(Math.ceil(coordinate / cellSize) - 1);
+    }
+
+    /**
+     * Limits a column or row to the range in which cells can be keyed.
+     *
+     * @param cell The column or row.
+     *
+     * @return The limited column or row.
+     */
+    private static int clamp(double cell) {
+        return (int)Math.max(Integer.MIN_VALUE / 2,
+                Math.min(Integer.MAX_VALUE / 2, cell));
+    }
+
+    /**
+     * Packs a column and row into the key of a cell.
+     *
+     * @param column The cell's column.
+     * @param row The cell's row.
+     *
+     * @return The cell's key.
+     */
+    private static long key(int column, int row) {
+        return (long)column << 32 | (row & 0xffffffffL);
+    }
+
+    /**
+     * The numbers of the items in a cell of the grid.
+     */
+    private static final class Cell {
+        /**
+         * The numbers of the items, in the order in which they were added.
+         */
+        private int[] items;
+
+        /**
+         * The number of items in the cell.
+         */
+        private int size;
+
+        /**
+         * Creates a new, empty cell.
+         */
+        Cell() {
+            items = new int[8];
+        }
+
+        /**
+         * Adds an item to the cell.
+         *
+         * @param item The number of the item.
+         */
+        void add(int item) {
+            if(size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        /**
+         * Finds the first item in the cell with a key at or after the
+         * specified one.
+         *
+         * @param keys The keys of the items, by number.
+         * @param key The key.
+         *
+         * @return The index of the item in the cell; the size of the cell
+         *         if there is none.
+         */
+        int find(int[] keys, int key) {
+            int low = 0;
+            int high = size;
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                if(keys[items[middle]] < key) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Looks up and interns the colors used by the Turtles.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The colors used by the Turtles. Colors are identified by their packed,
+ * 32-bit ARGB value (8 bits per channel, alpha in the high byte), which is
+ * also the form in which they are recorded. Every color handed out by the
+ * palette is interned, so changing colors on every segment does not
+ * allocate a new {@link Color} each time.
+ *
+ * Color strings are looked up in a table that is built once from the
+ * constants in the {@link Color} class; hex strings such as "#ff8000" and
+ * rgb strings such as "rgb(255, 128, 0)" are parsed once and then remembered
+ * as well.
+ */
+final class Palette {
+    /**
+     * The number of entries in the cache of numeric colors; a power of two.
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * The maximum number of parsed color strings that are remembered.
+     */
+    private static final int MAX_STRINGS = 4096;
+
+    /**
+     * The colors, by lower case name and by any other string that has been
+     * parsed.
+     */
+    private static final Map<String, Color> STRINGS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * A direct mapped cache of interned colors, indexed by a hash of their
+     * ARGB value. Colors are immutable, so a racy read sees either a
+     * complete color or null.
+     */
+    private static final Color[] CACHE = new Color[CACHE_SIZE];
+
+    static {
+        // the named colors are interned before any of the numeric colors so
+        // that, for example, a recorded Color.ORANGE replays as Color.ORANGE
+        for(Field field : Color.class.getFields()) {
+            if(Modifier.isStatic(field.getModifiers()) &&
+                    field.getType() == Color.class) {
+                try {
+                    Color color = (Color)field.get(null);
+                    STRINGS.put(field.getName().toLowerCase(Locale.ROOT),
+                            color);
+                    CACHE[slot(toArgb(color))] = color;
+                }
+                catch(IllegalAccessException e) {
+                    // not a color constant
+                }
+            }
+        }
+    }
+
+    /**
+     * No palettes; only static methods.
+     */
+    private Palette() {
+    }
+
+    /**
+     * Returns the color for a string: either the name of one of the color
+     * constants in the {@link Color} class (in any case), a hex string, or
+     * an rgb string.
+     *
+     * @param color The color string.
+     *
+     * @return The corresponding {@link Color}.
+     *
+     * @throws IllegalArgumentException If the string does not name a color.
+     */
+    static Color valueOf(String color) {
+        if(color == null) {
+            throw new IllegalArgumentException("bad color string: " + color);
+        }
+        Color found = STRINGS.get(color);
+        if(found == null) {
+            found = STRINGS.get(color.toLowerCase(Locale.ROOT));
+        }
+        if(found == null) {
+            found = parse(color);
+            if(STRINGS.size() < MAX_STRINGS) {
+                STRINGS.put(color, found);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the interned, opaque color with the specified RGB values.
+     * Each value is rounded to the nearest of 256 levels.
+     *
+     * @param red The red value, between 0.0 and 1.0.
+     * @param green The green value, between 0.0 and 1.0.
+     * @param blue The blue value, between 0.0 and 1.0.
+     *
+     * @return The {@link Color}.
+     */
+    static Color rgb(double red, double green, double blue) {
+        return fromArgb(0xff000000 | channel(red) << 16 |
+                channel(green) << 8 | channel(blue));
+    }
+
+    /**
+     * Returns the interned color with the specified packed ARGB value.
+     *
+     * @param argb The color's packed ARGB value.
+     *
+     * @return The {@link Color}.
+     */
+    static Color fromArgb(int argb) {
+        int slot = slot(argb);
+        Color color = CACHE[slot];
+        if(color == null || toArgb(color) != argb) {
+            color = Color.rgb(argb >> 16 & 0xff, argb >> 8 & 0xff,
+                    argb & 0xff, (argb >>> 24) / 255.0);
+            CACHE[slot] = color;
+        }
+        return color;
+    }
+
+    /**
+     * Returns the packed ARGB value of a color, with each channel rounded to
+     * the nearest of 256 levels.
+     *
+     * @param color The color.
+     *
+     * @return The color's packed ARGB value.
+     */
+    static int toArgb(Color color) {
+        return channel(color.getOpacity()) << 24 |
+                channel(color.getRed()) << 16 |
+                channel(color.getGreen()) << 8 |
+                channel(color.getBlue());
+    }
+
+    /**
+     * Parses a hex or rgb color string.
+     *
+     * @param color The color string.
+     *
+     * @return The interned {@link Color}.
+     *
+     * @throws IllegalArgumentException If the string is not a color.
+     */
+    private static Color parse(String color) {
+        String trimmed = color.trim().toLowerCase(Locale.ROOT);
+        if(trimmed.startsWith("#") || trimmed.startsWith("0x") ||
+                trimmed.startsWith("rgb")) {
+            try {
+                return fromArgb(toArgb(Color.web(trimmed)));
+            }
+            catch(IllegalArgumentException e) {
+                // reported below
+            }
+        }
+        throw new IllegalArgumentException("bad color string: " + color);
+    }
+
+    /**
+     * Converts a color channel between 0.0 and 1.0 to an 8-bit value.
+     *
+     * @param value The value of the channel.
+     *
+     * @return The value of the channel between 0 and 255.
+     */
+    private static int channel(double value) {
+        return (int)Math.round(value * 255);
+    }
+
+    /**
+     * Returns the slot in the cache for a color.
+     *
+     * @param argb The color's packed ARGB value.
+     *
+     * @return The index of the color's slot in {@link #CACHE}.
+     */
+    private static int slot(int argb) {
+        int hash = argb * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & (CACHE_SIZE - 1);
+    }
+}
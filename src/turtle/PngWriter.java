@@ -0,0 +1,763 @@
+/*
+ * Rasterizes the commands issued to a Turtle into a PNG image.
+ */
+package turtle;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.paint.Color;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A {@link CommandVisitor} that rasterizes a Turtle's drawing into a PNG
+ * image of any size, without the JavaFX toolkit, so that drawings can be
+ * exported at poster sizes far beyond what a snapshot of the scene could
+ * hold. Attach it to a Turtle with {@link Turtle#record(CommandVisitor)} or
+ * replay a {@link CommandBuffer} into it; the image is written when the
+ * writer is closed.
+ *
+ * The Turtle's world is scaled to fill the image, and lines are scaled with
+ * it. The image is divided into bands of tiles; the tiles of each band are
+ * rendered in parallel on the common fork/join pool while the previous band
+ * is compressed and written, so the memory used for pixels is bounded by the
+ * width of the image times the height of two bands, however tall the image
+ * is. Lines are antialiased and drawn at the recorded pen width, fills use
+ * the even/odd rule, and the background is the last background color
+ * received. Text is not drawn, since rendering it requires the JavaFX
+ * toolkit.
+ */
+public class PngWriter implements CommandVisitor, Closeable {
+    /**
+     * The width and height of each tile, in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * The maximum number of bytes of image data in each IDAT chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The PNG file signature.
+     */
+    private static final byte[] SIGNATURE = {
+            (byte)137, 80, 78, 71, 13, 10, 26, 10};
+
+    /**
+     * The stream to which the image is written.
+     */
+    private final OutputStream stream;
+
+    /**
+     * The width of the image in pixels.
+     */
+    private final int width;
+
+    /**
+     * The height of the image in pixels.
+     */
+    private final int height;
+
+    /**
+     * The number of pixels per unit of the Turtle's world horizontally.
+     */
+    private final double scaleX;
+
+    /**
+     * The number of pixels per unit of the Turtle's world vertically.
+     */
+    private final double scaleY;
+
+    /**
+     * The x coordinate in the Turtle's world of the image's left edge.
+     */
+    private final double left;
+
+    /**
+     * The y coordinate in the Turtle's world of the image's top edge.
+     */
+    private final double top;
+
+    /**
+     * The width of a line in pixels for each unit of the pen's width.
+     */
+    private final double lineScale;
+
+    /**
+     * Collects the drawing and renders its tiles.
+     */
+    private final Rasterizer rasterizer;
+
+    /**
+     * The Turtle's current x coordinate.
+     */
+    private double x;
+
+    /**
+     * The Turtle's current y coordinate.
+     */
+    private double y;
+
+    /**
+     * The current pen color as a packed ARGB value.
+     */
+    private int penColor;
+
+    /**
+     * The current fill color as a packed ARGB value.
+     */
+    private int fillColor;
+
+    /**
+     * The current pen width.
+     */
+    private int penWidth;
+
+    /**
+     * The background color as a packed ARGB value.
+     */
+    private int background;
+
+    /**
+     * The pixel coordinates of the vertices of the outline of the fill in
+     * progress; null if there is no fill in progress.
+     */
+    private double[] outline;
+
+    /**
+     * The number of coordinates in the outline.
+     */
+    private int outlineSize;
+
+    /**
+     * The primitive reserved for the fill in progress.
+     */
+    private int fillPrimitive;
+
+    /**
+     * Indicates whether or not the image has been written.
+     */
+    private boolean closed;
+
+    /**
+     * The tiles saved at the checkpoints; null if there are no
+     * checkpoints.
+     */
+    private FrameCache cache;
+
+    /**
+     * Creates a new PNG writer that writes an image the size of the
+     * Turtle's world, one pixel per unit, to the specified stream.
+     *
+     * @param stream The stream to which the image should be written.
+     */
+    public PngWriter(OutputStream stream) {
+        this(stream, (int)Math.ceil(Turtle.getWidth()),
+                (int)Math.ceil(Turtle.getHeight()));
+    }
+
+    /**
+     * Creates a new PNG writer that writes an image of the specified size
+     * to the specified stream. The Turtle's world is scaled to fill the
+     * image.
+     *
+     * @param stream The stream to which the image should be written.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     */
+    public PngWriter(OutputStream stream, int width, int height) {
+        this(stream, width, height, -Turtle.getWidth() / 2,
+                Turtle.getHeight() / 2, width / Turtle.getWidth(),
+                height / Turtle.getHeight(),
+                Math.sqrt((width / Turtle.getWidth()) *
+                        (height / Turtle.getHeight())));
+    }
+
+    /**
+     * Creates a new PNG writer that writes an image of a region of the
+     * Turtle's world at a given scale to the specified stream. Lines are
+     * exactly as many pixels wide as the pen, as they are on the screen,
+     * whatever the scale.
+     *
+     * @param stream The stream to which the image should be written.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param left The x coordinate of the region's left edge.
+     * @param top The y coordinate of the region's top edge.
+     * @param scale The number of pixels per unit of the Turtle's world.
+     */
+    PngWriter(OutputStream stream, int width, int height, double left,
+              double top, double scale) {
+        this(stream, width, height, left, top, scale, scale, 1);
+    }
+
+    /**
+     * Creates a new PNG writer that writes an image of a region of the
+     * Turtle's world to the specified stream.
+     *
+     * @param stream The stream to which the image should be written.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param left The x coordinate of the region's left edge.
+     * @param top The y coordinate of the region's top edge.
+     * @param scaleX The number of pixels per unit horizontally.
+     * @param scaleY The number of pixels per unit vertically.
+     * @param lineScale The width of a line in pixels for each unit of the
+     *                  pen's width.
+     */
+    private PngWriter(OutputStream stream, int width, int height,
+                      double left, double top, double scaleX, double scaleY,
+                      double lineScale) {
+        if(width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("bad image size: " + width +
+                    "x" + height);
+        }
+        this.stream = stream;
+        this.width = width;
+        this.height = height;
+        this.left = left;
+        this.top = top;
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.lineScale = lineScale;
+        rasterizer = new Rasterizer(TILE_SIZE);
+        penColor = Palette.toArgb(Color.BLACK);
+        fillColor = penColor;
+        penWidth = 1;
+        background = Palette.toArgb(Color.WHITE);
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        this.x = x;
+        this.y = y;
+        addVertex(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        rasterizer.stroke(pixelX(this.x), pixelY(this.y), pixelX(x),
+                pixelY(y), strokeWidth(), penColor);
+        this.x = x;
+        this.y = y;
+        addVertex(x, y);
+    }
+
+    @Override
+    public void arcTo(double x, double y, double centerX, double centerY,
+                      double sweep) {
+        // the arc is flattened in the Turtle's world, since it may not be
+        // circular in the image
+        double fromX = this.x - centerX;
+        double fromY = this.y - centerY;
+        double radius = Math.hypot(fromX, fromY);
+        int pieces = Rasterizer.arcPieces(
+                radius * Math.max(scaleX, scaleY), sweep);
+        double lineWidth = strokeWidth();
+        for(int i=1; i<=pieces; i++) {
+            double toX = x;
+            double toY = y;
+            if(i < pieces) {
+                double radians = Math.toRadians(sweep * i / pieces);
+                double cosine = Math.cos(radians);
+                double sine = Math.sin(radians);
+                toX = centerX + fromX * cosine - fromY * sine;
+                toY = centerY + fromX * sine + fromY * cosine;
+            }
+            rasterizer.stroke(pixelX(this.x), pixelY(this.y), pixelX(toX),
+                    pixelY(toY), lineWidth, penColor);
+            this.x = toX;
+            this.y = toY;
+            addVertex(toX, toY);
+        }
+    }
+
+    @Override
+    public void heading(double heading) {
+        // the Turtle's heading is not part of the drawing
+    }
+
+    @Override
+    public void penColor(Color color) {
+        penColor = Palette.toArgb(color);
+    }
+
+    @Override
+    public void fillColor(Color color) {
+        fillColor = Palette.toArgb(color);
+    }
+
+    @Override
+    public void penWidth(int width) {
+        penWidth = width;
+    }
+
+    @Override
+    public void beginFill() {
+        if(outline == null) {
+            fillPrimitive = rasterizer.reserveFill();
+            outline = new double[16];
+            outlineSize = 0;
+            addVertex(x, y);
+        }
+    }
+
+    @Override
+    public void endFill() {
+        if(outline != null) {
+            rasterizer.fill(fillPrimitive, outline, outlineSize, fillColor);
+            outline = null;
+        }
+    }
+
+    @Override
+    public void text(String message) {
+        // text requires the JavaFX toolkit and is not drawn
+    }
+
+    @Override
+    public void background(Color color) {
+        background = Palette.toArgb(color);
+    }
+
+    /**
+     * Renders the image and writes it to the stream, then closes the
+     * stream. A fill that has not ended is discarded, but everything drawn
+     * during it is kept.
+     *
+     * @throws IOException If the image cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try(DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream, CHUNK_SIZE))) {
+            writeImage(out, Integer.MAX_VALUE, background);
+        }
+    }
+
+    /**
+     * Sets the step of the drawing at which whatever is drawn from now on
+     * appears; see {@link #write(OutputStream, int, Color)}.
+     *
+     * @param step The current step.
+     */
+    void step(int step) {
+        rasterizer.step(step);
+    }
+
+    /**
+     * Makes the current step a checkpoint, from which the tiles of images
+     * written at later steps are rendered once they have been rendered past
+     * it; see {@link FrameCache}. No fill may be in progress, and every
+     * checkpoint must be made before any image is written.
+     *
+     * @param step The current step.
+     */
+    void checkpoint(int step) {
+        if(cache == null) {
+            int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            cache = new FrameCache(rasterizer, columns * rows);
+        }
+        cache.checkpoint(step);
+    }
+
+    /**
+     * Writes a PNG image of the drawing as it was before the specified
+     * step to a stream, leaving the stream open.
+     *
+     * @param stream The stream to which the image should be written.
+     * @param until The first step that is not drawn.
+     * @param background The background color at that step.
+     *
+     * @throws IOException If the image cannot be written.
+     */
+    void write(OutputStream stream, int until, Color background)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream, CHUNK_SIZE));
+        writeImage(out, until, Palette.toArgb(background));
+        out.flush();
+    }
+
+    /**
+     * Renders the whole drawing into an image instead of writing it to the
+     * stream, which is not used. As when the image is written, the tiles
+     * of each band are rendered in parallel, and a fill that has not ended
+     * is discarded.
+     *
+     * @param writer The writer of an image of the same size as this one.
+     */
+    void write(PixelWriter writer) {
+        PixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+        for(int top=0; top<height; top+=TILE_SIZE) {
+            int bandTop = top;
+            int bandHeight = Math.min(TILE_SIZE, height - top);
+            List<ForkJoinTask<int[]>> tiles = new ArrayList<>();
+            for(int left=0; left<width; left+=TILE_SIZE) {
+                int tileLeft = left;
+                int tileWidth = Math.min(TILE_SIZE, width - left);
+                tiles.add(ForkJoinTask.adapt(() -> toArgb(renderPixels(
+                        tileLeft, bandTop, tileWidth, bandHeight,
+                        Integer.MAX_VALUE, background))));
+            }
+            ForkJoinTask.invokeAll(tiles);
+            for(int t=0; t<tiles.size(); t++) {
+                int left = t * TILE_SIZE;
+                int tileWidth = Math.min(TILE_SIZE, width - left);
+                writer.setPixels(left, top, tileWidth, bandHeight, format,
+                        tiles.get(t).join(), 0, tileWidth);
+            }
+        }
+    }
+
+    /**
+     * Writes the whole PNG image. Each band of tiles is rendered in
+     * parallel while the band before it is compressed.
+     *
+     * @param out The stream to which the image is written.
+     * @param until The first step that is not drawn.
+     * @param background The background color as a packed ARGB value.
+     *
+     * @throws IOException If the image cannot be written.
+     */
+    private void writeImage(DataOutputStream out, int until, int background)
+            throws IOException {
+        out.write(SIGNATURE);
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;      // bits per channel
+        header[9] = 6;      // RGBA
+        writeChunk(out, "IHDR", header, header.length);
+
+        // the image is mostly flat color, which even the fastest level
+        // compresses well
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try(DeflaterOutputStream data = new DeflaterOutputStream(
+                new ChunkStream(out), deflater, CHUNK_SIZE)) {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            ForkJoinTask<byte[][]> next = pool.submit(
+                    () -> renderBand(0, until, background));
+            for(int top=0; top<height; top+=TILE_SIZE) {
+                byte[][] rows = next.join();
+                if(top + TILE_SIZE < height) {
+                    int nextTop = top + TILE_SIZE;
+                    next = pool.submit(
+                            () -> renderBand(nextTop, until, background));
+                }
+                for(byte[] row : rows) {
+                    data.write(row);
+                }
+            }
+        }
+        finally {
+            deflater.end();
+        }
+
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    /**
+     * Renders a band of tiles in parallel.
+     *
+     * @param top The y coordinate of the top of the band.
+     * @param until The first step that is not drawn.
+     * @param background The background color as a packed ARGB value.
+     *
+     * @return The band's rows, each with its leading PNG filter byte.
+     */
+    private byte[][] renderBand(int top, int until, int background) {
+        int bandHeight = Math.min(TILE_SIZE, height - top);
+        byte[][] rows = new byte[bandHeight][1 + width * 4];
+        List<ForkJoinTask<?>> tiles = new ArrayList<>();
+        for(int left=0; left<width; left+=TILE_SIZE) {
+            int tileLeft = left;
+            tiles.add(ForkJoinTask.adapt(() -> renderTile(rows, tileLeft,
+                    top, Math.min(TILE_SIZE, width - tileLeft), bandHeight,
+                    until, background)));
+        }
+        ForkJoinTask.invokeAll(tiles);
+        return rows;
+    }
+
+    /**
+     * Renders a tile and stores its pixels in the rows of its band.
+     *
+     * @param rows The rows of the band.
+     * @param left The x coordinate of the tile's left edge.
+     * @param top The y coordinate of the tile's top edge.
+     * @param tileWidth The width of the tile.
+     * @param tileHeight The height of the tile.
+     * @param until The first step that is not drawn.
+     * @param background The background color as a packed ARGB value.
+     */
+    private void renderTile(byte[][] rows, int left, int top, int tileWidth,
+                            int tileHeight, int until, int background) {
+        float[] pixels = renderPixels(left, top, tileWidth, tileHeight,
+                until, background);
+        for(int row=0; row<tileHeight; row++) {
+            byte[] out = rows[row];
+            int o = 1 + left * 4;
+            for(int p=row*tileWidth*4; p<(row+1)*tileWidth*4; p+=4) {
+                float a = pixels[p + 3];
+                float unmultiply = a > 0 ? 255 / a : 0;
+                out[o++] = toByte(pixels[p] * unmultiply);
+                out[o++] = toByte(pixels[p + 1] * unmultiply);
+                out[o++] = toByte(pixels[p + 2] * unmultiply);
+                out[o++] = toByte(a * 255);
+            }
+        }
+    }
+
+    /**
+     * Renders a tile.
+     *
+     * @param left The x coordinate of the tile's left edge.
+     * @param top The y coordinate of the tile's top edge.
+     * @param tileWidth The width of the tile.
+     * @param tileHeight The height of the tile.
+     * @param until The first step that is not drawn.
+     * @param background The background color as a packed ARGB value.
+     *
+     * @return The tile's pixels, premultiplied, row by row.
+     */
+    private float[] renderPixels(int left, int top, int tileWidth,
+                                 int tileHeight, int until, int background) {
+        float alpha = (background >>> 24) / 255f;
+        float[] fill = {
+                ((background >> 16) & 0xff) / 255f * alpha,
+                ((background >> 8) & 0xff) / 255f * alpha,
+                (background & 0xff) / 255f * alpha,
+                alpha};
+        float[] pixels = new float[tileWidth * tileHeight * 4];
+        for(int p=0; p<pixels.length; p+=4) {
+            System.arraycopy(fill, 0, pixels, p, 4);
+        }
+
+        if(cache == null) {
+            rasterizer.render(left, top, tileWidth, tileHeight, pixels,
+                    until);
+        }
+        else {
+            int tile = top / TILE_SIZE * ((width + TILE_SIZE - 1) / TILE_SIZE)
+                    + left / TILE_SIZE;
+            cache.render(tile, left, top, tileWidth, tileHeight, pixels,
+                    until, background);
+        }
+        return pixels;
+    }
+
+    /**
+     * Returns the width of lines in pixels for the current pen width.
+     *
+     * @return The width of lines in the image.
+     */
+    private double strokeWidth() {
+        return penWidth * lineScale;
+    }
+
+    /**
+     * Translates an x coordinate in the Turtle's world into the image.
+     *
+     * @param x The x coordinate in the Turtle's world.
+     *
+     * @return The x coordinate in the image.
+     */
+    private double pixelX(double x) {
+        return (x - left) * scaleX;
+    }
+
+    /**
+     * Translates a y coordinate in the Turtle's world into the image.
+     *
+     * @param y The y coordinate in the Turtle's world.
+     *
+     * @return The y coordinate in the image.
+     */
+    private double pixelY(double y) {
+        return (top - y) * scaleY;
+    }
+
+    /**
+     * Adds a vertex to the outline of the fill in progress, if there is
+     * one.
+     *
+     * @param x The x coordinate of the vertex in the Turtle's world.
+     * @param y The y coordinate of the vertex in the Turtle's world.
+     */
+    private void addVertex(double x, double y) {
+        if(outline != null) {
+            if(outlineSize + 2 > outline.length) {
+                outline = Arrays.copyOf(outline, outline.length * 2);
+            }
+            outline[outlineSize++] = pixelX(x);
+            outline[outlineSize++] = pixelY(y);
+        }
+    }
+
+    /**
+     * Converts premultiplied pixels into packed ARGB values, rounded as
+     * they are in the PNG image.
+     *
+     * @param pixels The pixels, premultiplied.
+     *
+     * @return The pixels as packed ARGB values.
+     */
+    private static int[] toArgb(float[] pixels) {
+        int[] argb = new int[pixels.length / 4];
+        for(int i=0; i<argb.length; i++) {
+            int p = i * 4;
+            float a = pixels[p + 3];
+            float unmultiply = a > 0 ? 255 / a : 0;
+            argb[i] = (toByte(a * 255) & 0xff) << 24 |
+                    (toByte(pixels[p] * unmultiply) & 0xff) << 16 |
+                    (toByte(pixels[p + 1] * unmultiply) & 0xff) << 8 |
+                    toByte(pixels[p + 2] * unmultiply) & 0xff;
+        }
+        return argb;
+    }
+
+    /**
+     * Converts a channel value between 0 and 255 into a byte, rounding and
+     * clamping it.
+     *
+     * @param value The channel value.
+     *
+     * @return The channel as an unsigned byte.
+     */
+    private static byte toByte(float value) {
+        return (byte)Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    /**
+     * Stores a big-endian integer in an array.
+     *
+     * @param bytes The array.
+     * @param offset The offset at which to store the integer.
+     * @param value The integer.
+     */
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte)(value >>> 24);
+        bytes[offset + 1] = (byte)(value >>> 16);
+        bytes[offset + 2] = (byte)(value >>> 8);
+        bytes[offset + 3] = (byte)value;
+    }
+
+    /**
+     * Writes a PNG chunk.
+     *
+     * @param out The stream to which the chunk is written.
+     * @param type The chunk's four letter type.
+     * @param bytes The chunk's data.
+     * @param length The number of bytes of data.
+     *
+     * @throws IOException If the chunk cannot be written.
+     */
+    private static void writeChunk(DataOutputStream out, String type,
+                                   byte[] bytes, int length)
+            throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(bytes, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(bytes, 0, length);
+        out.writeInt((int)crc.getValue());
+    }
+
+    /**
+     * Splits the compressed image data into IDAT chunks.
+     */
+    private static class ChunkStream extends OutputStream {
+        /**
+         * The stream to which the chunks are written.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * The data of the chunk being filled.
+         */
+        private final byte[] chunk;
+
+        /**
+         * The number of bytes in the chunk.
+         */
+        private int size;
+
+        /**
+         * Creates a new chunk stream.
+         *
+         * @param out The stream to which the chunks are written.
+         */
+        ChunkStream(DataOutputStream out) {
+            this.out = out;
+            chunk = new byte[CHUNK_SIZE];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+                throws IOException {
+            while(length > 0) {
+                int count = Math.min(length, chunk.length - size);
+                System.arraycopy(bytes, offset, chunk, size, count);
+                size += count;
+                offset += count;
+                length -= count;
+                if(size == chunk.length) {
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * Writes the data collected so far as an IDAT chunk.
+         *
+         * @throws IOException If the chunk cannot be written.
+         */
+        @Override
+        public void flush() throws IOException {
+            if(size > 0) {
+                writeChunk(out, "IDAT", chunk, size);
+                size = 0;
+            }
+        }
+
+        /**
+         * Writes the last IDAT chunk. The underlying stream is left open
+         * for the end of the image.
+         *
+         * @throws IOException If the chunk cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
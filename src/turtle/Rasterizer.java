@@ -0,0 +1,553 @@
+/*
+ * A software rasterizer for a Turtle's drawing.
+ */
+package turtle;
+
+import java.util.Arrays;
+
+/**
+ * Rasterizes the lines, arcs and fills of a drawing into tiles of pixels
+ * without the JavaFX toolkit. The drawing is first collected as a list of
+ * primitives in pixel coordinates, in the order in which they are drawn:
+ * strokes (single line segments of a given width; arcs are flattened into
+ * segments with {@link #arcPieces(double, double)}) and fills (polygons,
+ * filled by the even/odd rule). The
+ * primitives are indexed by location, so that a tile is rendered from only
+ * the primitives that touch it. The index is a {@link NumberGrid} with a
+ * cell for each tile, so it costs a few bytes for each tile that a
+ * primitive touches however large the drawing is.
+ *
+ * Strokes are antialiased by their distance from each pixel center; fills
+ * are antialiased by {@link #SUBSAMPLES} sub-scanlines per row of pixels,
+ * each with exact horizontal coverage.
+ *
+ * Every primitive is stamped with the step of the drawing at which it
+ * appears, so that the drawing can be rendered as it was at any step;
+ * a fill appears at the step at which it ends. Steps never decrease, so the
+ * primitives in each cell of the index are in the order of their steps and
+ * those that appear during a range of steps are found without looking at
+ * the others. A tile can therefore also be rendered a range of steps at a
+ * time, each range on top of the one before it.
+ *
+ * Primitives must all be added before any tile is rendered; after that,
+ * any number of tiles may be rendered concurrently.
+ */
+class Rasterizer {
+    /**
+     * The number of sub-scanlines per row of pixels used to antialias
+     * fills.
+     */
+    static final int SUBSAMPLES = 4;
+
+    /**
+     * The maximum distance in pixels between a flattened arc and the true
+     * arc.
+     */
+    private static final double FLATNESS = 0.25;
+
+    /**
+     * The kind of a primitive that has been reserved for a fill that has not
+     * ended yet; it draws nothing.
+     */
+    private static final byte NONE = 0;
+
+    /**
+     * The kind of a stroked line segment; data: startX, startY, endX, endY,
+     * half of the width.
+     */
+    private static final byte STROKE = 1;
+
+    /**
+     * The kind of a filled polygon; data: the offset and the number of its
+     * vertices in the vertex array.
+     */
+    private static final byte FILL = 2;
+
+    /**
+     * The spatial index of the primitives, by number.
+     */
+    private final NumberGrid index;
+
+    /**
+     * The kinds of the primitives, in order.
+     */
+    private byte[] kinds;
+
+    /**
+     * The colors of the primitives as packed ARGB values.
+     */
+    private int[] colors;
+
+    /**
+     * The steps of the drawing at which the primitives appear.
+     */
+    private int[] steps;
+
+    /**
+     * The data of the primitives, five values for each.
+     */
+    private double[] data;
+
+    /**
+     * The number of primitives.
+     */
+    private int size;
+
+    /**
+     * The step of the drawing at which primitives added now appear.
+     */
+    private int step;
+
+    /**
+     * The x/y pairs of the vertices of every fill.
+     */
+    private double[] vertices;
+
+    /**
+     * The number of coordinates in the vertex array.
+     */
+    private int vertexCount;
+
+    /**
+     * Creates a new, empty rasterizer.
+     *
+     * @param tileSize The width and height of the tiles that will be
+     *                 rendered.
+     */
+    Rasterizer(int tileSize) {
+        index = new NumberGrid(tileSize);
+        kinds = new byte[1024];
+        colors = new int[1024];
+        steps = new int[1024];
+        data = new double[1024 * 5];
+        vertices = new double[1024];
+    }
+
+    /**
+     * Sets the step of the drawing at which the primitives that are added
+     * or filled from now on appear. The step must not be less than the
+     * step before it.
+     *
+     * @param step The current step.
+     */
+    void step(int step) {
+        this.step = step;
+    }
+
+    /**
+     * Adds a stroked line segment with round ends.
+     *
+     * @param startX The x coordinate of the start of the segment.
+     * @param startY The y coordinate of the start of the segment.
+     * @param endX The x coordinate of the end of the segment.
+     * @param endY The y coordinate of the end of the segment.
+     * @param width The width of the stroke.
+     * @param argb The color of the stroke.
+     */
+    void stroke(double startX, double startY, double endX, double endY,
+                double width, int argb) {
+        int primitive = add(STROKE, argb);
+        int d = primitive * 5;
+        double reach = width / 2;
+        data[d] = startX;
+        data[d + 1] = startY;
+        data[d + 2] = endX;
+        data[d + 3] = endY;
+        data[d + 4] = reach;
+        // a pixel is touched if its center is within half a pixel more
+        index.add(primitive, Math.min(startX, endX) - reach - 1,
+                Math.min(startY, endY) - reach - 1,
+                Math.max(startX, endX) + reach + 1,
+                Math.max(startY, endY) + reach + 1);
+    }
+
+    /**
+     * Reserves a place in the drawing for a fill that has begun, so that it
+     * is beneath everything drawn until it ends.
+     *
+     * @return The number of the reserved primitive.
+     */
+    int reserveFill() {
+        return add(NONE, 0);
+    }
+
+    /**
+     * Fills a polygon in a place reserved by {@link #reserveFill()}.
+     *
+     * @param primitive The number of the reserved primitive.
+     * @param polygon The x/y pairs of the vertices of the polygon.
+     * @param count The number of coordinates in the polygon.
+     * @param argb The fill color.
+     */
+    void fill(int primitive, double[] polygon, int count, int argb) {
+        if(count < 6) {
+            // fewer than three vertices cover nothing
+            return;
+        }
+        if(vertexCount + count > vertices.length) {
+            vertices = Arrays.copyOf(vertices,
+                    Math.max(vertices.length * 2, vertexCount + count));
+        }
+        System.arraycopy(polygon, 0, vertices, vertexCount, count);
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for(int i=0; i<count; i+=2) {
+            minX = Math.min(minX, polygon[i]);
+            maxX = Math.max(maxX, polygon[i]);
+            minY = Math.min(minY, polygon[i + 1]);
+            maxY = Math.max(maxY, polygon[i + 1]);
+        }
+
+        kinds[primitive] = FILL;
+        colors[primitive] = argb;
+        steps[primitive] = step;
+        data[primitive * 5] = vertexCount;
+        data[primitive * 5 + 1] = count;
+        vertexCount += count;
+        index.add(primitive, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Returns the number of vertices into which an arc is flattened.
+     *
+     * @param radius The radius of the arc in pixels.
+     * @param sweep The number of degrees that the arc sweeps.
+     *
+     * @return The number of line segments in the flattened arc.
+     */
+    static int arcPieces(double radius, double sweep) {
+        double step = radius > FLATNESS ?
+                2 * Math.acos(1 - FLATNESS / radius) : Math.PI / 2;
+        return Math.max(1, (int)Math.ceil(
+                Math.toRadians(Math.abs(sweep)) / step));
+    }
+
+    /**
+     * Renders a tile. The tile's pixels are premultiplied RGBA values
+     * between 0 and 1, four for each pixel, row by row; they must already
+     * hold the background. Only the primitives that appear before the
+     * specified step are rendered.
+     *
+     * @param left The x coordinate of the tile's left edge.
+     * @param top The y coordinate of the tile's top edge.
+     * @param width The width of the tile.
+     * @param height The height of the tile.
+     * @param pixels The tile's pixels.
+     * @param until The first step that is not rendered.
+     */
+    void render(int left, int top, int width, int height, float[] pixels,
+                int until) {
+        render(left, top, width, height, pixels, 0, until);
+    }
+
+    /**
+     * Renders the primitives of a tile that appear during a range of steps
+     * on top of its pixels, which must hold the tile as it was at the start
+     * of the range. The result is the same as rendering the tile until the
+     * end of the range, provided that no fill began before the start of the
+     * range and ended after it.
+     *
+     * @param left The x coordinate of the tile's left edge.
+     * @param top The y coordinate of the tile's top edge.
+     * @param width The width of the tile.
+     * @param height The height of the tile.
+     * @param pixels The tile's pixels.
+     * @param from The first step that is rendered.
+     * @param until The first step that is not rendered.
+     *
+     * @return The number of primitives rendered.
+     */
+    int render(int left, int top, int width, int height, float[] pixels,
+               int from, int until) {
+        // the index is no longer modified, so it may be read concurrently
+        int[] primitives = index.query(left, top, left + width,
+                top + height, steps, from, until);
+        Tile tile = new Tile(left, top, width, height, pixels);
+        for(int primitive : primitives) {
+            if(kinds[primitive] == STROKE) {
+                tile.stroke(primitive);
+            }
+            else if(kinds[primitive] == FILL) {
+                tile.fill(primitive);
+            }
+        }
+        return primitives.length;
+    }
+
+    /**
+     * Adds a primitive, growing the arrays if necessary.
+     *
+     * @param kind The kind of primitive.
+     * @param argb The primitive's color.
+     *
+     * @return The number of the new primitive.
+     */
+    private int add(byte kind, int argb) {
+        if(size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            colors = Arrays.copyOf(colors, size * 2);
+            steps = Arrays.copyOf(steps, size * 2);
+            data = Arrays.copyOf(data, size * 2 * 5);
+        }
+        kinds[size] = kind;
+        colors[size] = argb;
+        steps[size] = step;
+        return size++;
+    }
+
+    /**
+     * The state used to render a single tile.
+     */
+    private class Tile {
+        /**
+         * The x coordinate of the tile's left edge.
+         */
+        private final int left;
+
+        /**
+         * The y coordinate of the tile's top edge.
+         */
+        private final int top;
+
+        /**
+         * The width of the tile.
+         */
+        private final int width;
+
+        /**
+         * The height of the tile.
+         */
+        private final int height;
+
+        /**
+         * The tile's premultiplied RGBA pixels.
+         */
+        private final float[] pixels;
+
+        /**
+         * The coverage of each pixel by the fill being rendered; allocated
+         * when the first fill is rendered.
+         */
+        private float[] coverage;
+
+        /**
+         * The x coordinates at which the current sub-scanline crosses the
+         * edges of the fill being rendered.
+         */
+        private double[] crossings;
+
+        /**
+         * Creates the state for a tile.
+         *
+         * @param left The x coordinate of the tile's left edge.
+         * @param top The y coordinate of the tile's top edge.
+         * @param width The width of the tile.
+         * @param height The height of the tile.
+         * @param pixels The tile's pixels.
+         */
+        Tile(int left, int top, int width, int height, float[] pixels) {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            crossings = new double[16];
+        }
+
+        /**
+         * Renders a stroked line segment. Each pixel is covered in
+         * proportion to how far its center is inside the stroke, so the
+         * stroke's edges fade over a single pixel.
+         *
+         * @param primitive The number of the segment.
+         */
+        void stroke(int primitive) {
+            int d = primitive * 5;
+            double startX = data[d];
+            double startY = data[d + 1];
+            double endX = data[d + 2];
+            double endY = data[d + 3];
+            double reach = data[d + 4] + 0.5;
+            double lineX = endX - startX;
+            double lineY = endY - startY;
+            double lengthSquared = lineX * lineX + lineY * lineY;
+
+            int firstRow = Math.max(top,
+                    (int)Math.floor(Math.min(startY, endY) - reach));
+            int lastRow = Math.min(top + height - 1,
+                    (int)Math.ceil(Math.max(startY, endY) + reach));
+            double minX = Math.min(startX, endX) - reach;
+            double maxX = Math.max(startX, endX) + reach;
+            for(int row=firstRow; row<=lastRow; row++) {
+                double centerY = row + 0.5;
+
+                // the stroke crosses this row within reach of the point
+                // where its center line does
+                double fromX = minX;
+                double toX = maxX;
+                if(Math.abs(lineY) > 1e-9) {
+                    double crossing = startX + (centerY - startY) * lineX /
+                            lineY;
+                    double spread = reach * Math.sqrt(lengthSquared) /
+                            Math.abs(lineY);
+                    fromX = Math.max(fromX, crossing - spread);
+                    toX = Math.min(toX, crossing + spread);
+                }
+                int first = Math.max(left, (int)Math.floor(fromX - 0.5));
+                int last = Math.min(left + width - 1,
+                        (int)Math.ceil(toX - 0.5));
+                for(int column=first; column<=last; column++) {
+                    double centerX = column + 0.5;
+                    double t = lengthSquared == 0 ? 0 :
+                            ((centerX - startX) * lineX +
+                                    (centerY - startY) * lineY) /
+                                    lengthSquared;
+                    t = Math.max(0, Math.min(1, t));
+                    double distance = Math.hypot(
+                            centerX - (startX + t * lineX),
+                            centerY - (startY + t * lineY));
+                    double cover = reach - distance;
+                    if(cover > 0) {
+                        blend(column - left, row - top, colors[primitive],
+                                (float)Math.min(1, cover));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Renders a filled polygon using the even/odd rule. The coverage of
+         * each pixel is accumulated over its sub-scanlines; each span
+         * between a pair of crossings covers the pixels at its ends in
+         * proportion to how much of them it spans.
+         *
+         * @param primitive The number of the fill.
+         */
+        void fill(int primitive) {
+            int offset = (int)data[primitive * 5];
+            int count = (int)data[primitive * 5 + 1];
+            if(coverage == null) {
+                coverage = new float[width * height];
+            }
+
+            // only the edges that cross this tile's rows matter, but every
+            // one of them does, even those to the left of the tile
+            double tileTop = top;
+            double tileBottom = top + height;
+            int[] edges = new int[count / 2];
+            int edgeCount = 0;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for(int i=0; i<count; i+=2) {
+                int j = (i + 2) % count;
+                double y1 = vertices[offset + i + 1];
+                double y2 = vertices[offset + j + 1];
+                if(y1 != y2 && Math.max(y1, y2) > tileTop &&
+                        Math.min(y1, y2) < tileBottom) {
+                    edges[edgeCount++] = i;
+                    minY = Math.min(minY, Math.min(y1, y2));
+                    maxY = Math.max(maxY, Math.max(y1, y2));
+                }
+            }
+            if(edgeCount == 0) {
+                return;
+            }
+
+            int firstRow = Math.max(top, (int)Math.floor(minY));
+            int lastRow = Math.min(top + height - 1, (int)Math.ceil(maxY));
+            float share = 1f / SUBSAMPLES;
+            for(int row=firstRow; row<=lastRow; row++) {
+                for(int sub=0; sub<SUBSAMPLES; sub++) {
+                    double y = row + (sub + 0.5) / SUBSAMPLES;
+                    int crossingCount = 0;
+                    for(int e=0; e<edgeCount; e++) {
+                        int i = offset + edges[e];
+                        int j = offset + (edges[e] + 2) % count;
+                        double x1 = vertices[i];
+                        double y1 = vertices[i + 1];
+                        double x2 = vertices[j];
+                        double y2 = vertices[j + 1];
+                        if((y1 <= y) != (y2 <= y)) {
+                            if(crossingCount == crossings.length) {
+                                crossings = Arrays.copyOf(crossings,
+                                        crossingCount * 2);
+                            }
+                            crossings[crossingCount++] =
+                                    x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+                        }
+                    }
+                    Arrays.sort(crossings, 0, crossingCount);
+                    for(int c=0; c+1<crossingCount; c+=2) {
+                        cover(row - top, crossings[c] - left,
+                                crossings[c + 1] - left, share);
+                    }
+                }
+            }
+
+            int argb = colors[primitive];
+            for(int row=firstRow-top; row<=lastRow-top; row++) {
+                for(int column=0; column<width; column++) {
+                    int p = row * width + column;
+                    if(coverage[p] > 0) {
+                        blend(column, row, argb, Math.min(1, coverage[p]));
+                        coverage[p] = 0;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the coverage of a span of a sub-scanline to a row of the
+         * tile.
+         *
+         * @param row The row within the tile.
+         * @param fromX The start of the span, relative to the tile.
+         * @param toX The end of the span, relative to the tile.
+         * @param share The coverage of a pixel that the span covers
+         *              completely.
+         */
+        private void cover(int row, double fromX, double toX, float share) {
+            fromX = Math.max(0, fromX);
+            toX = Math.min(width, toX);
+            if(fromX >= toX) {
+                return;
+            }
+            int first = (int)fromX;
+            int last = Math.min(width - 1, (int)toX);
+            int base = row * width;
+            if(first == last) {
+                coverage[base + first] += (float)(toX - fromX) * share;
+                return;
+            }
+            coverage[base + first] += (float)(first + 1 - fromX) * share;
+            for(int column=first+1; column<last; column++) {
+                coverage[base + column] += share;
+            }
+            coverage[base + last] += (float)(toX - last) * share;
+        }
+
+        /**
+         * Composites a color over a pixel of the tile.
+         *
+         * @param column The pixel's column within the tile.
+         * @param row The pixel's row within the tile.
+         * @param argb The color.
+         * @param cover The fraction of the pixel that the color covers.
+         */
+        private void blend(int column, int row, int argb, float cover) {
+            float alpha = ((argb >>> 24) / 255f) * cover;
+            float keep = 1 - alpha;
+            int p = (row * width + column) * 4;
+            pixels[p] = pixels[p] * keep + ((argb >> 16) & 0xff) / 255f *
+                    alpha;
+            pixels[p + 1] = pixels[p + 1] * keep + ((argb >> 8) & 0xff) /
+                    255f * alpha;
+            pixels[p + 2] = pixels[p + 2] * keep + (argb & 0xff) / 255f *
+                    alpha;
+            pixels[p + 3] = pixels[p + 3] * keep + alpha;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Renders the finished parts of a Turtle's drawing.
+ */
+package turtle;
+
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Transform;
+
+/**
+ * Renders the finished parts of a {@link Turtle}'s drawing (lines, fills and
+ * text) into a layer of the Turtle's scene. All coordinates are in the
+ * drawing's coordinates: the Turtle's world with the y axis pointing down,
+ * as in JavaFX. The layer is mapped onto the screen by a single transform
+ * that is applied to it by the world, so changing the world coordinates
+ * never changes what has already been drawn. All methods must be called in
+ * the JavaFX application thread.
+ */
+interface Renderer {
+    /**
+     * Returns the node into which this renderer draws. The node is placed
+     * beneath the Turtle's arrowhead.
+     *
+     * @return The renderer's layer.
+     */
+    Node getLayer();
+
+    /**
+     * Draws a finished line.
+     *
+     * @param startX The x coordinate of the start of the line.
+     * @param startY The y coordinate of the start of the line.
+     * @param endX The x coordinate of the end of the line.
+     * @param endY The y coordinate of the end of the line.
+     * @param color The color of the line.
+     * @param width The width of the line.
+     */
+    void line(double startX, double startY, double endX, double endY,
+              Color color, double width);
+
+    /**
+     * Draws a finished path of lines through a number of points, each line
+     * starting where the one before it ends. The result is the same as
+     * drawing each of the lines in turn, but a renderer may draw them all
+     * at once.
+     *
+     * @param points The x and y coordinates of the points, alternately.
+     *               The array is not modified or kept.
+     * @param count The number of points to use, at least 2.
+     * @param color The color of the lines.
+     * @param width The width of the lines.
+     */
+    void polyline(double[] points, int count, Color color, double width);
+
+    /**
+     * Draws a finished arc of a circle. Angles are in degrees, measured
+     * counterclockwise from the positive x axis as seen on the screen.
+     *
+     * @param centerX The x coordinate of the center of the circle.
+     * @param centerY The y coordinate of the center of the circle.
+     * @param radius The radius of the circle.
+     * @param startAngle The angle at which the arc starts.
+     * @param length The number of degrees that the arc sweeps.
+     * @param color The color of the arc.
+     * @param width The width of the arc.
+     */
+    void arc(double centerX, double centerY, double radius,
+             double startAngle, double length, Color color, double width);
+
+    /**
+     * Draws an image, such as a placed {@link Figure}. The image is shared,
+     * and may be drawn any number of times.
+     *
+     * @param image The image.
+     * @param transform The transform from the image's pixels into the
+     *                  drawing's coordinates.
+     */
+    void image(Image image, Transform transform);
+
+    /**
+     * Called when a Turtle begins drawing a shape that will later be
+     * filled. Anything drawn after the fill begins must remain on top of the
+     * fill. Since several Turtles may be filling at once, each fill is
+     * identified by its own placeholder group.
+     *
+     * @param placeholder An empty group that marks the fill's place in the
+     *                    drawing.
+     */
+    void beginFill(Group placeholder);
+
+    /**
+     * Fills the specified outline, beneath anything drawn since the fill
+     * began. The outline belongs to the renderer from now on.
+     *
+     * @param placeholder The group passed to {@link #beginFill(Group)} when
+     *                    the fill began.
+     * @param outline The outline of the shape to fill.
+     * @param color The color with which to fill it.
+     */
+    void fill(Group placeholder, FillOutline outline, Color color);
+
+    /**
+     * Draws text with its baseline starting at the specified location.
+     *
+     * @param x The x coordinate of the text.
+     * @param y The y coordinate of the baseline of the text.
+     * @param message The text to draw.
+     * @param color The color of the text.
+     * @param size The size of the font.
+     */
+    void text(double x, double y, String message, Color color, double size);
+
+    /**
+     * Sets the transform that maps the layer onto the screen, and the size
+     * of the screen. A renderer need only attach or draw what is visible,
+     * but must show whatever comes into view when the transform or the size
+     * of the screen changes, at the level of detail of the new transform.
+     * Doing so costs at least time in proportion to what is visible.
+     *
+     * @param toScreen The transform from the drawing's coordinates to the
+     *                 screen's; a scale and a translation.
+     * @param width The width of the screen.
+     * @param height The height of the screen.
+     */
+    void view(Transform toScreen, double width, double height);
+}
@@ -0,0 +1,468 @@
+/*
+ * Replays a recorded drawing with random access.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Replays a drawing recorded in a {@link CommandBuffer}, at any speed, and
+ * seeks directly to any command in it, forwards or backwards. The position
+ * of a replay is the number of commands that have been replayed; at each
+ * position the replay knows the Turtle's state (its location, heading,
+ * pen, colors and whether it is filling) and can render the drawing as it
+ * was.
+ *
+ * When a replay is created it makes a single pass over the whole drawing,
+ * without animating anything. Everything drawn is rasterized once and
+ * stamped with the command that drew it, so the drawing at any position is
+ * simply everything stamped before it; and the Turtle's state is saved
+ * every {@link #CHECKPOINT_INTERVAL} commands. Seeking restores the nearest
+ * checkpoint and replays the commands after it, so it costs no more than
+ * replaying a single interval however long the drawing is.
+ *
+ * The rendered frames are checkpointed too, tile by tile: the first frame
+ * rendered past a checkpoint at which the Turtle was not filling saves the
+ * tiles that changed since the one before (see {@link FrameCache}), and
+ * later frames render only what was drawn since the nearest saved tile. A
+ * frame therefore costs in proportion to the commands since the nearest
+ * checkpoint once the frames before it have been rendered once, as they
+ * are when a replay is played; the first frame written after seeking far
+ * ahead still renders everything before it once. The saved tiles take at
+ * most a quarter of the heap, beyond which fewer checkpoints are kept.
+ *
+ * The speed of a replay is the number of commands replayed per second,
+ * independent of the speed at which they were drawn. The recording must
+ * not change while it is being replayed, and a replay is not thread safe.
+ */
+public class Replay {
+    /**
+     * The number of commands between checkpoints of the Turtle's state.
+     */
+    public static final int CHECKPOINT_INTERVAL = 4096;
+
+    /**
+     * The default speed, in commands per second.
+     */
+    private static final double DEFAULT_SPEED = 1000;
+
+    /**
+     * The number of commands in the recording.
+     */
+    private final int size;
+
+    /**
+     * The whole drawing, stamped with the command that drew each part.
+     */
+    private final PngWriter frames;
+
+    /**
+     * The Turtle's state before every {@link #CHECKPOINT_INTERVAL}th
+     * command, in order.
+     */
+    private final Checkpoint[] checkpoints;
+
+    /**
+     * The position in the recording of the next command to replay.
+     */
+    private CommandBuffer.Cursor cursor;
+
+    /**
+     * The Turtle's state at the current position.
+     */
+    private State state;
+
+    /**
+     * The number of commands replayed per second; negative to replay
+     * backwards.
+     */
+    private double speed;
+
+    /**
+     * The fraction of a command that has been replayed but not yet
+     * reached.
+     */
+    private double remainder;
+
+    /**
+     * Creates a new replay of the specified recording, which renders the
+     * drawing at the size of the Turtle's world.
+     *
+     * @param commands The recording to replay.
+     */
+    public Replay(CommandBuffer commands) {
+        this(commands, (int)Math.ceil(Turtle.getWidth()),
+                (int)Math.ceil(Turtle.getHeight()));
+    }
+
+    /**
+     * Creates a new replay of the specified recording, which renders the
+     * drawing at the specified size. The Turtle's world is scaled to fill
+     * the image.
+     *
+     * @param commands The recording to replay.
+     * @param width The width of the rendered drawing in pixels.
+     * @param height The height of the rendered drawing in pixels.
+     */
+    public Replay(CommandBuffer commands, int width, int height) {
+        size = commands.size();
+        frames = new PngWriter(OutputStream.nullOutputStream(), width,
+                height);
+        checkpoints = new Checkpoint[size / CHECKPOINT_INTERVAL + 1];
+
+        CommandBuffer.Cursor pass = commands.cursor();
+        State passState = new State();
+        CommandVisitor visitor = new CommandMulticaster(passState, frames);
+        for(int i=0; i<checkpoints.length; i++) {
+            checkpoints[i] = new Checkpoint(pass.copy(), passState.copy());
+            if(!passState.filling) {
+                frames.checkpoint(pass.position());
+            }
+            int end = Math.min(size, pass.position() + CHECKPOINT_INTERVAL);
+            while(pass.position() < end) {
+                frames.step(pass.position());
+                pass.replay(visitor, pass.position() + 1);
+            }
+        }
+
+        cursor = commands.cursor();
+        state = new State();
+        speed = DEFAULT_SPEED;
+    }
+
+    /**
+     * Returns the number of commands in the recording.
+     *
+     * @return The position of the end of the recording.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of commands that have been replayed.
+     *
+     * @return The current position.
+     */
+    public int position() {
+        return cursor.position();
+    }
+
+    /**
+     * Moves directly to the specified position, forwards or backwards,
+     * without replaying anything in between.
+     *
+     * @param position The number of commands that should have been
+     *                 replayed, between 0 and {@link #size()}.
+     */
+    public void seek(int position) {
+        if(position < 0 || position > size) {
+            throw new IllegalArgumentException("bad position: " + position);
+        }
+        if(position < cursor.position() ||
+                position - cursor.position() > CHECKPOINT_INTERVAL) {
+            Checkpoint checkpoint =
+                    checkpoints[position / CHECKPOINT_INTERVAL];
+            cursor = checkpoint.cursor.copy();
+            state = checkpoint.state.copy();
+        }
+        cursor.replay(state, position);
+        remainder = 0;
+    }
+
+    /**
+     * Sets the speed of the replay.
+     *
+     * @param speed The number of commands replayed per second; negative to
+     *              replay backwards, or 0 to pause.
+     */
+    public void speed(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * Returns the speed of the replay.
+     *
+     * @return The number of commands replayed per second.
+     */
+    public double speed() {
+        return speed;
+    }
+
+    /**
+     * Advances the replay by the number of commands that would be replayed
+     * in the specified time at the current speed, stopping at either end
+     * of the recording.
+     *
+     * @param seconds The time that has passed.
+     *
+     * @return The new position.
+     */
+    public int advance(double seconds) {
+        double commands = speed * seconds + remainder;
+        long target = cursor.position() + (long)commands;
+        double left = commands - (long)commands;
+        seek((int)Math.max(0, Math.min(size, target)));
+        if(target > 0 && target < size) {
+            remainder = left;
+        }
+        return cursor.position();
+    }
+
+    /**
+     * Returns the Turtle's x coordinate at the current position.
+     *
+     * @return The x coordinate.
+     */
+    public double getX() {
+        return state.x;
+    }
+
+    /**
+     * Returns the Turtle's y coordinate at the current position.
+     *
+     * @return The y coordinate.
+     */
+    public double getY() {
+        return state.y;
+    }
+
+    /**
+     * Returns the Turtle's heading at the current position.
+     *
+     * @return The heading in degrees, measured counterclockwise from east.
+     */
+    public double getHeading() {
+        return state.heading;
+    }
+
+    /**
+     * Returns whether or not the Turtle's most recent move at the current
+     * position drew a line or an arc.
+     *
+     * @return True if the pen was down.
+     */
+    public boolean isPenDown() {
+        return state.penDown;
+    }
+
+    /**
+     * Returns the pen color at the current position.
+     *
+     * @return The pen color.
+     */
+    public Color getPenColor() {
+        return state.penColor;
+    }
+
+    /**
+     * Returns the fill color at the current position.
+     *
+     * @return The fill color.
+     */
+    public Color getFillColor() {
+        return state.fillColor;
+    }
+
+    /**
+     * Returns the pen width at the current position.
+     *
+     * @return The pen width.
+     */
+    public int getPenWidth() {
+        return state.penWidth;
+    }
+
+    /**
+     * Returns whether or not the Turtle is filling at the current position.
+     *
+     * @return True if a fill has begun and not yet ended.
+     */
+    public boolean isFilling() {
+        return state.filling;
+    }
+
+    /**
+     * Writes the drawing as it is at the current position to a stream as
+     * a PNG image, leaving the stream open. As with a {@link PngWriter},
+     * text is not drawn, and a fill appears only once it has ended.
+     *
+     * @param stream The stream to which the image should be written.
+     *
+     * @throws IOException If the image cannot be written.
+     */
+    public void writeFrame(OutputStream stream) throws IOException {
+        frames.write(stream, cursor.position(), state.background);
+    }
+
+    /**
+     * A saved position in the recording and the Turtle's state there.
+     */
+    private static final class Checkpoint {
+        /**
+         * The saved position.
+         */
+        private final CommandBuffer.Cursor cursor;
+
+        /**
+         * The Turtle's state at the saved position.
+         */
+        private final State state;
+
+        /**
+         * Creates a new checkpoint.
+         *
+         * @param cursor The saved position.
+         * @param state The Turtle's state at the saved position.
+         */
+        Checkpoint(CommandBuffer.Cursor cursor, State state) {
+            this.cursor = cursor;
+            this.state = state;
+        }
+    }
+
+    /**
+     * Tracks the Turtle's state through the commands it receives.
+     */
+    private static final class State implements CommandVisitor {
+        /**
+         * The Turtle's x coordinate.
+         */
+        private double x;
+
+        /**
+         * The Turtle's y coordinate.
+         */
+        private double y;
+
+        /**
+         * The Turtle's heading in degrees, counterclockwise from east.
+         */
+        private double heading;
+
+        /**
+         * Indicates whether or not the Turtle's most recent move drew.
+         */
+        private boolean penDown;
+
+        /**
+         * The pen color.
+         */
+        private Color penColor;
+
+        /**
+         * The fill color.
+         */
+        private Color fillColor;
+
+        /**
+         * The pen width.
+         */
+        private int penWidth;
+
+        /**
+         * Indicates whether or not a fill is in progress.
+         */
+        private boolean filling;
+
+        /**
+         * The background color.
+         */
+        private Color background;
+
+        /**
+         * Creates the state of a new Turtle.
+         */
+        State() {
+            penDown = true;
+            penColor = Color.BLACK;
+            fillColor = Color.BLACK;
+            penWidth = 1;
+            background = Color.WHITE;
+        }
+
+        /**
+         * Makes a copy of this state.
+         *
+         * @return The copy.
+         */
+        State copy() {
+            State copy = new State();
+            copy.x = x;
+            copy.y = y;
+            copy.heading = heading;
+            copy.penDown = penDown;
+            copy.penColor = penColor;
+            copy.fillColor = fillColor;
+            copy.penWidth = penWidth;
+            copy.filling = filling;
+            copy.background = background;
+            return copy;
+        }
+
+        @Override
+        public void moveTo(double x, double y) {
+            this.x = x;
+            this.y = y;
+            penDown = false;
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            this.x = x;
+            this.y = y;
+            penDown = true;
+        }
+
+        @Override
+        public void arcTo(double x, double y, double centerX,
+                          double centerY, double sweep) {
+            this.x = x;
+            this.y = y;
+            penDown = true;
+        }
+
+        @Override
+        public void heading(double heading) {
+            this.heading = heading;
+        }
+
+        @Override
+        public void penColor(Color color) {
+            penColor = color;
+        }
+
+        @Override
+        public void fillColor(Color color) {
+            fillColor = color;
+        }
+
+        @Override
+        public void penWidth(int width) {
+            penWidth = width;
+        }
+
+        @Override
+        public void beginFill() {
+            filling = true;
+        }
+
+        @Override
+        public void endFill() {
+            filling = false;
+        }
+
+        @Override
+        public void text(String message) {
+            // text does not change the Turtle's state
+        }
+
+        @Override
+        public void background(Color color) {
+            background = color;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Indexes a Turtle's drawing by location.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link CommandVisitor} that indexes the lines, arcs, fills and text of a
+ * drawing by location as they are drawn, so that the elements in a region
+ * or under a point can be found without looking at every element. Attach it
+ * to a Turtle with {@link Turtle#record(CommandVisitor)}, or replay a
+ * {@link CommandBuffer} into it. All coordinates are in the Turtle's world.
+ *
+ * The bounds of text are estimated from its length, since measuring text
+ * requires the JavaFX toolkit.
+ *
+ * A spatial index may be queried from any thread while it is being built.
+ */
+public class SpatialIndex implements CommandVisitor {
+    /**
+     * The width and height of each cell of the index.
+     */
+    private static final double CELL_SIZE = 64;
+
+    /**
+     * The height of text above its baseline.
+     */
+    private static final double TEXT_ASCENT = 13;
+
+    /**
+     * The depth of text below its baseline.
+     */
+    private static final double TEXT_DESCENT = 4;
+
+    /**
+     * The estimated average width of a character of text.
+     */
+    private static final double CHARACTER_WIDTH = 7.5;
+
+    /**
+     * The maximum number of degrees between the vertices of a flattened
+     * arc in the outline of a fill.
+     */
+    private static final double DEGREES_PER_VERTEX = 10;
+
+    /**
+     * The elements, by their bounds.
+     */
+    private final Grid<DrawnElement> grid;
+
+    /**
+     * The number of elements in the index.
+     */
+    private int size;
+
+    /**
+     * The Turtle's current x coordinate.
+     */
+    private double x;
+
+    /**
+     * The Turtle's current y coordinate.
+     */
+    private double y;
+
+    /**
+     * The current pen color.
+     */
+    private Color penColor;
+
+    /**
+     * The current fill color.
+     */
+    private Color fillColor;
+
+    /**
+     * The current pen width.
+     */
+    private int penWidth;
+
+    /**
+     * The x/y pairs of the vertices of the outline of the fill in progress;
+     * null if there is no fill in progress.
+     */
+    private double[] outline;
+
+    /**
+     * The number of coordinates in the outline.
+     */
+    private int outlineSize;
+
+    /**
+     * Creates a new, empty spatial index.
+     */
+    public SpatialIndex() {
+        grid = new Grid<>(CELL_SIZE);
+        penColor = Color.BLACK;
+        fillColor = Color.BLACK;
+        penWidth = 1;
+    }
+
+    /**
+     * Returns the number of elements in the index.
+     *
+     * @return The number of indexed elements.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns every element with bounds that intersect the specified
+     * rectangle.
+     *
+     * @param minX The smallest x coordinate of the rectangle.
+     * @param minY The smallest y coordinate of the rectangle.
+     * @param maxX The largest x coordinate of the rectangle.
+     * @param maxY The largest y coordinate of the rectangle.
+     *
+     * @return The elements in the rectangle, in the order in which they
+     *         were drawn.
+     */
+    public synchronized List<DrawnElement> query(double minX, double minY,
+                                                 double maxX, double maxY) {
+        return sorted(new ArrayList<>(grid.query(minX, minY, maxX, maxY)));
+    }
+
+    /**
+     * Returns every element that covers the specified point: lines and arcs
+     * whose stroke passes within half a unit of it, fills that contain it,
+     * and text whose bounds contain it.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     *
+     * @return The elements at the point, in the order in which they were
+     *         drawn; the topmost element is last.
+     */
+    public synchronized List<DrawnElement> query(double x, double y) {
+        double tolerance = 0.5;
+        List<DrawnElement> found = new ArrayList<>();
+        for(DrawnElement element : grid.query(x - tolerance, y - tolerance,
+                x + tolerance, y + tolerance)) {
+            if(element.covers(x, y, tolerance)) {
+                found.add(element);
+            }
+        }
+        return sorted(found);
+    }
+
+    @Override
+    public synchronized void moveTo(double x, double y) {
+        this.x = x;
+        this.y = y;
+        addVertex(x, y);
+    }
+
+    @Override
+    public synchronized void lineTo(double x, double y) {
+        double reach = penWidth / 2.0;
+        add(DrawnElement.LINE, new double[] {this.x, this.y, x, y},
+                Math.min(this.x, x) - reach, Math.min(this.y, y) - reach,
+                Math.max(this.x, x) + reach, Math.max(this.y, y) + reach,
+                penColor, penWidth, null);
+        this.x = x;
+        this.y = y;
+        addVertex(x, y);
+    }
+
+    @Override
+    public synchronized void arcTo(double x, double y, double centerX,
+                                   double centerY, double sweep) {
+        double radius = Math.hypot(this.x - centerX, this.y - centerY);
+        double start = Math.toDegrees(Math.atan2(this.y - centerY,
+                this.x - centerX));
+
+        // the bounds of the end points, grown to each extreme of the circle
+        // that the arc passes through
+        double minX = Math.min(this.x, x);
+        double minY = Math.min(this.y, y);
+        double maxX = Math.max(this.x, x);
+        double maxY = Math.max(this.y, y);
+        double low = Math.min(start, start + sweep);
+        double high = Math.max(start, start + sweep);
+        for(double extreme = Math.ceil(low / 90) * 90; extreme <= high;
+            extreme += 90) {
+            switch((((int)(extreme / 90)) % 4 + 4) % 4) {
+                case 0:
+                    maxX = centerX + radius;
+                    break;
+                case 1:
+                    maxY = centerY + radius;
+                    break;
+                case 2:
+                    minX = centerX - radius;
+                    break;
+                default:
+                    minY = centerY - radius;
+                    break;
+            }
+        }
+        double reach = penWidth / 2.0;
+        add(DrawnElement.ARC,
+                new double[] {this.x, this.y, centerX, centerY, sweep},
+                minX - reach, minY - reach, maxX + reach, maxY + reach,
+                penColor, penWidth, null);
+
+        if(outline != null) {
+            int pieces = (int)Math.ceil(Math.abs(sweep) / DEGREES_PER_VERTEX);
+            for(int i=1; i<pieces; i++) {
+                double radians = Math.toRadians(start + sweep * i / pieces);
+                addVertex(centerX + radius * Math.cos(radians),
+                        centerY + radius * Math.sin(radians));
+            }
+            addVertex(x, y);
+        }
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public void heading(double heading) {
+        // the Turtle's heading is not part of the drawing
+    }
+
+    @Override
+    public synchronized void penColor(Color color) {
+        penColor = color;
+    }
+
+    @Override
+    public synchronized void fillColor(Color color) {
+        fillColor = color;
+    }
+
+    @Override
+    public synchronized void penWidth(int width) {
+        penWidth = width;
+    }
+
+    @Override
+    public synchronized void beginFill() {
+        if(outline == null) {
+            outline = new double[16];
+            outlineSize = 0;
+            addVertex(x, y);
+        }
+    }
+
+    @Override
+    public synchronized void endFill() {
+        if(outline == null) {
+            return;
+        }
+        double[] vertices = Arrays.copyOf(outline, outlineSize);
+        outline = null;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for(int i=0; i<vertices.length; i+=2) {
+            minX = Math.min(minX, vertices[i]);
+            maxX = Math.max(maxX, vertices[i]);
+            minY = Math.min(minY, vertices[i + 1]);
+            maxY = Math.max(maxY, vertices[i + 1]);
+        }
+        add(DrawnElement.FILL, vertices, minX, minY, maxX, maxY, fillColor,
+                0, null);
+    }
+
+    @Override
+    public synchronized void text(String message) {
+        add(DrawnElement.TEXT, new double[] {x, y}, x, y - TEXT_DESCENT,
+                x + message.length() * CHARACTER_WIDTH, y + TEXT_ASCENT,
+                penColor, 0, message);
+    }
+
+    @Override
+    public void background(Color color) {
+        // the background covers everything and is not indexed
+    }
+
+    /**
+     * Adds an element to the index.
+     *
+     * @param kind The kind of element.
+     * @param geometry The element's geometry.
+     * @param minX The smallest x coordinate of the element's bounds.
+     * @param minY The smallest y coordinate of the element's bounds.
+     * @param maxX The largest x coordinate of the element's bounds.
+     * @param maxY The largest y coordinate of the element's bounds.
+     * @param color The element's color.
+     * @param width The width of the pen that drew the element.
+     * @param text The text of a text element, or null.
+     */
+    private void add(int kind, double[] geometry, double minX, double minY,
+                     double maxX, double maxY, Color color, int width,
+                     String text) {
+        DrawnElement element = new DrawnElement(kind, size++, geometry, minX,
+                minY, maxX, maxY, color, width, text);
+        grid.add(element, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Adds a vertex to the outline of the fill in progress, if there is
+     * one.
+     *
+     * @param x The x coordinate of the vertex.
+     * @param y The y coordinate of the vertex.
+     */
+    private void addVertex(double x, double y) {
+        if(outline != null) {
+            if(outlineSize + 2 > outline.length) {
+                outline = Arrays.copyOf(outline, outline.length * 2);
+            }
+            outline[outlineSize++] = x;
+            outline[outlineSize++] = y;
+        }
+    }
+
+    /**
+     * Sorts elements into the order in which they were drawn.
+     *
+     * @param elements The elements to sort.
+     *
+     * @return The sorted elements.
+     */
+    private static List<DrawnElement> sorted(List<DrawnElement> elements) {
+        elements.sort(Comparator.comparingLong(DrawnElement::order));
+        return elements;
+    }
+}
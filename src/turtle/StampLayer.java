@@ -0,0 +1,418 @@
+/*
+ * Draws the Turtles' stamps onto a canvas.
+ */
+package turtle;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Transform;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws the stamps that the Turtles have left behind (see
+ * {@link Turtle#stamp()}) onto a {@link Canvas} above the drawing and beneath
+ * the arrowheads. Every stamp is the one shared outline of the arrowhead,
+ * {@link Turtle#SHAPE}; a stamp is only a location, a rotation and two
+ * colors, kept in parallel arrays, and an entry in a map from its id, so a
+ * stamp costs about a hundred bytes and no node in the scene graph.
+ *
+ * Like the arrowheads the stamps are in the screen's coordinates, so they
+ * keep their size whatever the world coordinates are, but they are located
+ * in the drawing's coordinates and so move with the view. New stamps are
+ * drawn onto the canvas in a single pass once the changes that are being
+ * applied have been applied; removing a stamp, changing the view or
+ * resizing the screen, which the canvas always covers, redraws every stamp,
+ * also in a single pass. All methods must be called in the
+ * JavaFX application thread.
+ */
+class StampLayer {
+    /**
+     * The x coordinate of the point, in the shape's own coordinates, about
+     * which the shape is rotated; the center of its bounds, as for a node.
+     */
+    private static final double PIVOT_X;
+
+    /**
+     * The y coordinate of the point about which the shape is rotated.
+     */
+    private static final double PIVOT_Y;
+
+    /**
+     * The distance from the pivot to the farthest point of the shape,
+     * including half the width of its outline. Stamps whose pivot is
+     * farther than this outside the canvas are not drawn.
+     */
+    private static final double RADIUS;
+
+    /**
+     * The number of stamps for which room is made at first.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    static {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for(int i=0; i<Turtle.SHAPE.length; i+=2) {
+            minX = Math.min(minX, Turtle.SHAPE[i]);
+            maxX = Math.max(maxX, Turtle.SHAPE[i]);
+            minY = Math.min(minY, Turtle.SHAPE[i + 1]);
+            maxY = Math.max(maxY, Turtle.SHAPE[i + 1]);
+        }
+        PIVOT_X = (minX + maxX) / 2;
+        PIVOT_Y = (minY + maxY) / 2;
+        double radius = 0;
+        for(int i=0; i<Turtle.SHAPE.length; i+=2) {
+            radius = Math.max(radius, Math.hypot(Turtle.SHAPE[i] - PIVOT_X,
+                    Turtle.SHAPE[i + 1] - PIVOT_Y));
+        }
+        RADIUS = radius + 1;
+    }
+
+    /**
+     * The canvas onto which the stamps are drawn.
+     */
+    private final Canvas canvas;
+
+    /**
+     * The canvas's graphics context.
+     */
+    private final GraphicsContext graphics;
+
+    /**
+     * The x coordinates of the vertices of the stamp being drawn, on the
+     * screen.
+     */
+    private final double[] vertexX;
+
+    /**
+     * The y coordinates of the vertices of the stamp being drawn.
+     */
+    private final double[] vertexY;
+
+    /**
+     * The ids of the stamps, in the order in which they were stamped.
+     */
+    private int[] ids;
+
+    /**
+     * The Turtles that made the stamps; null for a stamp that has been
+     * removed.
+     */
+    private Turtle[] owners;
+
+    /**
+     * The x coordinates of the stamps in the drawing's coordinates.
+     */
+    private double[] xs;
+
+    /**
+     * The y coordinates of the stamps in the drawing's coordinates.
+     */
+    private double[] ys;
+
+    /**
+     * The cosines of the stamps' rotations.
+     */
+    private double[] cosines;
+
+    /**
+     * The sines of the stamps' rotations.
+     */
+    private double[] sines;
+
+    /**
+     * The colors of the stamps' outlines.
+     */
+    private Color[] strokes;
+
+    /**
+     * The colors with which the stamps are filled.
+     */
+    private Color[] fills;
+
+    /**
+     * The index of each stamp in the arrays above, by id, for the stamps
+     * that have not been removed. Ids are handed out to every Turtle in
+     * the world, headless or not, so they are not dense enough to index an
+     * array.
+     */
+    private final Map<Integer, Integer> indices;
+
+    /**
+     * The number of stamps in the arrays, including removed ones.
+     */
+    private int size;
+
+    /**
+     * The number of stamps in the arrays that have been removed.
+     */
+    private int removed;
+
+    /**
+     * The number of stamps that are already drawn on the canvas, unless
+     * everything must be redrawn.
+     */
+    private int drawn;
+
+    /**
+     * True if the canvas must be cleared and every stamp redrawn.
+     */
+    private boolean redraw;
+
+    /**
+     * True if drawing the stamps has already been scheduled.
+     */
+    private boolean scheduled;
+
+    /**
+     * The transform from the drawing's coordinates to the screen's.
+     */
+    private Transform view;
+
+    /**
+     * Creates an empty layer.
+     *
+     * @param width The width of the screen.
+     * @param height The height of the screen.
+     * @param view The transform from the drawing's coordinates to the
+     *             screen's.
+     */
+    StampLayer(double width, double height, Transform view) {
+        canvas = new Canvas(width, height);
+        // the arrowheads beneath the stamps must still be clickable
+        canvas.setMouseTransparent(true);
+        graphics = canvas.getGraphicsContext2D();
+        vertexX = new double[Turtle.SHAPE.length / 2];
+        vertexY = new double[Turtle.SHAPE.length / 2];
+        ids = new int[INITIAL_CAPACITY];
+        owners = new Turtle[INITIAL_CAPACITY];
+        xs = new double[INITIAL_CAPACITY];
+        ys = new double[INITIAL_CAPACITY];
+        cosines = new double[INITIAL_CAPACITY];
+        sines = new double[INITIAL_CAPACITY];
+        strokes = new Color[INITIAL_CAPACITY];
+        fills = new Color[INITIAL_CAPACITY];
+        indices = new HashMap<>();
+        this.view = view;
+    }
+
+    /**
+     * Returns the node into which the stamps are drawn.
+     *
+     * @return The layer.
+     */
+    Node getLayer() {
+        return canvas;
+    }
+
+    /**
+     * Adds a stamp.
+     *
+     * @param id The stamp's id, never used by another stamp.
+     * @param owner The Turtle that made the stamp.
+     * @param x The x coordinate of the stamp in the drawing's coordinates.
+     * @param y The y coordinate of the stamp in the drawing's coordinates.
+     * @param angle The rotation of the stamp on the screen, in degrees
+     *              clockwise, as for {@link Node#setRotate(double)}.
+     * @param stroke The color of the stamp's outline.
+     * @param fill The color with which the stamp is filled.
+     */
+    void add(int id, Turtle owner, double x, double y, double angle,
+             Color stroke, Color fill) {
+        if(size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            cosines = Arrays.copyOf(cosines, capacity);
+            sines = Arrays.copyOf(sines, capacity);
+            strokes = Arrays.copyOf(strokes, capacity);
+            fills = Arrays.copyOf(fills, capacity);
+        }
+        double radians = Math.toRadians(angle);
+        ids[size] = id;
+        owners[size] = owner;
+        xs[size] = x;
+        ys[size] = y;
+        cosines[size] = Math.cos(radians);
+        sines[size] = Math.sin(radians);
+        strokes[size] = stroke;
+        fills[size] = fill;
+        indices.put(id, size);
+        size++;
+        schedule();
+    }
+
+    /**
+     * Removes a stamp, if it exists and was made by the specified Turtle.
+     *
+     * @param id The stamp's id.
+     * @param owner The Turtle that made the stamp.
+     */
+    void remove(int id, Turtle owner) {
+        Integer index = indices.get(id);
+        if(index != null && owners[index] == owner) {
+            remove(index);
+            redraw = true;
+            schedule();
+        }
+    }
+
+    /**
+     * Removes every stamp made by the specified Turtle.
+     *
+     * @param owner The Turtle whose stamps are removed.
+     */
+    void removeAll(Turtle owner) {
+        int before = removed;
+        for(int i=0; i<size; i++) {
+            if(owners[i] == owner) {
+                remove(i);
+            }
+        }
+        if(removed != before) {
+            redraw = true;
+            schedule();
+        }
+    }
+
+    /**
+     * Sets the transform from the drawing's coordinates to the screen's and
+     * the size of the screen, to which the canvas is resized, and redraws
+     * every stamp if either has changed.
+     *
+     * @param toScreen The transform; a scale and a translation.
+     * @param width The width of the screen.
+     * @param height The height of the screen.
+     */
+    void view(Transform toScreen, double width, double height) {
+        if(toScreen == view && width == canvas.getWidth() &&
+                height == canvas.getHeight()) {
+            return;
+        }
+        view = toScreen;
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        redraw = true;
+        schedule();
+    }
+
+    /**
+     * Marks the stamp at the specified index as removed.
+     *
+     * @param index The index of the stamp in the arrays.
+     */
+    private void remove(int index) {
+        indices.remove(ids[index]);
+        owners[index] = null;
+        // let the colors be collected
+        strokes[index] = null;
+        fills[index] = null;
+        removed++;
+    }
+
+    /**
+     * Draws the stamps once the changes that are being applied have been
+     * applied, unless that has already been scheduled.
+     */
+    private void schedule() {
+        if(!scheduled) {
+            scheduled = true;
+            Platform.runLater(this::draw);
+        }
+    }
+
+    /**
+     * Draws the stamps that are not yet drawn or, if anything has been
+     * removed or the view has changed, clears the canvas and redraws them
+     * all.
+     */
+    private void draw() {
+        scheduled = false;
+        if(redraw) {
+            if(removed > size / 2) {
+                compact();
+            }
+            graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            drawn = 0;
+            redraw = false;
+        }
+
+        double scaleX = view.getMxx();
+        double scaleY = view.getMyy();
+        double translateX = view.getTx() + PIVOT_X;
+        double translateY = view.getTy() + PIVOT_Y;
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        int vertices = vertexX.length;
+        Color stroke = null;
+        Color fill = null;
+        for(int i=drawn; i<size; i++) {
+            if(owners[i] == null) {
+                continue;
+            }
+            // the pivot of the stamp on the screen
+            double centerX = scaleX * xs[i] + translateX;
+            double centerY = scaleY * ys[i] + translateY;
+            if(centerX < -RADIUS || centerX > width + RADIUS ||
+                    centerY < -RADIUS || centerY > height + RADIUS) {
+                continue;
+            }
+            double cos = cosines[i];
+            double sin = sines[i];
+            for(int v=0; v<vertices; v++) {
+                double dx = Turtle.SHAPE[2 * v] - PIVOT_X;
+                double dy = Turtle.SHAPE[2 * v + 1] - PIVOT_Y;
+                vertexX[v] = centerX + dx * cos - dy * sin;
+                vertexY[v] = centerY + dx * sin + dy * cos;
+            }
+            if(fills[i] != fill) {
+                fill = fills[i];
+                graphics.setFill(fill);
+            }
+            if(strokes[i] != stroke) {
+                stroke = strokes[i];
+                graphics.setStroke(stroke);
+            }
+            graphics.fillPolygon(vertexX, vertexY, vertices);
+            graphics.strokePolygon(vertexX, vertexY, vertices);
+        }
+        drawn = size;
+    }
+
+    /**
+     * Discards the removed stamps from the arrays, keeping the others in
+     * order.
+     */
+    private void compact() {
+        int count = 0;
+        for(int i=0; i<size; i++) {
+            if(owners[i] != null) {
+                ids[count] = ids[i];
+                owners[count] = owners[i];
+                xs[count] = xs[i];
+                ys[count] = ys[i];
+                cosines[count] = cosines[i];
+                sines[count] = sines[i];
+                strokes[count] = strokes[i];
+                fills[count] = fills[i];
+                indices.put(ids[count], count);
+                count++;
+            }
+        }
+        Arrays.fill(owners, count, size, null);
+        Arrays.fill(strokes, count, size, null);
+        Arrays.fill(fills, count, size, null);
+        size = count;
+        removed = 0;
+    }
+}
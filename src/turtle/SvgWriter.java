@@ -0,0 +1,512 @@
+/*
+ * Streams the commands issued to a Turtle to an SVG document.
+ */
+package turtle;
+
+import javafx.scene.paint.Color;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CommandVisitor} that writes a Turtle's drawing to an SVG document
+ * as the commands are received. The writer can be attached to a Turtle
+ * while it draws, using {@link Turtle#record(CommandVisitor)}, or a finished
+ * recording can be replayed into it using
+ * {@link CommandBuffer#replay(CommandVisitor)}. Either way the document is
+ * streamed, so it can be written in constant memory however large the
+ * drawing is. Contiguous lines and arcs of the same style are merged into a
+ * single {@code <path>}.
+ *
+ * The only exception is a fill: the fill must be beneath everything drawn
+ * while the Turtle was filling, but its outline is not known until the fill
+ * ends, so everything drawn during a fill is held in memory until then.
+ *
+ * The writer must be closed to finish the document.
+ */
+public class SvgWriter implements CommandVisitor, Closeable {
+    /**
+     * The size of the font used for text; the default JavaFX font size.
+     */
+    private static final int FONT_SIZE = 13;
+
+    /**
+     * The writer to which the document is written.
+     */
+    private final Writer writer;
+
+    /**
+     * The width of the document.
+     */
+    private final double width;
+
+    /**
+     * The height of the document.
+     */
+    private final double height;
+
+    /**
+     * Where the document is currently being written; either the writer or,
+     * during a fill, the buffer that holds what is drawn during the fill.
+     */
+    private Appendable out;
+
+    /**
+     * Holds everything drawn since the current fill began.
+     */
+    private StringBuilder deferred;
+
+    /**
+     * The outline of the current fill as SVG path data, or null if there is
+     * no fill in progress.
+     */
+    private StringBuilder fillOutline;
+
+    /**
+     * The Turtle's current x coordinate.
+     */
+    private double x;
+
+    /**
+     * The Turtle's current y coordinate.
+     */
+    private double y;
+
+    /**
+     * The current pen color.
+     */
+    private Color penColor;
+
+    /**
+     * The current fill color.
+     */
+    private Color fillColor;
+
+    /**
+     * The current pen width.
+     */
+    private int penWidth;
+
+    /**
+     * The background color.
+     */
+    private Color background;
+
+    /**
+     * Indicates whether or not the background has been written yet.
+     */
+    private boolean backgroundWritten;
+
+    /**
+     * Indicates whether or not a {@code <path>} element is currently open.
+     */
+    private boolean pathOpen;
+
+    /**
+     * Indicates whether or not the Turtle has moved with its pen up since
+     * the last segment written to the open path.
+     */
+    private boolean moved;
+
+    /**
+     * The last path command written to the open path; repeated commands are
+     * omitted.
+     */
+    private char lastCommand;
+
+    /**
+     * Creates a new SVG writer that writes a document the size of the
+     * Turtle's world to the specified stream in UTF-8.
+     *
+     * @param stream The stream to which the document should be written.
+     */
+    public SvgWriter(OutputStream stream) {
+        this(new BufferedWriter(new OutputStreamWriter(stream,
+                StandardCharsets.UTF_8)), Turtle.getWidth(),
+                Turtle.getHeight());
+    }
+
+    /**
+     * Creates a new SVG writer that writes a document of the specified size
+     * to the specified writer.
+     *
+     * @param writer The writer to which the document should be written.
+     * @param width The width of the document in pixels.
+     * @param height The height of the document in pixels.
+     */
+    public SvgWriter(Writer writer, double width, double height) {
+        this.writer = writer;
+        this.width = width;
+        this.height = height;
+        out = writer;
+        penColor = Color.BLACK;
+        fillColor = Color.BLACK;
+        penWidth = 1;
+        background = Color.WHITE;
+
+        write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        write("<svg xmlns=\"http://www.w3.org/2000/svg\" ");
+        write("xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"");
+        write(width);
+        write("\" height=\"");
+        write(height);
+        write("\" viewBox=\"0 0 ");
+        write(width);
+        write(" ");
+        write(height);
+        write("\">\n");
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        this.x = x;
+        this.y = y;
+        moved = true;
+        if(fillOutline != null) {
+            appendPoint(fillOutline, 'L', x, y);
+        }
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+        startSegment();
+        if(lastCommand != 'L') {
+            write(" L");
+            lastCommand = 'L';
+        }
+        writePoint(x, y);
+        this.x = x;
+        this.y = y;
+        if(fillOutline != null) {
+            appendPoint(fillOutline, 'L', x, y);
+        }
+    }
+
+    @Override
+    public void arcTo(double x, double y, double centerX, double centerY,
+                      double sweep) {
+        startSegment();
+        StringBuilder arc = new StringBuilder();
+        appendArc(arc, centerX, centerY, sweep);
+        write(arc);
+        lastCommand = 'A';
+        if(fillOutline != null) {
+            fillOutline.append(arc);
+        }
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public void heading(double heading) {
+        // the Turtle's heading is not part of the drawing
+    }
+
+    @Override
+    public void penColor(Color color) {
+        if(!color.equals(penColor)) {
+            closePath();
+            penColor = color;
+        }
+    }
+
+    @Override
+    public void fillColor(Color color) {
+        fillColor = color;
+    }
+
+    @Override
+    public void penWidth(int width) {
+        if(width != penWidth) {
+            closePath();
+            penWidth = width;
+        }
+    }
+
+    @Override
+    public void beginFill() {
+        if(fillOutline == null) {
+            writeBackground();
+            closePath();
+            fillOutline = new StringBuilder();
+            appendPoint(fillOutline, 'M', x, y);
+            deferred = new StringBuilder();
+            out = deferred;
+        }
+    }
+
+    @Override
+    public void endFill() {
+        if(fillOutline != null) {
+            closePath();
+            out = writer;
+            write("<path d=\"");
+            write(fillOutline);
+            write("\"");
+            writePaint("fill", fillColor);
+            write(" fill-rule=\"evenodd\" stroke=\"none\"/>\n");
+            write(deferred);
+            fillOutline = null;
+            deferred = null;
+        }
+    }
+
+    @Override
+    public void text(String message) {
+        writeBackground();
+        closePath();
+        write("<text x=\"");
+        write(x + width / 2);
+        write("\" y=\"");
+        write(height / 2 - y);
+        write("\" font-family=\"sans-serif\" font-size=\"" + FONT_SIZE +
+                "\"");
+        writePaint("fill", penColor);
+        write(">");
+        write(message.replace("&", "&amp;").replace("<", "&lt;")
+                .replace(">", "&gt;"));
+        write("</text>\n");
+    }
+
+    /**
+     * Sets the background color. The background is written before anything
+     * else in the document; if it changes later, an SVG {@code <set>}
+     * element changes the color of the background that was already written.
+     *
+     * @param color The new background color.
+     */
+    @Override
+    public void background(Color color) {
+        background = color;
+        if(backgroundWritten) {
+            closePath();
+            writeTo(writer, "<set xlink:href=\"#background\" " +
+                    "attributeName=\"fill\" to=\"" + toHex(color) + "\"/>\n");
+        }
+    }
+
+    /**
+     * Finishes the document and closes the underlying writer. A fill that
+     * has not ended is discarded, but everything drawn during it is kept.
+     */
+    @Override
+    public void close() {
+        writeBackground();
+        closePath();
+        if(fillOutline != null) {
+            out = writer;
+            write(deferred);
+            fillOutline = null;
+            deferred = null;
+        }
+        write("</svg>\n");
+        try {
+            writer.close();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes sure that a {@code <path>} element is open for the next line or
+     * arc, starting at the Turtle's current location.
+     */
+    private void startSegment() {
+        writeBackground();
+        if(!pathOpen) {
+            write("<path fill=\"none\"");
+            writePaint("stroke", penColor);
+            write(" stroke-width=\"");
+            write(penWidth);
+            write("\" d=\"M");
+            writePoint(x, y);
+            pathOpen = true;
+            lastCommand = 'M';
+        }
+        else if(moved) {
+            write(" M");
+            writePoint(x, y);
+            lastCommand = 'M';
+        }
+        moved = false;
+    }
+
+    /**
+     * Closes the open {@code <path>} element, if there is one.
+     */
+    private void closePath() {
+        if(pathOpen) {
+            write("\"/>\n");
+            pathOpen = false;
+        }
+    }
+
+    /**
+     * Writes the background, if it has not been written yet. It is written
+     * directly to the document, ahead of anything deferred by a fill.
+     */
+    private void writeBackground() {
+        if(!backgroundWritten) {
+            backgroundWritten = true;
+            writeTo(writer, "<rect id=\"background\" width=\"100%\" " +
+                    "height=\"100%\" fill=\"" + toHex(background) + "\"/>\n");
+        }
+    }
+
+    /**
+     * Appends SVG arc commands that sweep from the current location about the
+     * specified center. The arc is split into pieces of no more than 180
+     * degrees each, since a single SVG arc cannot describe a complete circle.
+     *
+     * @param data The path data to which the arc should be appended.
+     * @param centerX The x coordinate of the center of the arc.
+     * @param centerY The y coordinate of the center of the arc.
+     * @param sweep The number of degrees that the arc sweeps
+     *              counterclockwise.
+     */
+    private void appendArc(StringBuilder data, double centerX,
+                           double centerY, double sweep) {
+        double fromX = x - centerX;
+        double fromY = y - centerY;
+        double radius = Math.sqrt(fromX * fromX + fromY * fromY);
+        int pieces = (int)Math.ceil(Math.abs(sweep) / 180);
+        for(int i=1; i<=pieces; i++) {
+            double radians = Math.toRadians(sweep * i / pieces);
+            double cosine = Math.cos(radians);
+            double sine = Math.sin(radians);
+
+            // in SVG coordinates a counterclockwise arc has a sweep flag of 0
+            data.append(" A").append(format(radius)).append(' ')
+                    .append(format(radius)).append(" 0 0 ")
+                    .append(sweep < 0 ? '1' : '0');
+            appendPoint(data, ' ', centerX + fromX * cosine - fromY * sine,
+                    centerY + fromX * sine + fromY * cosine);
+        }
+    }
+
+    /**
+     * Appends a path command and a point, translated from the Turtle's world
+     * into SVG coordinates.
+     *
+     * @param data The path data to which the point should be appended.
+     * @param command The path command, or a space for none.
+     * @param x The x coordinate in the Turtle's world.
+     * @param y The y coordinate in the Turtle's world.
+     */
+    private void appendPoint(StringBuilder data, char command, double x,
+                             double y) {
+        data.append(' ');
+        if(command != ' ') {
+            data.append(command);
+        }
+        data.append(format(x + width / 2)).append(',')
+                .append(format(height / 2 - y));
+    }
+
+    /**
+     * Writes a point, translated from the Turtle's world into SVG
+     * coordinates.
+     *
+     * @param x The x coordinate in the Turtle's world.
+     * @param y The y coordinate in the Turtle's world.
+     */
+    private void writePoint(double x, double y) {
+        write(" ");
+        write(x + width / 2);
+        write(",");
+        write(height / 2 - y);
+    }
+
+    /**
+     * Writes a paint attribute (and its opacity, if the color is not
+     * opaque).
+     *
+     * @param attribute The name of the attribute; "fill" or "stroke".
+     * @param color The color.
+     */
+    private void writePaint(String attribute, Color color) {
+        write(" " + attribute + "=\"" + toHex(color) + "\"");
+        if(color.getOpacity() < 1) {
+            write(" " + attribute + "-opacity=\"");
+            write(color.getOpacity());
+            write("\"");
+        }
+    }
+
+    /**
+     * Writes a number.
+     *
+     * @param value The number to write.
+     */
+    private void write(double value) {
+        write(format(value));
+    }
+
+    /**
+     * Writes text to wherever the document is currently being written.
+     *
+     * @param text The text to write.
+     */
+    private void write(CharSequence text) {
+        writeTo(out, text);
+    }
+
+    /**
+     * Writes text to the specified destination.
+     *
+     * @param destination Where the text should be written.
+     * @param text The text to write.
+     */
+    private static void writeTo(Appendable destination, CharSequence text) {
+        try {
+            destination.append(text);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Formats a number compactly, rounded to two decimal places and without
+     * a trailing ".0" or an exponent.
+     *
+     * @param value The number to format.
+     *
+     * @return The formatted number.
+     */
+    static String format(double value) {
+        long hundredths = Math.round(value * 100);
+        StringBuilder number = new StringBuilder();
+        if(hundredths < 0) {
+            number.append('-');
+            hundredths = -hundredths;
+        }
+        number.append(hundredths / 100);
+        long fraction = hundredths % 100;
+        if(fraction != 0) {
+            number.append('.').append(fraction / 10);
+            if(fraction % 10 != 0) {
+                number.append(fraction % 10);
+            }
+        }
+        return number.toString();
+    }
+
+    /**
+     * Converts a color to its hexadecimal notation, ignoring its opacity.
+     *
+     * @param color The color.
+     *
+     * @return The color as "#rrggbb".
+     */
+    static String toHex(Color color) {
+        return String.format("#%06x", Palette.toArgb(color) & 0xffffff);
+    }
+}
@@ -7,25 +7,28 @@
  */
 package turtle;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
-import javafx.application.Application;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.geometry.Point2D;
 import javafx.scene.Group;
-import javafx.scene.Scene;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
-import javafx.scene.text.Text;
-import javafx.stage.Stage;
-import javafx.util.Duration;
-
-import java.lang.reflect.Field;
+import javafx.scene.text.Font;
+import javafx.scene.transform.Transform;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.DoubleStream;
 
 /**
- * A JavaFX implementation of Turtle Graphics.
+ * A JavaFX implementation of Turtle Graphics. Most programs use the static
+ * {@link #Turtle} but any number of Turtles may be created; they all draw
+ * into the same world.
  */
 public class Turtle {
     /**
@@ -60,6 +63,20 @@ public class Turtle {
      */
     public static final int SPEED_FASTEST = 0;
 
+    /**
+     * The render mode in which every line, fill and text in the drawing is
+     * added to the scene as a separate JavaFX node. This is the default
+     * render mode.
+     */
+    public static final int RENDER_NODES = 0;
+
+    /**
+     * The render mode in which lines, fills and text are rasterized onto a
+     * canvas once they are finished, so that memory use does not grow with
+     * the size of the drawing.
+     */
+    public static final int RENDER_CANVAS = 1;
+
     /**
      * The default width of the Turtle's world in pixels.
      */
@@ -81,7 +98,38 @@ public class Turtle {
     private static final double DEGREES_PER_UNIT_0F_SPEED = 90;
 
     /**
-     * The static (singleton) Turtle.
+     * The duration of a single frame (pulse) of the JavaFX application in
+     * milliseconds. The Turtle's thread waits only for motions at least
+     * this long; shorter ones are played without waiting for them.
+     */
+    private static final double FRAME = 1000.0 / 60;
+
+    /**
+     * The maximum number of changes to the scene graph that may be waiting
+     * to be applied. Once the queue is full, the Turtle blocks until the
+     * JavaFX application thread catches up.
+     */
+    private static final int QUEUE_CAPACITY = 10000;
+
+    static {
+        // start the JavaFX toolkit in the background while the program sets
+        // up, if requested on the command line (-Dturtle.prewarm=true);
+        // never for a program that is headless from the start
+        if(Boolean.getBoolean("turtle.prewarm") &&
+                !Boolean.getBoolean("turtle.headless")) {
+            World.getWorld().prewarm();
+        }
+    }
+
+    /**
+     * The outline of the arrowhead, shared by every Turtle and every stamp:
+     * the x and y coordinates of its vertices, alternately, in the screen's
+     * coordinates with the Turtle at the origin facing east.
+     */
+    static final double[] SHAPE = {0, 0, -3.75, -5, 10, 0, -3.75, 5};
+
+    /**
+     * The static (default) Turtle.
      */
     public static final Turtle Turtle = new Turtle();
 
@@ -96,16 +144,63 @@ public class Turtle {
     private double angle;
 
     /**
-     * The current location of the Turtle as a {@link Point2D}. This is the
-     * location of the Turtle in the Turtle's world (with the origin (0,0)) in
-     * the center of the canvas.
+     * The x component of the unit vector in the direction that the Turtle
+     * is facing, in the Turtle's world. Recomputed only when the Turtle
+     * turns.
+     */
+    private double headingX;
+
+    /**
+     * The y component of the unit vector in the direction that the Turtle
+     * is facing, in the Turtle's world.
+     */
+    private double headingY;
+
+    /**
+     * The current x coordinate of the Turtle. This is the location of the
+     * Turtle in the Turtle's world (with the origin (0,0)) in the center of
+     * the canvas.
+     */
+    private double locationX;
+
+    /**
+     * The current y coordinate of the Turtle in the Turtle's world.
+     */
+    private double locationY;
+
+    /**
+     * The world into which the Turtle draws.
+     */
+    private final World world;
+
+    /**
+     * Indicates whether or not the Turtle's arrowhead is currently shown.
+     */
+    private boolean visible;
+
+    /**
+     * Changes to the scene graph (including animations) that have not yet
+     * been applied in the JavaFX application thread, in order.
+     */
+    private final BlockingQueue<Runnable> pendingCommits;
+
+    /**
+     * Indicates whether or not the Turtle's animator is already running, or
+     * scheduled to start, to apply the pending commits.
      */
-    private Point2D location;
+    private final AtomicBoolean commitScheduled;
 
     /**
-     * The JavaFX group to which all shapes are added to be rendered.
+     * Plays the pending commits in the JavaFX application thread, frame by
+     * frame. Made when the Turtle is first displayed.
      */
-    private Group root;
+    private Animator animator;
+
+    /**
+     * Indicates whether or not the Turtle is asynchronous; if true, the
+     * Turtle does not wait for its animations to finish before returning.
+     */
+    private boolean async;
 
     /**
      * The current state of the pen; true if the pen is down.
@@ -146,42 +241,71 @@ public class Turtle {
     private boolean tracer;
 
     /**
-     * The current visibility of the Turtle's world; false if the Turtle's
-     * world is not currently being displayed.
+     * Indicates whether or not the turtle is currently filling with color.
      */
-    private boolean notDisplayed;
+    private boolean filling;
 
     /**
-     * The JavaFX application in which the Turtle runs.
+     * Keeps track of points along the path that the turtle moves while it is
+     * filling.
      */
-    private TurtleApp application;
+    private FillOutline fillOutline;
 
     /**
-     * Indicates whether or not the turtle is currently filling with color.
+     * Marks the place in the drawing of the fill that the Turtle is
+     * currently drawing.
      */
-    private boolean filling;
+    private Group fillPlaceholder;
 
     /**
-     * Keeps track of points along the path that the turtle moves while it is
-     * filling.
+     * Indicates whether or not the Turtle is headless; if true, the Turtle
+     * records its commands into its {@link CommandBuffer} rather than
+     * drawing them, and never starts the JavaFX toolkit.
+     */
+    private boolean headless;
+
+    /**
+     * The buffer into which the Turtle records its commands while it is
+     * headless.
+     */
+    private CommandBuffer commands;
+
+    /**
+     * The visitors that have been attached to the Turtle with
+     * {@link #record(CommandVisitor)}.
+     */
+    private final List<CommandVisitor> recorders;
+
+    /**
+     * Receives every command issued to the Turtle: the command buffer while
+     * the Turtle is headless, plus any attached visitors. Null if there is
+     * nothing to receive them.
      */
-    private Path fillPath;
+    private CommandVisitor recorder;
 
     /**
-     * Initializes the Turtle with its default settings.
+     * Measures the Turtle's commands.
      */
-    private Turtle() {
+    private final Instrumentation instrumentation;
+
+    /**
+     * Initializes a new Turtle with its default settings. Every Turtle draws
+     * into the same world, but has its own location, heading, pen and fill,
+     * and may be controlled from its own thread.
+     */
+    public Turtle() {
+        world = World.getWorld();
+
         // facing east
         angle = 0;
+        updateHeading();
 
         // default pen width
         width = 1;
 
         //in the center of the canvas
-        location = new Point2D(0, 0);
-
-        // the group used to draw all of the various lines and shapes
-        root = new Group();
+        locationX = 0;
+        locationY = 0;
 
         // sets the default color mode to 1.0
         colorMode = COLOR_MODE_1;
@@ -192,15 +316,12 @@ public class Turtle {
 
         speed = SPEED_DEFAULT;
 
-        // initialize the Turtle to be an arrow head.
-        turtleShape = new Polygon(0, 0, -3.75, -5, 10, 0, -3.75, 5);
-        turtleShape.setStroke(penColor);
-        turtleShape.setFill(fillColor);
-        turtleShape.setTranslateX(WIDTH / 2);
-        turtleShape.setTranslateY(HEIGHT / 2);
+        // the turtle is visible by default
+        visible = true;
 
-        // add the Turtle to the root node...
-        root.getChildren().add(turtleShape);
+        // changes to the scene graph are batched
+        pendingCommits = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        commitScheduled = new AtomicBoolean(false);
 
         // the pen starts in the down state by default
         penDown = true;
@@ -208,11 +329,11 @@ public class Turtle {
         // the tracer is enabled by default
         tracer = true;
 
-        // by default the Turtle;s world is not displayed.
-        notDisplayed = true;
-
-        // init the application
-        application = new TurtleApp();
+        // headless if requested on the command line (-Dturtle.headless=true)
+        instrumentation = new Instrumentation();
+        commands = new CommandBuffer();
+        recorders = new ArrayList<>();
+        headless(Boolean.getBoolean("turtle.headless"));
     }
 
     /**
@@ -225,7 +346,9 @@ public class Turtle {
     public static void setup( double width, double height ) {
         Turtle.WIDTH = (width > 0) ? width : 800;
         Turtle.HEIGHT = (height > 0) ? height : 800;
-        Turtle.location = new Point2D(0, 0); // bks: location depends on wxh
+        // bks: location depends on wxh
+        Turtle.locationX = 0;
+        Turtle.locationY = 0;
     }
 
     /**
@@ -284,6 +407,310 @@ public class Turtle {
         return tracer;
     }
 
+    /**
+     * Sets the render mode to either {@link #RENDER_NODES} (every line, fill
+     * and text is a separate node in the scene) or {@link #RENDER_CANVAS}
+     * (finished lines, fills and text are rasterized onto a canvas). All
+     * other values are ignored. The render mode is shared by every Turtle.
+     * Changing the render mode after the Turtles have started drawing does
+     * not affect what has already been drawn, and a fill that is in
+     * progress is still filled by the renderer in which it began.
+     *
+     * @param renderMode Either {@link #RENDER_NODES} or
+     *                   {@link #RENDER_CANVAS}.
+     */
+    public void renderMode(int renderMode) {
+        if(renderMode == RENDER_NODES || renderMode == RENDER_CANVAS) {
+            world.renderMode(renderMode);
+        }
+    }
+
+    /**
+     * Returns the current render mode; either {@link #RENDER_NODES} or
+     * {@link #RENDER_CANVAS}.
+     *
+     * @return The current render mode.
+     */
+    public int renderMode() {
+        return world.renderMode();
+    }
+
+    /**
+     * Enables or disables asynchronous mode. While the Turtle is
+     * asynchronous, its commands return as soon as they have been queued
+     * rather than waiting for their animations to finish, and the queued
+     * commands are played in order in the JavaFX application thread. If too
+     * many commands are waiting, the Turtle blocks until some of them have
+     * been played. Use {@link #flush()} to wait for all of them.
+     *
+     * @param async True if the Turtle should be asynchronous, false
+     *              otherwise.
+     */
+    public void async(boolean async) {
+        if(this.async && !async) {
+            flush();
+        }
+        this.async = async;
+    }
+
+    /**
+     * Returns whether or not the Turtle is asynchronous.
+     *
+     * @return True if the Turtle is asynchronous, false otherwise.
+     */
+    public boolean async() {
+        return async;
+    }
+
+    /**
+     * Blocks until every command issued to the Turtle so far has been
+     * drawn, including any animations.
+     */
+    public void flush() {
+        if(headless || turtleShape == null) {
+            return;
+        }
+        instrumentation.begin();
+        Barrier barrier = new Barrier();
+        commit(barrier);
+        long start = System.nanoTime();
+        barrier.await();
+        instrumentation.blocked(System.nanoTime() - start);
+        end("flush");
+    }
+
+    /**
+     * Enables or disables headless mode. While the Turtle is headless it
+     * does not display its world or animate; each command is recorded into
+     * the Turtle's {@link CommandBuffer} instead. This allows drawings to be
+     * generated on machines without a display. The outline of a fill is
+     * still built, though never drawn, so the fill size in the Turtle's
+     * {@link #metrics() metrics} is the same either way. The mode cannot be
+     * changed while the Turtle is filling, since the fill would be begun in
+     * one mode and ended in the other.
+     *
+     * @param headless True if the Turtle should be headless, false
+     *                 otherwise.
+     */
+    public void headless(boolean headless) {
+        if(filling && headless != this.headless) {
+            throw new IllegalStateException(
+                    "cannot change the headless mode while filling");
+        }
+        if(headless && !this.headless) {
+            // the recording starts from the Turtle's current state
+            replayState(commands);
+        }
+        this.headless = headless;
+        instrumentation.headless(headless);
+        updateRecorder();
+    }
+
+    /**
+     * Returns whether or not the Turtle is headless.
+     *
+     * @return True if the Turtle is headless, false otherwise.
+     */
+    public boolean headless() {
+        return headless;
+    }
+
+    /**
+     * Returns the buffer into which the Turtle records its commands while it
+     * is headless.
+     *
+     * @return The Turtle's {@link CommandBuffer}.
+     */
+    public CommandBuffer getCommandBuffer() {
+        return commands;
+    }
+
+    /**
+     * Returns a snapshot of the Turtle's metrics: the number of commands
+     * that it has executed and segments that it has drawn, the number of
+     * nodes in the scene, the size of the fill in progress, and the round
+     * trip latency of its commands (the time from a command being issued
+     * until its changes have been applied to the scene). The same
+     * measurements are recorded per command by JDK Flight Recorder as
+     * {@code turtle.Command} events.
+     *
+     * @return The Turtle's current metrics.
+     */
+    public TurtleMetrics metrics() {
+        return instrumentation.snapshot(world.nodeCount());
+    }
+
+    /**
+     * Attaches a {@link CommandVisitor} that receives every command issued
+     * to the Turtle from now on, as it is issued, whether or not the Turtle
+     * is headless. The visitor first receives the Turtle's current state.
+     * For example, attaching an {@link SvgWriter} streams the drawing to an
+     * SVG document as it is drawn.
+     *
+     * @param visitor The visitor that should receive the commands.
+     */
+    public void record(CommandVisitor visitor) {
+        replayState(visitor);
+        recorders.add(visitor);
+        updateRecorder();
+    }
+
+    /**
+     * Detaches a {@link CommandVisitor} that was attached with
+     * {@link #record(CommandVisitor)}.
+     *
+     * @param visitor The visitor that should no longer receive commands.
+     */
+    public void stopRecording(CommandVisitor visitor) {
+        recorders.remove(visitor);
+        updateRecorder();
+    }
+
+    /**
+     * Draws a drawing that was saved by a {@link DrawingWriter}, continuing
+     * from the Turtle's current state. Nothing is animated: the drawing is
+     * rebuilt as quickly as the file can be read, as though the tracer were
+     * disabled, and the Turtle ends up where the drawing ended. Anything
+     * attached with {@link #record(CommandVisitor)} receives the drawing
+     * too. The pen is left up or down as it was.
+     *
+     * @param path The file in which the drawing was saved.
+     *
+     * @throws IOException If the file cannot be read or is not a drawing
+     *                     file.
+     */
+    public void load(Path path) throws IOException {
+        boolean tracing = tracer;
+        boolean down = penDown;
+        tracer = false;
+        try {
+            DrawingReader.replay(path, new Player());
+        }
+        finally {
+            tracer = tracing;
+            penDown = down;
+        }
+    }
+
+    /**
+     * Records a drawing as a {@link Figure} that can be placed any number
+     * of times with {@link #place(Figure, double)}, relative to the
+     * Turtle's current location and heading. The drawing is not shown or
+     * sent to anything attached with {@link #record(CommandVisitor)}, and
+     * afterwards the Turtle is exactly as it was before: its location,
+     * heading, pen and colors are restored. The drawing may itself place
+     * other figures, but must not change the headless mode or the attached
+     * visitors.
+     *
+     * @param drawing Draws the figure with this Turtle.
+     *
+     * @return The recorded figure.
+     */
+    public Figure figure(Runnable drawing) {
+        if(filling) {
+            throw new IllegalStateException(
+                    "cannot record a figure while filling");
+        }
+        Figure.Recorder figure = new Figure.Recorder(locationX, locationY,
+                getHeading());
+        replayState(figure);
+
+        double x = locationX;
+        double y = locationY;
+        double heading = angle;
+        boolean down = penDown;
+        Color pen = penColor;
+        Color fill = fillColor;
+        int lineWidth = width;
+        boolean wasHeadless = headless;
+        CommandVisitor attached = recorder;
+        headless = true;
+        recorder = figure;
+        try {
+            drawing.run();
+            return figure.finish(locationX, locationY, getHeading());
+        }
+        finally {
+            recorder = attached;
+            headless = wasHeadless;
+            filling = false;
+            locationX = x;
+            locationY = y;
+            angle = heading;
+            updateHeading();
+            penDown = down;
+            penColor = pen;
+            fillColor = fill;
+            width = lineWidth;
+        }
+    }
+
+    /**
+     * Places a figure at the Turtle's location and heading, at the size at
+     * which it was recorded; see {@link #place(Figure, double)}.
+     *
+     * @param figure The figure to place.
+     */
+    public void place(Figure figure) {
+        place(figure, 1);
+    }
+
+    /**
+     * Places a figure at the Turtle's location and heading, scaled by the
+     * specified amount, and moves the Turtle to where the figure's drawing
+     * left it, without drawing anything else. The figure is drawn at once,
+     * as a single image, and its lines keep the widths that they were
+     * drawn with. Anything attached with {@link #record(CommandVisitor)}
+     * receives the figure's commands, after which the Turtle's own pen and
+     * colors are restored.
+     *
+     * @param figure The figure to place.
+     * @param scale The scale of the figure; negative to turn it around.
+     */
+    public void place(Figure figure, double scale) {
+        if(scale == 0 || Double.isNaN(scale) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("bad scale: " + scale);
+        }
+        if(filling) {
+            throw new IllegalStateException(
+                    "cannot place a figure while filling");
+        }
+        instrumentation.begin();
+        Figure.Placement placement = new Figure.Placement(recorder,
+                locationX, locationY, getHeading(), scale);
+        if(recorder != null) {
+            placement.replay(figure, penColor, fillColor, width,
+                    getHeading());
+        }
+        double endX = figure.getEndX();
+        double endY = figure.getEndY();
+        locationX = placement.worldX(endX, endY);
+        locationY = placement.worldY(endX, endY);
+        angle = -placement.worldHeading(figure.getEndHeading());
+        updateHeading();
+
+        if(!headless) {
+            display();
+
+            // the figure is rasterized here rather than in the JavaFX
+            // application thread, once for each resolution
+            Transform view = world.getView();
+            Figure.Raster raster = figure.raster(scale(view) *
+                    Math.abs(scale));
+            Transform transform = placement.toDrawing(raster);
+            Point2D screenEnd = view.transform(translateX(locationX),
+                    translateY(locationY));
+            double to = angle;
+            commit(() -> {
+                world.getRenderer().image(raster.getImage(), transform);
+                turtleShape.setTranslateX(screenEnd.getX());
+                turtleShape.setTranslateY(screenEnd.getY());
+                turtleShape.setRotate(to);
+            });
+        }
+        end("place");
+    }
+
     /**
      * Sets the color mode to either 1.0 (all RGB values are specified as
      * floating point values between 0.0 and 1.0) or 255 (all RGB values are
@@ -390,17 +817,30 @@ public class Turtle {
      */
     public void beginFill() {
         if(!filling) {
-            // make sure that the toolkit is set up
-            display();
+            instrumentation.begin();
+            if(recorder != null) {
+                recorder.beginFill();
+            }
+            // the outline is built off the scene graph, even while
+            // headless, and handed to the renderer only when the fill ends
+            fillOutline = new FillOutline(translateX(locationX),
+                    translateY(locationY));
+            instrumentation.fillChanged(fillOutline.size());
+            if(!headless) {
+                // make sure that the toolkit is set up
+                display();
+                fillPlaceholder = new Group();
+                Group placeholder = fillPlaceholder;
+                commit(() -> {
+                    // the fill ends in the renderer in which it began, even
+                    // if the render mode changes in between
+                    Renderer renderer = world.getRenderer();
+                    placeholder.setUserData(renderer);
+                    renderer.beginFill(placeholder);
+                });
+            }
             filling = true;
-            // create a new path with a transparent stroke and the even/odd
-            // fill rule
-            fillPath = new Path();
-            fillPath.setStroke(Color.TRANSPARENT);
-            fillPath.setFillRule(FillRule.EVEN_ODD);
-            Point2D begin = translateToCoordinates(location);
-            fillPath.getElements().add(new MoveTo(begin.getX(), begin.getY()));
-            runInApplicationThread(() -> root.getChildren().add(fillPath));
+            end("beginFill");
         }
     }
 
@@ -410,11 +850,22 @@ public class Turtle {
      */
     public void endFill() {
         if(filling) {
-            Timeline animation = new Timeline(new KeyFrame(Duration.ONE,
-                    new KeyValue(fillPath.fillProperty(), fillColor)));
-            animate(animation);
+            instrumentation.begin();
+            if(recorder != null) {
+                recorder.endFill();
+            }
+            if(!headless) {
+                FillOutline outline = fillOutline;
+                Color color = fillColor;
+                Group placeholder = fillPlaceholder;
+                commit(() -> ((Renderer)placeholder.getUserData()).fill(
+                        placeholder, outline, color));
+                fillPlaceholder = null;
+            }
+            fillOutline = null;
+            instrumentation.fillChanged(0);
             filling = false;
-            fillPath = null;
+            end("endFill");
         }
     }
 
@@ -422,8 +873,15 @@ public class Turtle {
      * Shows the turtle if it is hidden.
      */
     public void showTurtle() {
-        if(turtleShape.getParent() == null) {
-            runInApplicationThread(() -> root.getChildren().add(turtleShape));
+        if(headless) {
+            return;
+        }
+        display();
+        if(!visible) {
+            instrumentation.begin();
+            visible = true;
+            commit(() -> world.addTurtle(turtleShape));
+            end("showTurtle");
         }
     }
 
@@ -438,9 +896,15 @@ public class Turtle {
      * Hides the turtle if it is visible.
      */
     public void hideTurtle() {
-        if(turtleShape.getParent() != null) {
-            runInApplicationThread(
-                    () -> root.getChildren().removeAll(turtleShape));
+        if(headless) {
+            return;
+        }
+        display();
+        if(visible) {
+            instrumentation.begin();
+            visible = false;
+            commit(() -> world.removeTurtle(turtleShape));
+            end("hideTurtle");
         }
     }
 
@@ -451,6 +915,63 @@ public class Turtle {
         hideTurtle();
     }
 
+    /**
+     * Leaves a copy of the Turtle's arrowhead, in its current pen and fill
+     * colors, where the Turtle is now. Stamps are shown above the drawing,
+     * whether or not the Turtle is visible, until they are cleared. They
+     * are part of the display, like the arrowhead, and are not recorded.
+     * Every stamp shares the arrowhead's outline and all of them are drawn
+     * onto one canvas, so there may be a great many of them.
+     *
+     * @return The stamp's id, for {@link #clearStamp(int)}.
+     */
+    public int stamp() {
+        int id = world.nextStamp();
+        if(headless) {
+            return id;
+        }
+        display();
+        instrumentation.begin();
+        double x = translateX(locationX);
+        double y = translateY(locationY);
+        double rotation = angle;
+        Color stroke = penColor;
+        Color fill = fillColor;
+        commit(() -> world.getStamps().add(id, this, x, y, rotation, stroke,
+                fill));
+        end("stamp");
+        return id;
+    }
+
+    /**
+     * Removes one of the Turtle's stamps. Has no effect if the stamp has
+     * already been removed or was left by another Turtle.
+     *
+     * @param id The id returned by {@link #stamp()}.
+     */
+    public void clearStamp(int id) {
+        if(headless) {
+            return;
+        }
+        display();
+        instrumentation.begin();
+        commit(() -> world.getStamps().remove(id, this));
+        end("clearStamp");
+    }
+
+    /**
+     * Removes all of the Turtle's stamps.
+     */
+    public void clearStamps() {
+        if(headless) {
+            return;
+        }
+        display();
+        instrumentation.begin();
+        commit(() -> world.getStamps().removeAll(this));
+        end("clearStamps");
+    }
+
     /**
      * Sets the pen into the down (drawing) position.
      */
@@ -493,6 +1014,15 @@ public class Turtle {
         penDown = false;
     }
 
+    /**
+     * Returns whether or not the pen is down.
+     *
+     * @return True if the Turtle draws when it moves.
+     */
+    public boolean isPenDown() {
+        return penDown;
+    }
+
     /**
      * Moves the Turtle the specified distance in the direction that it is
      * currently facing.
@@ -510,9 +1040,7 @@ public class Turtle {
      * @param distance The distance to move the Turtle.
      */
     public void forward(double distance) {
-        Point2D end = calculateEndPoint(angle, location, distance);
-
-        setPosition(end.getX(), end.getY());
+        advance(distance);
     }
 
     /**
@@ -539,8 +1067,7 @@ public class Turtle {
      * @param distance This distance to move the Turtle backwards.
      */
     public void backward(double distance) {
-        Point2D end = calculateEndPoint(angle + 180, location, distance);
-        setPosition(end.getX(), end.getY());
+        advance(-distance);
     }
 
     /**
@@ -557,15 +1084,8 @@ public class Turtle {
      *
      * @param degrees The number of degrees to turn the Turtle to the right.
      */
-    public synchronized void right(double degrees) {
-        display();
-
-        angle += degrees;
-
-        Timeline animation = new Timeline(
-                new KeyFrame(getDuration(degrees),
-                new KeyValue(turtleShape.rotateProperty(), angle)));
-        animate(animation);
+    public void right(double degrees) {
+        turn(degrees);
     }
 
     /**
@@ -583,14 +1103,38 @@ public class Turtle {
      * @param degrees The number of degrees to turn the Turtle to the left.
      */
     public void left(double degrees) {
-        display();
+        turn(-degrees);
+    }
 
-        angle -= degrees;
+    /**
+     * Turns the Turtle to face the specified heading.
+     *
+     * @param heading The Turtle's new heading in degrees, measured
+     *                counterclockwise from east.
+     */
+    public void setHeading(double heading) {
+        instrumentation.begin();
+        double degrees = -heading - angle;
+        angle = -heading;
+        updateHeading();
+        if(recorder != null) {
+            recorder.heading(heading);
+        }
+        if(!headless) {
+            display();
+            rotate(degrees);
+        }
+        end("turn");
+    }
 
-        Timeline animation = new Timeline(
-                new KeyFrame(getDuration(degrees),
-                new KeyValue(turtleShape.rotateProperty(), angle)));
-        animate(animation);
+    /**
+     * Returns the direction that the Turtle is facing.
+     *
+     * @return The Turtle's heading in degrees, measured counterclockwise
+     *         from east.
+     */
+    public double getHeading() {
+        return -angle;
     }
 
     /**
@@ -623,95 +1167,357 @@ public class Turtle {
      * @param y The Turtle's new y coordinate.
      */
     public void setPosition(double x, double y) {
-        display();
-
-        Point2D start = translateToCoordinates(location);
-
-        location = new Point2D(x, y);
-        Point2D end = translateToCoordinates(location);
+        instrumentation.begin();
+        move(x, y);
+        end("move");
+    }
 
-        if(filling) {
-            addPointToFillPath(end);
+    /**
+     * Moves the Turtle to each of the specified x/y coordinates in turn,
+     * drawing lines if the pen is down, exactly as if
+     * {@link #goTo(double, double)} were called for each of them. The whole
+     * path is a single change to the scene and a single animation, so a
+     * path of a million points costs little more than a single move.
+     *
+     * @param coordinates The x and y coordinates of the points,
+     *                    alternately.
+     */
+    public void goTo(double[] coordinates) {
+        int count = pairs(coordinates);
+        if(count == 0) {
+            return;
         }
-
-        Timeline animation = new Timeline();
-
-        KeyValue[] keyValues = new KeyValue[penDown ? 4 : 2];
-        keyValues[0] = new KeyValue(turtleShape.translateXProperty(),
-                end.getX());
-        keyValues[1] = new KeyValue(turtleShape.translateYProperty(),
-                end.getY());
-
-        if(penDown) {
-            Line line = new Line(start.getX(), start.getY(), start.getX(),
-                    start.getY());
-            line.setStrokeWidth(width);
-            line.setStroke(Color.TRANSPARENT);
-
-            animation.getKeyFrames().add(new KeyFrame(Duration.ONE,
-                    new KeyValue(line.strokeProperty(), penColor)));
-
-            runInApplicationThread(() -> {
-                root.getChildren().add(line);
-                line.toFront();
-            });
-
-            keyValues[2] = new KeyValue(line.endXProperty(), end.getX());
-            keyValues[3] = new KeyValue(line.endYProperty(), end.getY());
+        instrumentation.begin();
+        double[] points = new double[count * 2 + 2];
+        points[0] = locationX;
+        points[1] = locationY;
+        for(int i=0; i<count; i++) {
+            double x = coordinates[i * 2];
+            double y = coordinates[i * 2 + 1];
+            points[i * 2 + 2] = x;
+            points[i * 2 + 3] = y;
+            record(x, y);
         }
-
-        Duration duration = getDuration(start.getX(), start.getY(),
-                end.getX(), end.getY());
-
-        animation.getKeyFrames().add(
-                new KeyFrame(duration, keyValues));
-        animate(animation);
-
-        runInApplicationThread(() ->  turtleShape.toFront());
+        locationX = points[count * 2];
+        locationY = points[count * 2 + 1];
+        moveThrough(points, angle, null);
+        end("move");
     }
 
     /**
-     * Moves the Turtle to the specified x coordinate. The Turtle's y
-     * coordinate remains unchanged. If the pen is down, the Turtle draws a
-     * line.
+     * Moves the Turtle to each of the x/y coordinates in a stream in turn,
+     * as a single move; see {@link #goTo(double[])}.
      *
-     * @param x The Turtle's new x coordinate.
+     * @param coordinates The x and y coordinates of the points,
+     *                    alternately.
      */
-    public void setX(double x) {
-        setPosition(x, location.getY());
+    public void goTo(DoubleStream coordinates) {
+        goTo(coordinates.toArray());
     }
 
     /**
-     * Moves the Turtle to the specified y coordinate. The Turtle's x
-     * coordinate remains unchanged. If the pen is down, the Turtle draws a
-     * line.
+     * For each of the specified pairs of a distance and a number of
+     * degrees in turn, moves the Turtle forward the distance and then turns
+     * it left the number of degrees, exactly as if {@link #forward(double)}
+     * and {@link #left(double)} were called for each pair. All of the moves
+     * and turns are a single change to the scene and a single animation, so
+     * a million of them cost little more than a single move.
      *
-     * @param y The Turtle's new x coordinate.
-     */
-    public void setY(double y) {
-        setPosition(location.getX(), y);
+     * @param steps The distances and degrees, alternately. A negative
+     *              distance moves the Turtle backward, and a negative
+     *              number of degrees turns it right.
+     */
+    public void walk(double[] steps) {
+        int count = pairs(steps);
+        if(count == 0) {
+            return;
+        }
+        instrumentation.begin();
+        double from = angle;
+        double[] points = new double[count * 2 + 2];
+        double[] angles = new double[count];
+        points[0] = locationX;
+        points[1] = locationY;
+        for(int i=0; i<count; i++) {
+            double distance = steps[i * 2];
+            locationX = locationX + distance * headingX;
+            locationY = locationY + distance * headingY;
+            points[i * 2 + 2] = locationX;
+            points[i * 2 + 3] = locationY;
+            record(locationX, locationY);
+
+            angle -= steps[i * 2 + 1];
+            updateHeading();
+            angles[i] = angle;
+            if(recorder != null) {
+                recorder.heading(-angle);
+            }
+        }
+        moveThrough(points, from, angles);
+        end("walk");
     }
 
     /**
-     * Sets the width of the pen to the specified value.
+     * For each pair of a distance and a number of degrees in a stream in
+     * turn, moves the Turtle forward and then turns it left, as a single
+     * move; see {@link #walk(double[])}.
      *
-     * @param width The width of the pen. Must be a positive number.
+     * @param steps The distances and degrees, alternately.
      */
-    public void width(int width) {
-        penSize(width);
+    public void walk(DoubleStream steps) {
+        walk(steps.toArray());
     }
 
     /**
-     * Sets the width of the pen to the specified value.
+     * Returns the number of pairs in an array of numbers that are given in
+     * pairs.
      *
-     * @param width The width of the pen. Must be a positive number.
+     * @param values The numbers.
+     *
+     * @return Half the length of the array.
      */
-    public void penSize(int width) {
-        if(width < 0) {
-            throw new IllegalArgumentException("Pen width must be positive: "
-                    + width);
+    private static int pairs(double[] values) {
+        if(values.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "expected pairs of numbers, got " + values.length);
         }
+        return values.length / 2;
+    }
+
+    /**
+     * Records a move to the specified x/y coordinate by a bulk move,
+     * drawing a line if the pen is down.
+     *
+     * @param x The x coordinate to which the Turtle moves.
+     * @param y The y coordinate to which the Turtle moves.
+     */
+    private void record(double x, double y) {
+        if(penDown) {
+            instrumentation.segmentDrawn();
+        }
+        if(recorder != null) {
+            if(penDown) {
+                recorder.lineTo(x, y);
+            }
+            else {
+                recorder.moveTo(x, y);
+            }
+        }
+    }
+
+    /**
+     * Shows the Turtle moving through a number of points as a single
+     * motion, drawing lines if the pen is down, after the Turtle's state
+     * has been updated to the end of the moves.
+     *
+     * @param points The x and y coordinates in the Turtle's world of the
+     *               point at which the Turtle started and of each point
+     *               that it moved to, alternately.
+     * @param from The Turtle's angle before it moved.
+     * @param angles The Turtle's angle after each move, or null if it did
+     *               not turn.
+     */
+    private void moveThrough(double[] points, double from, double[] angles) {
+        int count = points.length / 2;
+        if(filling) {
+            for(int i=1; i<count; i++) {
+                addPointToFillPath(translateX(points[i * 2]),
+                        translateY(points[i * 2 + 1]));
+            }
+        }
+        if(headless) {
+            return;
+        }
+
+        display();
+
+        // the lines are in the drawing's coordinates, the arrowhead in the
+        // screen's
+        Transform view = world.getView();
+        double[] drawn = new double[points.length];
+        double[] screen = new double[points.length];
+        for(int i=0; i<count; i++) {
+            double x = translateX(points[i * 2]);
+            double y = translateY(points[i * 2 + 1]);
+            drawn[i * 2] = x;
+            drawn[i * 2 + 1] = y;
+            screen[i * 2] = view.getMxx() * x + view.getMxy() * y +
+                    view.getTx();
+            screen[i * 2 + 1] = view.getMyx() * x + view.getMyy() * y +
+                    view.getTy();
+        }
+
+        // when the Turtle reaches each point, and when it leaves it after
+        // turning
+        double[] arrivals = new double[count];
+        double[] departures = new double[count];
+        double before = from;
+        for(int i=1; i<count; i++) {
+            arrivals[i] = departures[i - 1] + getDuration(
+                    screen[i * 2 - 2], screen[i * 2 - 1],
+                    screen[i * 2], screen[i * 2 + 1]);
+            double after = angles == null ? from : angles[i - 1];
+            departures[i] = arrivals[i] + getTurnDuration(after - before);
+            before = after;
+        }
+
+        play(new Trail(drawn, screen, arrivals, departures, from, angles,
+                penDown, penColor, strokeWidth(view)));
+    }
+
+    /**
+     * Moves the Turtle to the specified x/y coordinate, drawing a line if the
+     * pen is down.
+     *
+     * @param x The Turtle's new x coordinate.
+     * @param y The Turtle's new y coordinate.
+     */
+    private void move(double x, double y) {
+        if(penDown) {
+            instrumentation.segmentDrawn();
+        }
+        if(recorder != null) {
+            if(penDown) {
+                recorder.lineTo(x, y);
+            }
+            else {
+                recorder.moveTo(x, y);
+            }
+        }
+        double fromX = locationX;
+        double fromY = locationY;
+        locationX = x;
+        locationY = y;
+        if(filling) {
+            addPointToFillPath(translateX(x), translateY(y));
+        }
+        if(headless) {
+            return;
+        }
+
+        display();
+
+        // the line is in the drawing's coordinates, the arrowhead in the
+        // screen's
+        Transform view = world.getView();
+        double startX = translateX(fromX);
+        double startY = translateY(fromY);
+        double endX = translateX(x);
+        double endY = translateY(y);
+        Point2D screenStart = view.transform(startX, startY);
+        Point2D screenEnd = view.transform(endX, endY);
+        double lineWidth = strokeWidth(view);
+        boolean draw = penDown;
+        Color color = penColor;
+
+        double duration = getDuration(screenStart.getX(), screenStart.getY(),
+                screenEnd.getX(), screenEnd.getY());
+        play(new Motion(duration) {
+            /**
+             * The line that grows behind the Turtle; made only if the move
+             * is shown partway through.
+             */
+            private Line line;
+
+            @Override
+            void update(double fraction) {
+                turtleShape.setTranslateX(screenStart.getX() +
+                        (screenEnd.getX() - screenStart.getX()) * fraction);
+                turtleShape.setTranslateY(screenStart.getY() +
+                        (screenEnd.getY() - screenStart.getY()) * fraction);
+                if(draw) {
+                    if(line == null) {
+                        line = new Line(startX, startY, startX, startY);
+                        line.setStroke(color);
+                        line.setStrokeWidth(lineWidth);
+                        world.getOverlay().getChildren().add(line);
+                    }
+                    line.setEndX(startX + (endX - startX) * fraction);
+                    line.setEndY(startY + (endY - startY) * fraction);
+                }
+            }
+
+            @Override
+            void end() {
+                if(line != null) {
+                    world.getOverlay().getChildren().remove(line);
+                }
+                if(draw) {
+                    // hand the finished line over to the renderer
+                    world.getRenderer().line(startX, startY, endX, endY,
+                            color, lineWidth);
+                }
+                turtleShape.setTranslateX(screenEnd.getX());
+                turtleShape.setTranslateY(screenEnd.getY());
+            }
+        });
+    }
+
+    /**
+     * Moves the Turtle to the specified x coordinate. The Turtle's y
+     * coordinate remains unchanged. If the pen is down, the Turtle draws a
+     * line.
+     *
+     * @param x The Turtle's new x coordinate.
+     */
+    public void setX(double x) {
+        setPosition(x, locationY);
+    }
+
+    /**
+     * Moves the Turtle to the specified y coordinate. The Turtle's x
+     * coordinate remains unchanged. If the pen is down, the Turtle draws a
+     * line.
+     *
+     * @param y The Turtle's new x coordinate.
+     */
+    public void setY(double y) {
+        setPosition(locationX, y);
+    }
+
+    /**
+     * Returns the Turtle's x coordinate.
+     *
+     * @return The x coordinate.
+     */
+    public double getX() {
+        return locationX;
+    }
+
+    /**
+     * Returns the Turtle's y coordinate.
+     *
+     * @return The y coordinate.
+     */
+    public double getY() {
+        return locationY;
+    }
+
+    /**
+     * Sets the width of the pen to the specified value.
+     *
+     * @param width The width of the pen. Must be a positive number.
+     */
+    public void width(int width) {
+        penSize(width);
+    }
+
+    /**
+     * Sets the width of the pen to the specified value.
+     *
+     * @param width The width of the pen. Must be a positive number.
+     */
+    public void penSize(int width) {
+        if(width < 0) {
+            throw new IllegalArgumentException("Pen width must be positive: "
+                    + width);
+        }
+        instrumentation.begin();
         this.width = width;
+        if(recorder != null) {
+            recorder.penWidth(width);
+        }
+        end("penSize");
     }
 
     /**
@@ -738,10 +1544,13 @@ public class Turtle {
      * @param title The new title.
      */
     public void title(String title) {
+        if(headless) {
+            return;
+        }
+        instrumentation.begin();
         display();
-        runInApplicationThread(() -> {
-            application.setTitle(title);
-        });
+        commit(() -> world.setTitle(title));
+        end("title");
     }
 
     /**
@@ -754,28 +1563,146 @@ public class Turtle {
     }
 
     /**
-     * Draws a circle with the specified radius.
+     * Draws a circle with the specified radius. The center of the circle is
+     * radius units to the left of the Turtle; if the radius is negative, the
+     * center is to the Turtle's right and the circle is drawn clockwise.
+     * The circle is drawn as a single arc, and the Turtle's final location
+     * and heading are calculated exactly.
      *
      * @param radius The radius of the circle to draw.
-     * @param extent The extent of the circle.
+     * @param extent The extent of the circle in degrees.
      */
     public void circle(double radius, double extent) {
-        display();
-
-        int circumference = (int)Math.ceil(Math.PI * radius * 2);
-        double degrees = 360.0 / circumference;
+        instrumentation.begin();
+        arc(radius, extent);
+        end("circle");
+    }
 
-        double actual = circumference * (extent / 360);
+    /**
+     * Moves the Turtle along an arc of a circle, drawing the arc if the pen
+     * is down; see {@link #circle(double, double)}.
+     *
+     * @param radius The radius of the circle.
+     * @param extent The extent of the arc in degrees.
+     */
+    private void arc(double radius, double extent) {
+        // the center of the circle is radius units to the Turtle's left
+        double centerX = locationX - radius * headingY;
+        double centerY = locationY + radius * headingX;
+
+        // counterclockwise for a positive radius, clockwise otherwise
+        double sweep = radius >= 0 ? extent : -extent;
+
+        Point2D from = new Point2D(locationX, locationY);
+        Point2D to = rotateAbout(from, centerX, centerY, sweep);
+        boolean draw = penDown && radius != 0;
+
+        angle -= sweep;
+        updateHeading();
+        locationX = to.getX();
+        locationY = to.getY();
+        if(draw) {
+            instrumentation.segmentDrawn();
+        }
 
-        // this is currently very slow. but it works!
-        for(int i=0; i<actual; i++) {
-            forward(1);
-            Turtle.left(degrees);
+        if(recorder != null) {
+            if(draw) {
+                recorder.arcTo(to.getX(), to.getY(), centerX, centerY, sweep);
+            }
+            else {
+                recorder.moveTo(to.getX(), to.getY());
+            }
+            recorder.heading(-angle);
+        }
+        if(filling) {
+            addArcToFillPath(from, centerX, centerY, sweep);
         }
+        if(headless) {
+            return;
+        }
+
+        display();
+
+        // the arc is in the drawing's coordinates, the arrowhead in the
+        // screen's
+        Transform view = world.getView();
+        Point2D center = new Point2D(translateX(centerX),
+                translateY(centerY));
+        Point2D end = view.transform(translateX(to.getX()),
+                translateY(to.getY()));
+        double arcRadius = Math.abs(radius);
+        double startAngle = Math.toDegrees(Math.atan2(
+                from.getY() - centerY, from.getX() - centerX));
+        double rotation = angle;
+        Color color = penColor;
+        double lineWidth = strokeWidth(view);
+
+        // the length of the arc on the screen
+        double duration = getDuration(
+                scale(view) * arcRadius * Math.toRadians(Math.abs(sweep)));
+
+        // the Turtle (and the arc, if the pen is down) sweeps around the
+        // center of the circle
+        play(new Motion(duration) {
+            /**
+             * The arc that grows behind the Turtle; made only if the arc is
+             * shown partway through.
+             */
+            private Arc arc;
+
+            @Override
+            void update(double fraction) {
+                double current = sweep * fraction;
+                double radians = Math.toRadians(startAngle + current);
+                Point2D position = view.transform(
+                        center.getX() + arcRadius * Math.cos(radians),
+                        center.getY() - arcRadius * Math.sin(radians));
+                turtleShape.setTranslateX(position.getX());
+                turtleShape.setTranslateY(position.getY());
+                turtleShape.setRotate(rotation + sweep - current);
+                if(draw) {
+                    if(arc == null) {
+                        arc = new Arc(center.getX(), center.getY(),
+                                arcRadius, arcRadius, startAngle, 0);
+                        arc.setType(ArcType.OPEN);
+                        arc.setFill(null);
+                        arc.setStroke(color);
+                        arc.setStrokeWidth(lineWidth);
+                        world.getOverlay().getChildren().add(arc);
+                    }
+                    arc.setLength(current);
+                }
+            }
+
+            @Override
+            void end() {
+                if(arc != null) {
+                    world.getOverlay().getChildren().remove(arc);
+                }
+                if(draw) {
+                    // hand the finished arc over to the renderer
+                    world.getRenderer().arc(center.getX(), center.getY(),
+                            arcRadius, startAngle, sweep, color, lineWidth);
+                }
+                turtleShape.setTranslateX(end.getX());
+                turtleShape.setTranslateY(end.getY());
+                turtleShape.setRotate(rotation);
+            }
+        });
     }
 
     /**
-     * Sets the world coordinates for the Turtle's world.
+     * Sets the world coordinates for the Turtle's world: the coordinates of
+     * the lower left and upper right corners of the window. The whole
+     * drawing, including what has already been drawn, is zoomed and panned
+     * to the new coordinates, in either render mode, and shown at the
+     * level of detail of the new scale. With retained nodes this takes time
+     * in proportion to what is visible; a canvas is rasterized again from
+     * the start. Every Turtle shares the same world coordinates. Pen widths
+     * and text sizes are in pixels at the world coordinates in effect when
+     * something is drawn, and scale with the drawing afterwards. If the
+     * window has no width or no height, the world coordinates do not
+     * change.
      *
      * @param llx The x coordinate for the lower left corner of the world.
      * @param lly The y coordinate for the lower left corner of the world.
@@ -783,8 +1710,29 @@ public class Turtle {
      * @param ury The y coordinate for the upper right corner of the world.
      */
     public void setWorldCoordinates(int llx, int lly, int urx, int ury) {
+        setWorldCoordinates((double)llx, lly, urx, ury);
+    }
+
+    /**
+     * Sets the world coordinates for the Turtle's world; see
+     * {@link #setWorldCoordinates(int, int, int, int)}.
+     *
+     * @param llx The x coordinate for the lower left corner of the world.
+     * @param lly The y coordinate for the lower left corner of the world.
+     * @param urx The x coordinate for the upper right corner of the world.
+     * @param ury The y coordinate for the upper right corner of the world.
+     */
+    public void setWorldCoordinates(double llx, double lly, double urx,
+                                    double ury) {
+        if(headless || urx == llx || ury == lly) {
+            // a window without width or height changes nothing
+            return;
+        }
+        instrumentation.begin();
         display();
-        // does nothing...yet
+        world.setWorldCoordinates(llx, lly, urx, ury);
+        commit(world::showView);
+        end("worldCoordinates");
     }
 
     /**
@@ -793,31 +1741,44 @@ public class Turtle {
      * @param message The message that the turtle should draw.
      */
     public void drawText( String message) {
+        instrumentation.begin();
+        if(recorder != null) {
+            recorder.text(message);
+        }
+        if(!headless) {
+            display();
 
-        display();
-
-        Point2D start = translateToCoordinates(location);
-
-        Text text = new Text(start.getX(), start.getY(), message);
-        text.setFill(penColor);
+            double startX = translateX(locationX);
+            double startY = translateY(locationY);
+            Color color = penColor;
+            double size = Font.getDefault().getSize() /
+                    scale(world.getView());
 
-        runInApplicationThread(() -> this.root.getChildren().add(text));
+            commit(() -> world.getRenderer().text(startX, startY, message,
+                    color, size));
+        }
+        end("text");
     }
 
     /////////////////////////////////////////////////////////////////////////
     // PRIVATE METHODS. Most of these translate turtlish stuff to JavaFX.  //
     /////////////////////////////////////////////////////////////////////////
     /**
-     * Performs the specified animation. First sets the on finished handler
-     * to notify the Turtle when the animation is complete. Then starts the
-     * animation. Finally, waits for notification that the animation is
-     * complete.
+     * Plays the specified motion. The motion is queued behind all of the
+     * previously committed changes. Unless the Turtle is asynchronous,
+     * waits for the motion to finish if it lasts at least a frame, so that
+     * the Turtle keeps pace with what is shown; shorter motions are queued
+     * without waiting, and as many of them as fit are played in each frame.
      *
-     * @param animation The animation to execute.
-     */
-    private synchronized void animate(Animation animation) {
-        Animator animator = new Animator(animation);
-        animator.animate();
+     * @param motion The motion to play.
+     */
+    private void play(Motion motion) {
+        commit(motion);
+        if(!async && motion.duration >= FRAME) {
+            long start = System.nanoTime();
+            motion.await();
+            instrumentation.blocked(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -834,86 +1795,203 @@ public class Turtle {
     }
 
     /**
-     * Runs the specified {@link Runnable} in the JavaFX application thread,
-     * which is the only thread in which modifications to the user interface
-     * can be performed directly. Blocks until the runner is finished.
+     * Schedules the specified change to the scene graph to run in the JavaFX
+     * application thread, which is the only thread in which modifications to
+     * the user interface can be performed directly. Changes are applied in
+     * the order in which they are committed by the Turtle's
+     * {@link Animator}, which is started if it is not already running.
+     * Blocks only if the queue of pending changes is full.
+     *
+     * @param change The change to apply in the JavaFX application thread.
+     */
+    private void commit(Runnable change) {
+        instrumentation.committed();
+        if(!pendingCommits.offer(change)) {
+            // the queue is full; wait for the application thread to catch up
+            long start = System.nanoTime();
+            boolean queued = false;
+            while(!queued) {
+                try {
+                    pendingCommits.put(change);
+                    queued = true;
+                } catch (InterruptedException e) {
+                    // squash
+                }
+            }
+            instrumentation.blocked(System.nanoTime() - start);
+        }
+        if(commitScheduled.compareAndSet(false, true)) {
+            Platform.runLater(animator::start);
+        }
+    }
+
+    /**
+     * Turns the Turtle clockwise the specified number of degrees.
      *
-     * @param runner The {@link Runnable} to execute in the JavaFX application
-     *               thread.
+     * @param degrees The number of degrees to turn the Turtle clockwise;
+     *                negative to turn counterclockwise.
      */
-    private synchronized void runInApplicationThread(Runnable runner) {
-        // wrap the runner in another runnable that...
-        Platform.runLater(() -> {
-            // obtains the synchronization lock...
-            synchronized(Turtle.this) {
-                // starts the runner
-                runner.run();
-                // once it is complete, notifies the waiting Turtle
-                Turtle.this.notify();
+    private void turn(double degrees) {
+        instrumentation.begin();
+        angle += degrees;
+        updateHeading();
+        if(recorder != null) {
+            recorder.heading(-angle);
+        }
+        if(!headless) {
+            display();
+            rotate(degrees);
+        }
+        end("turn");
+    }
+
+    /**
+     * Ends the measurement of a command, committing a change that traces its
+     * round trip if necessary.
+     *
+     * @param command The kind of command.
+     */
+    private void end(String command) {
+        Runnable trace = instrumentation.end(command);
+        if(trace != null) {
+            commit(trace);
+        }
+    }
+
+    /**
+     * Rotates the Turtle's arrowhead to the Turtle's current angle over the
+     * time that the turn takes at the Turtle's speed.
+     *
+     * @param degrees The number of degrees that the Turtle is turning.
+     */
+    private void rotate(double degrees) {
+        double from = angle - degrees;
+        double to = angle;
+        play(new Motion(getTurnDuration(degrees)) {
+            @Override
+            void update(double fraction) {
+                turtleShape.setRotate(from + degrees * fraction);
+            }
+
+            @Override
+            void end() {
+                turtleShape.setRotate(to);
             }
         });
-        // wait for notification
-        waitForNotify();
     }
 
     /**
-     * The Turtle uses a coordinate plane where the origin, (0,0) is in the
-     * center of the canvas the y is positive in the UP direction. JavaFX uses
-     * a coordinate plane where the origin, (0, 0), is in the top left corner
-     * of the screen and y is positive in the DOWN direction. Given a Turtle
-     * coordinate as a {@link Point2D}, this method will translate it into a
-     * JavaFX coordinate.
+     * The Turtle uses a coordinate plane where y is positive in the UP
+     * direction. JavaFX uses a coordinate plane where y is positive in the
+     * DOWN direction. The drawing is kept in the Turtle's coordinates with
+     * the y axis flipped, and the world's view maps it onto the screen, so
+     * that the world coordinates can change without redrawing anything.
+     * Given a Turtle x coordinate, this method will translate it into the
+     * drawing's x coordinate.
      *
-     * @param point The Turtle coordinate as a {@link Point2D}.
+     * @param x The Turtle's x coordinate.
      *
-     * @return The translated coordinate as a{@link Point2D}.
+     * @return The translated x coordinate.
      */
-    private Point2D translateToCoordinates(Point2D point) {
-        return translateToCoordinates(point.getX(), point.getY());
+    private double translateX(double x) {
+        return x;
     }
 
     /**
-     * The Turtle uses a coordinate plane where the origin, (0,0) is in the
-     * center of the canvas the y is positive in the UP direction. JavaFX uses
-     * a coordinate plane where the origin, (0, 0), is in the top left corner
-     * of the screen and y is positive in the DOWN direction. Given a Turtle
-     * coordinate as an x/y pair, this method will translate it into a JavaFX
-     * coordinate.
+     * Given a Turtle y coordinate, translates it into the drawing's y
+     * coordinate; see {@link #translateX(double)}.
      *
-     * @param x The Turtle's x coordinate.
      * @param y The Turtle's y coordinate.
      *
-     * @return The translated coordinate as a {@link Point2D}.
+     * @return The translated y coordinate.
      */
-    private Point2D translateToCoordinates(double x, double y) {
-        double realX = x + WIDTH / 2;
-        double realY = HEIGHT / 2 - y;
-
-        return new Point2D(realX, realY);
+    private double translateY(double y) {
+        return -y;
     }
 
     /**
-     * Given an angle, a starting point, and a distance, calculates the end
-     * point that a Turtle would arrive at.
+     * Returns the width of the Turtle's pen in the drawing's coordinates,
+     * so that lines are as many pixels wide as the pen under the specified
+     * view.
      *
-     * @param angle The angle of the Turtle.
-     * @param start The starting point.
-     * @param distance The distance that the Turtle should move.
-     * @return The end point.
+     * @param view The world's view.
+     *
+     * @return The width of lines in the drawing's coordinates.
      */
-    private Point2D calculateEndPoint(double angle, Point2D start,
-                                      double distance) {
+    private double strokeWidth(Transform view) {
+        return width / scale(view);
+    }
 
-        double radians = Math.toRadians(angle + 90);
+    /**
+     * Returns the number of pixels on the screen per unit of distance in
+     * the Turtle's world under the specified view. If the world coordinates
+     * scale x and y differently, this is the geometric mean of the two.
+     *
+     * @param view The world's view.
+     *
+     * @return The view's scale.
+     */
+    private static double scale(Transform view) {
+        return Math.sqrt(Math.abs(view.getMxx() * view.getMyy()));
+    }
 
-        // calculate the distance in the x direction
+    /**
+     * Rotates a point in the Turtle's world about a center point.
+     *
+     * @param point The point to rotate.
+     * @param centerX The x coordinate of the center of rotation.
+     * @param centerY The y coordinate of the center of rotation.
+     * @param degrees The number of degrees to rotate the point
+     *                counterclockwise.
+     *
+     * @return The rotated point.
+     */
+    private Point2D rotateAbout(Point2D point, double centerX, double centerY,
+                                double degrees) {
+        if(degrees % 360 == 0) {
+            // a whole number of turns ends exactly where it started
+            return point;
+        }
+        double radians = Math.toRadians(degrees);
+        double cosine = Math.cos(radians);
         double sine = Math.sin(radians);
-        double newX = distance * sine + start.getX();
+        double x = point.getX() - centerX;
+        double y = point.getY() - centerY;
 
-        double cosine = Math.cos(radians);
-        double newY = distance * cosine + start.getY();
+        return new Point2D(centerX + x * cosine - y * sine,
+                centerY + x * sine + y * cosine);
+    }
 
-        return new Point2D(newX, newY);
+    /**
+     * Moves the Turtle the specified distance in the direction that it is
+     * currently facing; backwards if the distance is negative.
+     *
+     * @param distance The distance that the Turtle should move.
+     */
+    private void advance(double distance) {
+        setPosition(locationX + distance * headingX,
+                locationY + distance * headingY);
+    }
+
+    /**
+     * Recomputes the unit vector in the direction that the Turtle is facing
+     * after its angle changes. Multiples of 90 degrees are exact, so that
+     * Turtles that turn only at right angles never drift.
+     */
+    private void updateHeading() {
+        double degrees = angle % 360;
+        if(degrees % 90 == 0) {
+            // the number of clockwise quarter turns from east
+            int quarters = ((int)(degrees / 90) + 4) % 4;
+            headingX = quarters == 0 ? 1 : quarters == 2 ? -1 : 0;
+            headingY = quarters == 3 ? 1 : quarters == 1 ? -1 : 0;
+        }
+        else {
+            // the angle is clockwise, the Turtle's world counterclockwise
+            double radians = Math.toRadians(angle);
+            headingX = Math.cos(radians);
+            headingY = -Math.sin(radians);
+        }
     }
 
     /**
@@ -925,25 +2003,37 @@ public class Turtle {
      * @param endX The ending y-coordinate.
      * @param endY The ending y-coordinate.
      *
-     * @return The {@link Duration} that the animation should require.
+     * @return The duration in milliseconds that the animation should
+     *         require.
      */
-    private Duration getDuration(double startX, double startY,
+    private double getDuration(double startX, double startY,
                                double endX, double endY) {
+        return getDuration(euclidianDistance(startX, startY, endX, endY));
+    }
+
+    /**
+     * Given a distance that the Turtle is to travel, returns the approriate
+     * duration of the animation given the current speed and tracer settings.
+     *
+     * @param distance The distance that the Turtle is to travel.
+     *
+     * @return The duration in milliseconds that the animation should
+     *         require.
+     */
+    private double getDuration(double distance) {
         // if the tracer is enabled, the duration is calculated...
         if(tracer) {
-            // calculate the distance
-            double distance = euclidianDistance(startX, startY, endX, endY);
             // calculate the number of pixels that the Turtle should travel
             // per second
             double pixels_per_second = PIXELS_PER_UNIT_OF_SPEED *
                     getRealSpeed();
             double seconds = distance / pixels_per_second;
 
-            return Duration.millis(seconds * 1000.0);
+            return seconds * 1000.0;
         }
         else {
-            // if the tracer is disabled, the speed is instantaneous (1 ms).
-            return Duration.ONE;
+            // if the tracer is disabled, the move is instantaneous
+            return 0;
         }
     }
 
@@ -953,19 +2043,20 @@ public class Turtle {
      *
      * @param degrees The number of degrees that the Turtle is to turn.
      *
-     * @return The {@link Duration} that the animation should require.
+     * @return The duration in milliseconds that the animation should
+     *         require.
      */
-    private Duration getDuration(double degrees) {
+    private double getTurnDuration(double degrees) {
         if(tracer) {
             double degrees_per_second = DEGREES_PER_UNIT_0F_SPEED *
                     getRealSpeed();
             double seconds =
                     (degrees >= 0 ? degrees : -degrees) / degrees_per_second;
 
-            return Duration.millis(seconds * 1000);
+            return seconds * 1000;
         }
         else {
-            return Duration.ONE;
+            return 0;
         }
     }
 
@@ -981,51 +2072,133 @@ public class Turtle {
     }
 
     /**
-     * Adds the specified point to the current fill path. This is used to
+     * Sends the Turtle's current state (location, heading, pen and fill
+     * colors, pen width and the background color) to a visitor, so that the
+     * commands it receives afterwards are drawn correctly.
+     *
+     * @param visitor The visitor that should receive the Turtle's state.
+     */
+    private void replayState(CommandVisitor visitor) {
+        visitor.background(world.getBackground());
+        visitor.moveTo(locationX, locationY);
+        visitor.heading(-angle);
+        visitor.penColor(penColor);
+        visitor.fillColor(fillColor);
+        visitor.penWidth(width);
+    }
+
+    /**
+     * Updates the visitor that receives every command issued to the Turtle
+     * after the headless mode or the attached visitors change.
+     */
+    private void updateRecorder() {
+        List<CommandVisitor> visitors = new ArrayList<>(recorders);
+        if(headless) {
+            visitors.add(0, commands);
+        }
+
+        if(visitors.isEmpty()) {
+            recorder = null;
+        }
+        else if(visitors.size() == 1) {
+            recorder = visitors.get(0);
+        }
+        else {
+            recorder = new CommandMulticaster(
+                    visitors.toArray(new CommandVisitor[0]));
+        }
+    }
+
+    /**
+     * Adds the specified point to the current fill outline. This is used to
      * determine that shape that should be filled in.
      *
-     * @param to The point to which a line should be drawn from the last point
-     *           added to the path.
+     * @param x The drawing's x coordinate to which a line should be drawn
+     *          from the last point added to the outline.
+     * @param y The drawing's y coordinate of the point.
      */
-    private void addPointToFillPath(Point2D to) {
+    private void addPointToFillPath(double x, double y) {
         if(filling) {
-            LineTo line = new LineTo();
-            line.setX(to.getX());
-            line.setY(to.getY());
-            fillPath.getElements().add(line);
+            // the outline is not part of the scene, so it can be modified
+            // outside of the JavaFX application thread
+            fillOutline.lineTo(x, y);
+            instrumentation.fillChanged(fillOutline.size());
+        }
+    }
+
+    /**
+     * Adds an arc to the current fill outline. The arc is split into pieces
+     * of no more than 180 degrees each, since a single {@link ArcTo} cannot
+     * describe a complete circle.
+     *
+     * @param from The point at which the arc starts, in the Turtle's world.
+     * @param centerX The x coordinate of the center of the arc.
+     * @param centerY The y coordinate of the center of the arc.
+     * @param sweep The number of degrees that the arc sweeps
+     *              counterclockwise.
+     */
+    private void addArcToFillPath(Point2D from, double centerX,
+                                  double centerY, double sweep) {
+        double radius = from.distance(centerX, centerY);
+        if(radius == 0) {
+            return;
+        }
+        int pieces = (int)Math.ceil(Math.abs(sweep) / 180);
+        for(int i=1; i<=pieces; i++) {
+            Point2D to = rotateAbout(from, centerX, centerY,
+                    sweep * i / pieces);
+
+            // the y axis is flipped, but a counterclockwise arc in the
+            // Turtle's world is still counterclockwise on the screen
+            fillOutline.arcTo(translateX(to.getX()), translateY(to.getY()),
+                    translateX(centerX), translateY(centerY),
+                    sweep / pieces);
         }
+        instrumentation.fillChanged(fillOutline.size());
     }
 
     /**
-     * Sets the Turtle's pen color using an animation to insure that it occurs
-     * at the appropriate point in time (otherwise the color would change in
-     * the midst of other animations; nonsensical).
+     * Sets the Turtle's pen color by committing the change after all of the
+     * previously committed changes to insure that it occurs at the
+     * appropriate point in time (otherwise the color would change in the
+     * midst of other animations; nonsensical).
      *
      * @param color The new pen color.
      */
     private void penColor(Color color) {
-        display();
+        instrumentation.begin();
         penColor = color;
+        if(recorder != null) {
+            recorder.penColor(color);
+        }
+        if(!headless) {
+            display();
 
-        Timeline animation = new Timeline(new KeyFrame(Duration.ONE,
-                new KeyValue(turtleShape.strokeProperty(), color)));
-        animate(animation);
+            commit(() -> turtleShape.setStroke(color));
+        }
+        end("penColor");
     }
 
     /**
-     * Sets the Turtle's fill color using an animation to insure that it
-     * occurs at the appropriate point in time (otherwise the color would
-     * change in the midst of other animations; nonsensical).
+     * Sets the Turtle's fill color by committing the change after all of the
+     * previously committed changes to insure that it occurs at the
+     * appropriate point in time (otherwise the color would change in the
+     * midst of other animations; nonsensical).
      *
      * @param color The new fill color.
      */
     private void fillColor(Color color) {
-        display();
+        instrumentation.begin();
         fillColor = color;
+        if(recorder != null) {
+            recorder.fillColor(color);
+        }
+        if(!headless) {
+            display();
 
-        Timeline animation = new Timeline(new KeyFrame(Duration.ONE,
-                new KeyValue(turtleShape.fillProperty(), color)));
-        animate(animation);
+            commit(() -> turtleShape.setFill(color));
+        }
+        end("fillColor");
     }
 
     /**
@@ -1034,14 +2207,23 @@ public class Turtle {
      * @param color The color to which the background should be set.
      */
     private void bgcolor(Color color) {
-        display();
-        application.stage.getScene().setFill(color);
+        instrumentation.begin();
+        world.setBackground(color);
+        if(recorder != null) {
+            recorder.background(color);
+        }
+        if(!headless) {
+            display();
+            commit(world::showBackground);
+        }
+        end("background");
     }
 
     /**
      * Helper method that makes a new {@link Color color} from the provided
      * RGB values. The provided values must be compatible with the current
-     * color mode.
+     * color mode. Each channel is rounded to the nearest of 256 levels, so
+     * that equal colors are shared; see {@link Palette#rgb}.
      *
      * @param red The red value.
      * @param green The green value.
@@ -1063,7 +2245,7 @@ public class Turtle {
                     red + ", " + green + ", " + blue + ")");
         }
 
-        return new Color(red, green, blue, 1.0);
+        return Palette.rgb(red, green, blue);
     }
 
     /**
@@ -1076,13 +2258,7 @@ public class Turtle {
      * @return The corresponding {@link Color}.
      */
     private Color makeColor(String color) {
-        try {
-            Field theColor = Color.class.getField(color.toUpperCase());
-            return (Color)theColor.get(null);
-        }
-        catch(Exception e) {
-            throw new IllegalArgumentException("bad color string: " + color);
-        }
+        return Palette.valueOf(color);
     }
 
     /**
@@ -1095,88 +2271,205 @@ public class Turtle {
      */
     private double euclidianDistance(double startX, double startY,
                                      double endX, double endY) {
-        Point2D start = new Point2D(startX, startY);
-        Point2D end = new Point2D(endX, endY);
+        double x = endX - startX;
+        double y = endY - startY;
 
-        return start.distance(end);
+        return Math.sqrt(x * x + y * y);
     }
 
     /**
-     * If the JavaFX Turtle application is not yet displayed, this method will
-     * display it. It is called automatically from any method that moves the
-     * Turtle. This method blocks until the application has started.
+     * If the Turtle's world is not yet displayed, this method will display
+     * it, and then adds the Turtle's arrowhead to it if the Turtle has not
+     * been displayed yet. It is called automatically from any method that
+     * moves the Turtle. This method blocks until the application has
+     * started.
      */
     private synchronized void display() {
-        if(notDisplayed) {
-            // initialize the JavaFX platform
-            Platform.startup(() -> {
-            });
+        if(turtleShape == null) {
+            // the scene graph is built only now so that a headless Turtle
+            // never touches the JavaFX toolkit
+            world.display();
+            animator = new Animator();
+
+            // initialize the Turtle to be an arrow head.
+            Shape shape = new Polygon(SHAPE);
+            shape.setStroke(penColor);
+            shape.setFill(fillColor);
+            Point2D position = world.getView().transform(
+                    translateX(locationX), translateY(locationY));
+            shape.setTranslateX(position.getX());
+            shape.setTranslateY(position.getY());
+            shape.setRotate(angle);
+            turtleShape = shape;
+
+            // add the Turtle to the world...
+            if(visible) {
+                commit(() -> world.addTurtle(shape));
+            }
+        }
+    }
 
-            // launch the Turtle application
-            Platform.runLater(() -> {
-                try {
-                    application.start(new Stage());
-                } catch (Exception e) {
-                    // squash
-                }
-                synchronized(Turtle.this) {
-                    Turtle.this.notify();
-                }
-            });
-            // wait for the application to start up
-            waitForNotify();
-            notDisplayed = false;
+    /**
+     * Replays recorded commands by issuing them to the Turtle, so that they
+     * are drawn, recorded and measured in the same way as the commands that
+     * produced them.
+     */
+    private class Player implements CommandVisitor {
+        @Override
+        public void moveTo(double x, double y) {
+            penDown = false;
+            setPosition(x, y);
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            penDown = true;
+            setPosition(x, y);
+        }
+
+        @Override
+        public void arcTo(double x, double y, double centerX,
+                          double centerY, double sweep) {
+            // face along the arc, so that its center is to the Turtle's
+            // left if it sweeps counterclockwise and to its right if not
+            double radius = Math.hypot(locationX - centerX,
+                    locationY - centerY);
+            angle = -Math.toDegrees(Math.atan2(locationY - centerY,
+                    locationX - centerX)) + (sweep < 0 ? 90 : -90);
+            updateHeading();
+            penDown = true;
+            circle(sweep < 0 ? -radius : radius, Math.abs(sweep));
+        }
+
+        @Override
+        public void heading(double heading) {
+            if(-heading != angle) {
+                turn(-heading - angle);
+            }
+        }
+
+        @Override
+        public void penColor(Color color) {
+            Turtle.this.penColor(color);
+        }
+
+        @Override
+        public void fillColor(Color color) {
+            Turtle.this.fillColor(color);
+        }
+
+        @Override
+        public void penWidth(int width) {
+            penSize(width);
+        }
+
+        @Override
+        public void beginFill() {
+            Turtle.this.beginFill();
+        }
+
+        @Override
+        public void endFill() {
+            Turtle.this.endFill();
+        }
+
+        @Override
+        public void text(String message) {
+            drawText(message);
+        }
+
+        @Override
+        public void background(Color color) {
+            bgcolor(color);
         }
     }
 
     /**
-     * Helper class that compensates for the fact that sometimes JavaFX
-     * animates in the JavaFX application thread (and therefore the Turtle
-     * must wait for the animation to finish), and sometimes JavaFX animates
-     * in the main application thread (and therefore a wait will cause a
-     * hang).
+     * A queued change that takes time: a move, an arc or a turn. The
+     * {@link Animator} plays it over its duration, showing it partway
+     * through only when a frame ends before it does, and a thread may wait
+     * for it to finish.
      */
-    private class Animator {
+    private abstract class Motion implements Runnable {
         /**
-         * The {@link Animation} played by this animator.
+         * The duration of the motion in milliseconds.
          */
-        private final Animation animation;
+        private final double duration;
 
         /**
-         * A boolean that indicates whether or not the animation has
-         * completed.
+         * The number of milliseconds of the motion that have been played.
+         */
+        private double elapsed;
+
+        /**
+         * A boolean that indicates whether or not the motion has finished.
          */
         private boolean finished;
 
         /**
-         * Creates a new animator for the specified {@link Animation}.
+         * Creates a new motion with the specified duration.
          *
-         * @param animation The {@link Animation} played by this animator.
+         * @param duration The duration of the motion in milliseconds.
          */
-        Animator(Animation animation) {
-            this.animation = animation;
-            finished = false;
+        Motion(double duration) {
+            this.duration = duration;
         }
 
         /**
-         * Plays the {@link Animation} and, if necessary, waits for
-         * notification that the animation is complete.
+         * Shows the motion partway through. Called in the JavaFX
+         * application thread.
+         *
+         * @param fraction The fraction of the motion that has been played,
+         *                 between 0 and 1.
          */
-        private void animate() {
-            synchronized(Turtle.this) {
-                // set an on finished event handler to toggle the boolean
-                // and notify
-                animation.setOnFinished((e) -> {
-                    synchronized (Turtle.this) {
-                        finished = true;
-                        Turtle.this.notify();
-                    }
-                });
+        abstract void update(double fraction);
+
+        /**
+         * Shows the end of the motion. Called in the JavaFX application
+         * thread.
+         */
+        abstract void end();
+
+        /**
+         * Returns the number of milliseconds of the motion that are left to
+         * play.
+         *
+         * @return The time left.
+         */
+        double remaining() {
+            return duration - elapsed;
+        }
+
+        /**
+         * Plays part of the motion, less than what is left of it.
+         *
+         * @param time The number of milliseconds to play.
+         */
+        void advance(double time) {
+            elapsed += time;
+            update(elapsed / duration);
+        }
 
-                animation.play();
+        /**
+         * Finishes the motion: shows its end and notifies any threads
+         * waiting for it.
+         */
+        @Override
+        public void run() {
+            end();
+            synchronized(Turtle.this) {
+                finished = true;
+                Turtle.this.notifyAll();
+            }
+        }
 
-                if (!finished) {
-                    // waits only if the animation is not already finished
+        /**
+         * Waits for notification that the motion is complete.
+         */
+        private void await() {
+            synchronized(Turtle.this) {
+                while(!finished) {
+                    // waits only if the motion is not already finished
                     Turtle.this.waitForNotify();
                 }
             }
@@ -1184,56 +2477,322 @@ public class Turtle {
     }
 
     /**
-     * The Turtle application. Displays the Turtle's world in a JavaFX window.
+     * A motion through a number of points, drawing lines between them if
+     * the pen is down, and turning at each of them. The lines are handed
+     * over to the renderer as a single path when the motion ends.
      */
-    private static class TurtleApp extends Application {
+    private class Trail extends Motion {
         /**
-         * The main {@link Stage} for the application.
+         * The x and y coordinates of the points in the drawing's
+         * coordinates, alternately.
          */
-        private Stage stage;
+        private final double[] drawn;
 
         /**
-         * The title of the application.
+         * The x and y coordinates of the points on the screen, alternately.
          */
-        private String title;
+        private final double[] screen;
 
         /**
-         * Constructs the app.
+         * The time in milliseconds at which the Turtle reaches each point.
          */
-        TurtleApp() {
-            // default title
-            title = "JTurtle!";
-        }
+        private final double[] arrivals;
+
+        /**
+         * The time in milliseconds at which the Turtle leaves each point,
+         * after turning.
+         */
+        private final double[] departures;
 
         /**
-         * Starts the application.
+         * The Turtle's angle at the first point.
+         */
+        private final double from;
+
+        /**
+         * The Turtle's angle after it leaves each of the following points,
+         * or null if it does not turn.
+         */
+        private final double[] angles;
+
+        /**
+         * Indicates whether or not the lines are drawn.
+         */
+        private final boolean draw;
+
+        /**
+         * The color of the lines.
+         */
+        private final Color color;
+
+        /**
+         * The width of the lines.
+         */
+        private final double lineWidth;
+
+        /**
+         * The lines that grow behind the Turtle; made only if the motion is
+         * shown partway through.
+         */
+        private Polyline line;
+
+        /**
+         * The number of points that have been added to the growing lines,
+         * not counting the point that the Turtle is moving towards.
+         */
+        private int shown;
+
+        /**
+         * Creates a new motion through a number of points.
          *
-         * @param primaryStage The {@link Stage} on which the Turtle will
-         *                     draw.
+         * @param drawn The coordinates of the points in the drawing.
+         * @param screen The coordinates of the points on the screen.
+         * @param arrivals The time at which the Turtle reaches each point.
+         * @param departures The time at which the Turtle leaves each point.
+         * @param from The Turtle's angle at the first point.
+         * @param angles The Turtle's angle after each following point, or
+         *               null.
+         * @param draw True if the lines are drawn.
+         * @param color The color of the lines.
+         * @param lineWidth The width of the lines.
          */
+        Trail(double[] drawn, double[] screen, double[] arrivals,
+              double[] departures, double from, double[] angles,
+              boolean draw, Color color, double lineWidth) {
+            super(departures[departures.length - 1]);
+            this.drawn = drawn;
+            this.screen = screen;
+            this.arrivals = arrivals;
+            this.departures = departures;
+            this.from = from;
+            this.angles = angles;
+            this.draw = draw;
+            this.color = color;
+            this.lineWidth = lineWidth;
+        }
+
         @Override
-        public void start(Stage primaryStage) {
-            Scene scene = new Scene(Turtle.root, WIDTH, HEIGHT,
-                    Color.WHITE);
+        void update(double fraction) {
+            double time = fraction * departures[departures.length - 1];
+
+            // the last point that the Turtle has left
+            int low = 0;
+            int high = departures.length - 1;
+            while(low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if(departures[middle] <= time) {
+                    low = middle;
+                }
+                else {
+                    high = middle - 1;
+                }
+            }
+            int next = Math.min(low + 1, departures.length - 1);
+
+            if(time < arrivals[next]) {
+                // moving from one point towards the next
+                double part = (time - departures[low]) /
+                        (arrivals[next] - departures[low]);
+                turtleShape.setTranslateX(screen[low * 2] +
+                        (screen[next * 2] - screen[low * 2]) * part);
+                turtleShape.setTranslateY(screen[low * 2 + 1] +
+                        (screen[next * 2 + 1] - screen[low * 2 + 1]) * part);
+                turtleShape.setRotate(angleAfter(low));
+                showLines(low + 1, drawn[low * 2] +
+                        (drawn[next * 2] - drawn[low * 2]) * part,
+                        drawn[low * 2 + 1] +
+                        (drawn[next * 2 + 1] - drawn[low * 2 + 1]) * part);
+            }
+            else {
+                // turning at the next point
+                double part = (time - arrivals[next]) /
+                        (departures[next] - arrivals[next]);
+                double before = angleAfter(low);
+                turtleShape.setTranslateX(screen[next * 2]);
+                turtleShape.setTranslateY(screen[next * 2 + 1]);
+                turtleShape.setRotate(before +
+                        (angleAfter(next) - before) * part);
+                showLines(next + 1, drawn[next * 2], drawn[next * 2 + 1]);
+            }
+        }
+
+        @Override
+        void end() {
+            if(line != null) {
+                world.getOverlay().getChildren().remove(line);
+            }
+            int count = drawn.length / 2;
+            if(draw) {
+                // hand the finished lines over to the renderer
+                world.getRenderer().polyline(drawn, count, color, lineWidth);
+            }
+            turtleShape.setTranslateX(screen[count * 2 - 2]);
+            turtleShape.setTranslateY(screen[count * 2 - 1]);
+            turtleShape.setRotate(angleAfter(count - 1));
+        }
 
-            stage = primaryStage;
+        /**
+         * Returns the Turtle's angle when it leaves the specified point.
+         *
+         * @param point The index of the point.
+         *
+         * @return The Turtle's angle.
+         */
+        private double angleAfter(int point) {
+            return angles == null || point == 0 ? from : angles[point - 1];
+        }
 
-            stage.setTitle(title);
-            stage.setScene(scene);
-            stage.sizeToScene();
-            stage.show();
+        /**
+         * Shows the lines that have been drawn so far, if the pen is down.
+         *
+         * @param reached The number of points that the Turtle has reached.
+         * @param x The x coordinate of the Turtle in the drawing.
+         * @param y The y coordinate of the Turtle in the drawing.
+         */
+        private void showLines(int reached, double x, double y) {
+            if(!draw) {
+                return;
+            }
+            if(line == null) {
+                line = new Polyline();
+                line.setStroke(color);
+                line.setStrokeWidth(lineWidth);
+                world.getOverlay().getChildren().add(line);
+            }
+            if(shown > 0) {
+                // drop the Turtle's previous position
+                line.getPoints().remove(shown * 2, shown * 2 + 2);
+            }
+            List<Double> added = new ArrayList<>((reached - shown) * 2 + 2);
+            for(int i=shown; i<reached; i++) {
+                added.add(drawn[i * 2]);
+                added.add(drawn[i * 2 + 1]);
+            }
+            added.add(x);
+            added.add(y);
+            line.getPoints().addAll(added);
+            shown = reached;
         }
+    }
+
+    /**
+     * Plays the Turtle's pending commits in the JavaFX application thread,
+     * frame by frame. Each frame has a budget of time: the changes that
+     * take no time are applied as they are reached, and motions are played
+     * until the budget runs out. Only the motion that is still going at the
+     * end of the frame is shown partway through; it continues in the next
+     * frame. So at the Turtle's fastest speeds thousands of moves are drawn
+     * in each frame, and at its slowest a move is drawn over many. The
+     * animator stops when there is nothing left to play, and is started
+     * again by the next commit.
+     */
+    private class Animator extends AnimationTimer {
+        /**
+         * The longest time in milliseconds that is played in a single
+         * frame. If frames are late, the motions slow down rather than
+         * jump ahead.
+         */
+        private static final double MAX_BUDGET = 2 * FRAME;
 
         /**
-         * Updates the title used by the primary stage.
+         * The motion that is being played, or null if there is none.
+         */
+        private Motion motion;
+
+        /**
+         * The time in nanoseconds up to which the changes have been played.
+         * If the animator ran out of changes partway through a frame, this
+         * is when it did, so that a motion committed in response, by a
+         * Turtle that waited for the one before, starts where that one
+         * ended.
+         */
+        private long clock;
+
+        /**
+         * Plays as many of the pending commits as fit in the time since the
+         * last frame.
          *
-         * @param title The new title for the stage.
+         * @param now The time of the current frame in nanoseconds.
          */
-        public void setTitle(String title) {
-            this.title = title;
+        @Override
+        public void handle(long now) {
+            double budget = Math.min((now - clock) / 1e6, MAX_BUDGET);
+            clock = now;
+
+            // apply only the changes that were already pending so that a
+            // busy Turtle cannot keep the application thread from rendering
+            int count = pendingCommits.size();
+            while(true) {
+                if(motion != null) {
+                    double remaining = motion.remaining();
+                    if(budget < remaining) {
+                        motion.advance(budget);
+                        return;
+                    }
+                    budget -= remaining;
+                    motion.run();
+                    motion = null;
+                }
+                if(count == 0) {
+                    break;
+                }
+                count--;
+                long start = System.nanoTime();
+                Runnable change = pendingCommits.poll();
+                if(change instanceof Motion) {
+                    motion = (Motion)change;
+                }
+                else {
+                    change.run();
+                }
+                instrumentation.applied(System.nanoTime() - start);
+            }
+            if(!pendingCommits.isEmpty()) {
+                return;
+            }
+
+            // out of changes; keep the rest of the frame for the next one
+            clock = now - (long)(budget * 1e6);
+            // clear the flag first so that a change committed meanwhile is
+            // never left behind
+            commitScheduled.set(false);
+            if(pendingCommits.isEmpty() ||
+                    !commitScheduled.compareAndSet(false, true)) {
+                stop();
+            }
+        }
+    }
+
+    /**
+     * A queued change that does nothing but notify any threads waiting for
+     * it, and therefore for every change committed before it, to be applied.
+     */
+    private class Barrier implements Runnable {
+        /**
+         * A boolean that indicates whether or not the barrier has been
+         * reached.
+         */
+        private boolean passed;
 
-            if(stage != null) {
-                stage.setTitle(title);
+        /**
+         * Notifies any threads waiting for the barrier.
+         */
+        @Override
+        public void run() {
+            synchronized(Turtle.this) {
+                passed = true;
+                Turtle.this.notifyAll();
+            }
+        }
+
+        /**
+         * Waits for notification that the barrier has been reached.
+         */
+        private void await() {
+            synchronized(Turtle.this) {
+                while(!passed) {
+                    Turtle.this.waitForNotify();
+                }
             }
         }
     }
@@ -0,0 +1,134 @@
+/*
+ * A snapshot of a Turtle's metrics.
+ */
+package turtle;
+
+import javafx.util.Duration;
+
+/**
+ * An immutable snapshot of the metrics collected by a {@link Turtle}; see
+ * {@link Turtle#metrics()}.
+ */
+public final class TurtleMetrics {
+    /**
+     * The number of commands that the Turtle has executed.
+     */
+    private final long commandCount;
+
+    /**
+     * The number of lines and arcs that the Turtle has drawn.
+     */
+    private final long segmentCount;
+
+    /**
+     * The number of nodes in the scene of the Turtle's world.
+     */
+    private final int nodeCount;
+
+    /**
+     * The number of elements in the path of the fill in progress.
+     */
+    private final int fillPathElementCount;
+
+    /**
+     * The mean round trip latency of recent commands.
+     */
+    private final Duration meanLatency;
+
+    /**
+     * The 99th percentile round trip latency of recent commands.
+     */
+    private final Duration p99Latency;
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param commandCount The number of commands executed.
+     * @param segmentCount The number of lines and arcs drawn.
+     * @param nodeCount The number of nodes in the scene.
+     * @param fillPathElementCount The number of elements in the path of the
+     *                             fill in progress.
+     * @param meanLatency The mean round trip latency.
+     * @param p99Latency The 99th percentile round trip latency.
+     */
+    TurtleMetrics(long commandCount, long segmentCount, int nodeCount,
+                  int fillPathElementCount, Duration meanLatency,
+                  Duration p99Latency) {
+        this.commandCount = commandCount;
+        this.segmentCount = segmentCount;
+        this.nodeCount = nodeCount;
+        this.fillPathElementCount = fillPathElementCount;
+        this.meanLatency = meanLatency;
+        this.p99Latency = p99Latency;
+    }
+
+    /**
+     * Returns the number of commands that the Turtle has executed.
+     *
+     * @return The number of commands executed.
+     */
+    public long commandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Returns the number of lines and arcs that the Turtle has drawn.
+     *
+     * @return The number of segments drawn.
+     */
+    public long segmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Returns the number of JavaFX nodes alive in the scene of the world,
+     * which is shared by every Turtle; zero if the world is not displayed.
+     *
+     * @return The number of nodes in the scene.
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of elements in the path of the fill that the Turtle
+     * is currently drawing; zero if it is not filling.
+     *
+     * @return The number of elements in the fill path.
+     */
+    public int fillPathElementCount() {
+        return fillPathElementCount;
+    }
+
+    /**
+     * Returns the mean time from a command being issued until its changes
+     * were applied to the scene, over a sample of recent commands.
+     *
+     * @return The mean round trip latency; zero if nothing was sampled.
+     */
+    public Duration meanLatency() {
+        return meanLatency;
+    }
+
+    /**
+     * Returns the 99th percentile of the time from a command being issued
+     * until its changes were applied to the scene, over a sample of recent
+     * commands.
+     *
+     * @return The 99th percentile round trip latency; zero if nothing was
+     *         sampled.
+     */
+    public Duration p99Latency() {
+        return p99Latency;
+    }
+
+    @Override
+    public String toString() {
+        return "TurtleMetrics[commands=" + commandCount +
+                ", segments=" + segmentCount +
+                ", nodes=" + nodeCount +
+                ", fillPathElements=" + fillPathElementCount +
+                ", meanLatency=" + meanLatency +
+                ", p99Latency=" + p99Latency + "]";
+    }
+}
@@ -0,0 +1,596 @@
+/*
+ * The world shared by all of the Turtles: the window, the scene and the
+ * drawing.
+ */
+package turtle;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.Transform;
+import javafx.stage.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The world into which every {@link Turtle} draws. The world owns the JavaFX
+ * application and its window, the scene, and the {@link Renderer} for the
+ * drawing; each Turtle owns only its own state and arrowhead. The scene is
+ * layered, from bottom to top: the finished drawing, the lines that are
+ * currently being animated, the Turtles' stamps and their arrowheads.
+ *
+ * The drawing and the animated lines are in the drawing's coordinates (the
+ * Turtle's world with the y axis pointing down) and are mapped onto the
+ * screen by a single transform, the view, which follows the world
+ * coordinates. The stamps and the arrowheads are in the screen's
+ * coordinates so that they keep their size whatever the world coordinates
+ * are.
+ *
+ * Methods that change the scene must be called in the JavaFX application
+ * thread.
+ */
+class World {
+    /**
+     * The one and only world.
+     */
+    private static final World WORLD = new World();
+
+    /**
+     * The JavaFX group to which all shapes are added to be rendered.
+     */
+    private Group root;
+
+    /**
+     * The JavaFX group that holds the renderers' layers and the overlay, to
+     * which the view is applied.
+     */
+    private Group drawing;
+
+    /**
+     * The JavaFX group, between the drawing and the arrowheads, that holds
+     * the lines that are currently being animated.
+     */
+    private Group overlay;
+
+    /**
+     * The JavaFX group that holds the Turtles' arrowheads.
+     */
+    private Group turtles;
+
+    /**
+     * Draws the Turtles' stamps, between the drawing and the arrowheads.
+     */
+    private StampLayer stamps;
+
+    /**
+     * Hands out the ids of the Turtles' stamps; see {@link #nextStamp()}.
+     */
+    private final AtomicInteger stampIds;
+
+    /**
+     * Renders the finished lines, fills and text beneath the Turtles.
+     */
+    private Renderer renderer;
+
+    /**
+     * Every renderer whose layer is in the drawing, including those of
+     * earlier render modes, which must still follow the view. Only used in
+     * the JavaFX application thread.
+     */
+    private final List<Renderer> renderers;
+
+    /**
+     * The render mode; either {@link Turtle#RENDER_NODES} or
+     * {@link Turtle#RENDER_CANVAS}.
+     */
+    private int renderMode;
+
+    /**
+     * The current visibility of the world; false if the world is not
+     * currently being displayed.
+     */
+    private volatile boolean notDisplayed;
+
+    /**
+     * Starts the JavaFX toolkit. Runs at most once, either in the thread
+     * that first displays the world or earlier in a background thread; see
+     * {@link #prewarm()}.
+     */
+    private final FutureTask<Void> toolkit;
+
+    /**
+     * The JavaFX application in which the Turtles run. Made when the world
+     * is first displayed.
+     */
+    private TurtleApp application;
+
+    /**
+     * The background color of the world.
+     */
+    private volatile Color background;
+
+    /**
+     * The transform from the drawing's coordinates to the screen's for the
+     * current world coordinates. A new transform is made whenever they
+     * change, so a transform is never modified once it is published.
+     */
+    private volatile Transform view;
+
+    /**
+     * The view currently applied to the drawing. Only used in the JavaFX
+     * application thread.
+     */
+    private Transform shownView;
+
+    /**
+     * Creates the world. It is not displayed until a Turtle starts drawing.
+     */
+    private World() {
+        renderMode = Turtle.RENDER_NODES;
+        notDisplayed = true;
+        toolkit = new FutureTask<>(() -> Platform.startup(() -> {
+        }), null);
+        background = Color.WHITE;
+        stampIds = new AtomicInteger();
+        renderers = new ArrayList<>();
+    }
+
+    /**
+     * Returns the world shared by all of the Turtles.
+     *
+     * @return The world.
+     */
+    static World getWorld() {
+        return WORLD;
+    }
+
+    /**
+     * Returns whether or not the world is currently displayed.
+     *
+     * @return True if the world is displayed, false otherwise.
+     */
+    boolean isDisplayed() {
+        return !notDisplayed;
+    }
+
+    /**
+     * Sets the render mode. If the world is already displayed, a new layer
+     * is added on top of the existing drawing for the new renderer.
+     *
+     * @param renderMode Either {@link Turtle#RENDER_NODES} or
+     *                   {@link Turtle#RENDER_CANVAS}.
+     */
+    synchronized void renderMode(int renderMode) {
+        if(renderMode == this.renderMode) {
+            return;
+        }
+        this.renderMode = renderMode;
+
+        if(!notDisplayed) {
+            // draw on top of the old renderer's layer from now on
+            Renderer newRenderer = makeRenderer();
+            Platform.runLater(() -> {
+                drawing.getChildren().add(
+                        drawing.getChildren().indexOf(overlay),
+                        newRenderer.getLayer());
+                renderer = newRenderer;
+                renderers.add(newRenderer);
+                updateView();
+            });
+        }
+    }
+
+    /**
+     * Returns the current render mode.
+     *
+     * @return The current render mode.
+     */
+    synchronized int renderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Returns the renderer for the drawing. Must be called in the JavaFX
+     * application thread.
+     *
+     * @return The current {@link Renderer}.
+     */
+    Renderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Returns the group that holds the lines that are currently being
+     * animated. Must be called in the JavaFX application thread.
+     *
+     * @return The overlay group.
+     */
+    Group getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Returns the layer that draws the Turtles' stamps. Must be called in
+     * the JavaFX application thread.
+     *
+     * @return The stamp layer.
+     */
+    StampLayer getStamps() {
+        return stamps;
+    }
+
+    /**
+     * Returns a new id for a stamp, never returned before. May be called in
+     * any thread, whether or not the world is displayed.
+     *
+     * @return The id.
+     */
+    int nextStamp() {
+        return stampIds.getAndIncrement();
+    }
+
+    /**
+     * Adds a Turtle's arrowhead to the world. Must be called in the JavaFX
+     * application thread.
+     *
+     * @param shape The arrowhead.
+     */
+    void addTurtle(Node shape) {
+        turtles.getChildren().add(shape);
+    }
+
+    /**
+     * Removes a Turtle's arrowhead from the world. Must be called in the
+     * JavaFX application thread.
+     *
+     * @param shape The arrowhead.
+     */
+    void removeTurtle(Node shape) {
+        turtles.getChildren().remove(shape);
+    }
+
+    /**
+     * Updates the title of the world's window. Must be called in the JavaFX
+     * application thread.
+     *
+     * @param title The new title.
+     */
+    void setTitle(String title) {
+        application.setTitle(title);
+    }
+
+    /**
+     * Returns the background color of the world.
+     *
+     * @return The background color.
+     */
+    Color getBackground() {
+        return background;
+    }
+
+    /**
+     * Sets the background color of the world. The color is shown the next
+     * time that {@link #showBackground()} is called.
+     *
+     * @param color The new background color.
+     */
+    void setBackground(Color color) {
+        background = color;
+    }
+
+    /**
+     * Shows the current background color. Must be called in the JavaFX
+     * application thread.
+     */
+    void showBackground() {
+        application.stage.getScene().setFill(background);
+    }
+
+    /**
+     * Returns the transform from the drawing's coordinates to the screen's
+     * for the current world coordinates. The transform is never modified,
+     * so it may be used in any thread.
+     *
+     * @return The current view.
+     */
+    Transform getView() {
+        return view;
+    }
+
+    /**
+     * Sets the world coordinates: the coordinates in the Turtle's world of
+     * the lower left and upper right corners of the screen. The new view is
+     * shown the next time that {@link #showView()} is called.
+     *
+     * @param llx The x coordinate of the lower left corner of the screen.
+     * @param lly The y coordinate of the lower left corner of the screen.
+     * @param urx The x coordinate of the upper right corner of the screen.
+     * @param ury The y coordinate of the upper right corner of the screen.
+     */
+    void setWorldCoordinates(double llx, double lly, double urx,
+                             double ury) {
+        view = makeView(llx, lly, urx, ury);
+    }
+
+    /**
+     * Shows the current view: applies it to the drawing and the stamps, and
+     * moves the arrowheads to the same places in the Turtle's world that
+     * they were in before. The view itself is a single transform, but each
+     * renderer must then show what has come into view: retained nodes cost
+     * time in proportion to the number that are visible, and a canvas is
+     * rasterized again from the part of its history that is visible, at
+     * the new level of detail; the stamps are all redrawn. Must be called
+     * in the JavaFX application thread.
+     */
+    void showView() {
+        Transform view = this.view;
+        if(view == shownView) {
+            return;
+        }
+        for(Node shape : turtles.getChildren()) {
+            // the drawing's coordinates of the arrowhead under the old view
+            double x = (shape.getTranslateX() - shownView.getTx()) /
+                    shownView.getMxx();
+            double y = (shape.getTranslateY() - shownView.getTy()) /
+                    shownView.getMyy();
+            shape.setTranslateX(view.getMxx() * x + view.getTx());
+            shape.setTranslateY(view.getMyy() * y + view.getTy());
+        }
+        drawing.getTransforms().setAll(view);
+        shownView = view;
+        updateView();
+    }
+
+    /**
+     * Counts the nodes in the world's scene. If called outside of the JavaFX
+     * application thread, blocks until the application thread has counted
+     * them.
+     *
+     * @return The number of nodes in the scene; zero if the world is not
+     *         displayed.
+     */
+    int nodeCount() {
+        if(notDisplayed) {
+            return 0;
+        }
+        if(Platform.isFxApplicationThread()) {
+            return countNodes(root);
+        }
+
+        FutureTask<Integer> count = new FutureTask<>(() -> countNodes(root));
+        Platform.runLater(count);
+        while(true) {
+            try {
+                return count.get();
+            } catch (InterruptedException e) {
+                // squash
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Starts the JavaFX toolkit in a background thread, so that it is
+     * already running, or at least part of the way there, by the time that
+     * the world is first displayed. Has no effect if the toolkit is already
+     * starting. The thread is a daemon, but once the toolkit has started it
+     * keeps the program running until {@link Platform#exit()} is called or
+     * the world's window is closed, so only programs that display the world
+     * should start it early.
+     */
+    void prewarm() {
+        Thread thread = new Thread(toolkit, "turtle-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * If the world is not yet displayed, this method will display it. This
+     * method blocks until the application has started.
+     */
+    synchronized void display() {
+        if(notDisplayed) {
+            createScene();
+            application = new TurtleApp();
+
+            // initialize the JavaFX platform, unless it has been started
+            // early, and wait for it
+            toolkit.run();
+            boolean started = false;
+            while(!started) {
+                try {
+                    toolkit.get();
+                    started = true;
+                } catch (InterruptedException e) {
+                    // squash
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+
+            // launch the Turtle application
+            Platform.runLater(() -> {
+                try {
+                    application.start(new Stage());
+                } catch (Exception e) {
+                    // squash
+                }
+                synchronized(World.this) {
+                    notDisplayed = false;
+                    World.this.notifyAll();
+                }
+            });
+            // wait for the application to start up
+            while(notDisplayed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // squash
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the JavaFX group to which all shapes are added.
+     */
+    private void createScene() {
+        if(view == null) {
+            // the origin is in the center of the screen
+            double width = Turtle.getWidth();
+            double height = Turtle.getHeight();
+            view = makeView(-width / 2, -height / 2, width / 2, height / 2);
+        }
+        shownView = view;
+
+        // the drawing beneath the lines being animated, beneath the Turtles
+        renderer = makeRenderer();
+        renderers.add(renderer);
+        overlay = new Group();
+        drawing = new Group(renderer.getLayer(), overlay);
+        drawing.getTransforms().setAll(shownView);
+        stamps = new StampLayer(Turtle.getWidth(), Turtle.getHeight(),
+                shownView);
+        turtles = new Group();
+        root = new Group(drawing, stamps.getLayer(), turtles);
+    }
+
+    /**
+     * Counts a node and all of its descendants.
+     *
+     * @param node The node at the root of the subtree to count.
+     *
+     * @return The number of nodes in the subtree.
+     */
+    private static int countNodes(Node node) {
+        int count = 1;
+        if(node instanceof Parent) {
+            for(Node child : ((Parent)node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Makes a new {@link Renderer} for the current render mode.
+     *
+     * @return The new {@link Renderer}.
+     */
+    private Renderer makeRenderer() {
+        Renderer renderer;
+        if(renderMode == Turtle.RENDER_CANVAS) {
+            renderer = new CanvasRenderer(Turtle.getWidth(),
+                    Turtle.getHeight());
+        }
+        else {
+            renderer = new NodeRenderer();
+        }
+        renderer.view(view, Turtle.getWidth(), Turtle.getHeight());
+        return renderer;
+    }
+
+    /**
+     * Makes the transform from the drawing's coordinates to the screen's for
+     * the specified world coordinates.
+     *
+     * @param llx The x coordinate of the lower left corner of the screen.
+     * @param lly The y coordinate of the lower left corner of the screen.
+     * @param urx The x coordinate of the upper right corner of the screen.
+     * @param ury The y coordinate of the upper right corner of the screen.
+     *
+     * @return The view.
+     */
+    private static Transform makeView(double llx, double lly, double urx,
+                                      double ury) {
+        double scaleX = Turtle.getWidth() / (urx - llx);
+        double scaleY = Turtle.getHeight() / (ury - lly);
+        // the drawing's y axis already points down
+        return new Affine(scaleX, 0, -scaleX * llx, 0, scaleY,
+                scaleY * ury);
+    }
+
+    /**
+     * Tells the renderers and the stamps which part of the drawing the
+     * scene shows, and how large the scene is. Must be called in the JavaFX
+     * application thread.
+     */
+    private void updateView() {
+        Scene scene = root.getScene();
+        double width = scene != null ? scene.getWidth() : Turtle.getWidth();
+        double height = scene != null ? scene.getHeight() :
+                Turtle.getHeight();
+        stamps.view(shownView, width, height);
+        for(Renderer layer : renderers) {
+            layer.view(shownView, width, height);
+        }
+    }
+
+    /**
+     * The Turtle application. Displays the Turtle's world in a JavaFX window.
+     */
+    private class TurtleApp extends Application {
+        /**
+         * The main {@link Stage} for the application.
+         */
+        private Stage stage;
+
+        /**
+         * The title of the application.
+         */
+        private String title;
+
+        /**
+         * Constructs the app.
+         */
+        TurtleApp() {
+            // default title
+            title = "JTurtle!";
+        }
+
+        /**
+         * Starts the application.
+         *
+         * @param primaryStage The {@link Stage} on which the Turtle will
+         *                     draw.
+         */
+        @Override
+        public void start(Stage primaryStage) {
+            Scene scene = new Scene(root, Turtle.getWidth(),
+                    Turtle.getHeight(), background);
+            // attach whatever comes into view when the window is resized
+            scene.widthProperty().addListener(o -> updateView());
+            scene.heightProperty().addListener(o -> updateView());
+
+            stage = primaryStage;
+
+            stage.setTitle(title);
+            stage.setScene(scene);
+            stage.sizeToScene();
+            stage.show();
+        }
+
+        /**
+         * Updates the title used by the primary stage.
+         *
+         * @param title The new title for the stage.
+         */
+        public void setTitle(String title) {
+            this.title = title;
+
+            if(stage != null) {
+                stage.setTitle(title);
+            }
+        }
+    }
+}
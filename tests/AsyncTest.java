@@ -0,0 +1,15 @@
+import static turtle.Turtle.*;
+
+public class AsyncTest {
+    public static void main(String[] args) {
+        Turtle.async(true);
+        Turtle.speed(10);
+        for(int i=0; i<36; i++) {
+            Turtle.forward(200);
+            Turtle.left(170);
+        }
+        System.out.println("queued");
+        Turtle.flush();
+        System.out.println("drawn");
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+import static turtle.Turtle.*;
+
+public class BulkTest {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Turtle.speed(SPEED_FASTEST);
+        Turtle.penColor("purple");
+
+        // a spiral of (x, y) points
+        long start = System.nanoTime();
+        Turtle.goTo(IntStream.range(0, count).asDoubleStream()
+                .flatMap(i -> {
+                    double radians = i / 1000.0;
+                    double radius = 300.0 * i / count;
+                    return DoubleStream.of(
+                            radius * Math.cos(radians),
+                            radius * Math.sin(radians));
+                }));
+        Turtle.flush();
+        System.out.println(count + " points drawn in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+
+        // (distance, degrees) pairs
+        Turtle.penColor("orange");
+        double[] steps = new double[20000 * 2];
+        for(int i=0; i<20000; i++) {
+            steps[i * 2] = i / 100.0;
+            steps[i * 2 + 1] = 59;
+        }
+        start = System.nanoTime();
+        Turtle.walk(steps);
+        Turtle.flush();
+        System.out.println("20000 moves and turns drawn in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+}
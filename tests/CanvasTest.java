@@ -0,0 +1,17 @@
+import static turtle.Turtle.*;
+
+public class CanvasTest {
+    public static void main(String[] args) {
+        Turtle.renderMode(RENDER_CANVAS);
+        Turtle.speed(0);
+        Turtle.penColor("blue");
+        Turtle.fillColor("yellow");
+        Turtle.beginFill();
+        for(int i=0; i<36; i++) {
+            Turtle.forward(300);
+            Turtle.left(170);
+        }
+        Turtle.endFill();
+        Turtle.drawText("Rasterized!");
+    }
+}
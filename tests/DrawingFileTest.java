@@ -0,0 +1,57 @@
+import turtle.CommandBuffer;
+import turtle.DrawingReader;
+import turtle.DrawingWriter;
+import turtle.PngWriter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static turtle.Turtle.*;
+
+public class DrawingFileTest {
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Path path = Paths.get("test.turtle");
+        Turtle.headless(true);
+
+        long start = System.nanoTime();
+        try(DrawingWriter drawing = new DrawingWriter(path)) {
+            Turtle.record(drawing);
+
+            Turtle.bgcolor("lightyellow");
+            Turtle.fillColor("orange");
+            Turtle.beginFill();
+            Turtle.circle(100);
+            Turtle.endFill();
+            Turtle.drawText("saved");
+
+            Turtle.penColor("blue");
+            for(int i=0; i<count; i++) {
+                Turtle.forward(i % 300);
+                Turtle.left(91);
+            }
+            Turtle.stopRecording(drawing);
+        }
+        Turtle.getCommandBuffer().clear();
+        long elapsed = System.nanoTime() - start;
+        System.out.println("saved " + Files.size(path) + " bytes in "
+                + (elapsed / 1000000) + "ms");
+
+        start = System.nanoTime();
+        CommandBuffer loaded = new CommandBuffer();
+        DrawingReader.replay(path, loaded);
+        elapsed = System.nanoTime() - start;
+        System.out.println("loaded " + loaded.size() + " commands and "
+                + loaded.segmentCount() + " segments in "
+                + (elapsed / 1000000) + "ms");
+        loaded.clear();
+
+        try(PngWriter png = new PngWriter(
+                new FileOutputStream("test.png"))) {
+            DrawingReader.replay(path, png);
+        }
+    }
+}
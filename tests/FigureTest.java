@@ -0,0 +1,68 @@
+import turtle.Figure;
+
+import static turtle.Turtle.*;
+
+public class FigureTest {
+    /**
+     * H-trees of each depth, each built from four of the one before.
+     */
+    private static Figure[] trees;
+
+    public static void drawHTree(double length, int depth) {
+        Turtle.forward(length / 2);
+        Turtle.left(90);
+        Turtle.forward(length / 2);
+        Turtle.right(90);
+
+        Turtle.place(trees[depth - 1], 0.5);
+
+        Turtle.right(90);
+        Turtle.forward(length);
+        Turtle.left(90);
+
+        Turtle.place(trees[depth - 1], 0.5);
+
+        Turtle.left(90);
+        Turtle.forward(length / 2);
+        Turtle.left(90);
+        Turtle.forward(length);
+        Turtle.right(90);
+        Turtle.forward(length / 2);
+        Turtle.right(90);
+
+        Turtle.place(trees[depth - 1], 0.5);
+
+        Turtle.right(90);
+        Turtle.forward(length);
+        Turtle.left(90);
+
+        Turtle.place(trees[depth - 1], 0.5);
+
+        Turtle.left(90);
+        Turtle.forward(length / 2);
+        Turtle.right(90);
+        Turtle.forward(length / 2);
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        Turtle.speed(SPEED_FASTEST);
+        Turtle.penColor("orange");
+
+        long start = System.nanoTime();
+        trees = new Figure[depth + 1];
+        trees[0] = Turtle.figure(() -> {});
+        for(int i=1; i<=depth; i++) {
+            int level = i;
+            trees[i] = Turtle.figure(() -> drawHTree(400, level));
+        }
+
+        // the whole tree is a single image
+        Turtle.place(trees[depth]);
+        Turtle.flush();
+        System.out.println("H-tree of depth " + depth + " with "
+                + trees[depth].size() + " commands drawn in "
+                + (System.nanoTime() - start) / 1000000 + "ms, "
+                + Turtle.metrics().nodeCount() + " nodes");
+    }
+}
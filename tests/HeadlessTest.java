@@ -0,0 +1,18 @@
+import static turtle.Turtle.*;
+
+public class HeadlessTest {
+    public static void main(String[] args) {
+        Turtle.headless(true);
+
+        long start = System.nanoTime();
+        Turtle.penColor("orange");
+        for(int i=0; i<1000000; i++) {
+            Turtle.forward(100);
+            Turtle.left(91);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(Turtle.getCommandBuffer().segmentCount() +
+                " segments recorded in " + (elapsed / 1000000) + "ms");
+    }
+}
@@ -0,0 +1,42 @@
+import turtle.DrawnElement;
+import turtle.SpatialIndex;
+
+import static turtle.Turtle.*;
+
+public class IndexTest {
+    public static void main(String[] args) {
+        Turtle.headless(true);
+
+        SpatialIndex index = new SpatialIndex();
+        Turtle.record(index);
+
+        // a grid of squares much larger than the window
+        Turtle.penColor("blue");
+        Turtle.fillColor("orange");
+        for(int row=-50; row<50; row++) {
+            for(int column=-50; column<50; column++) {
+                Turtle.penUp();
+                Turtle.setPosition(column * 100, row * 100);
+                Turtle.penDown();
+                Turtle.beginFill();
+                for(int i=0; i<4; i++) {
+                    Turtle.forward(50);
+                    Turtle.left(90);
+                }
+                Turtle.endFill();
+            }
+        }
+        Turtle.drawText("the end");
+        Turtle.stopRecording(index);
+
+        long start = System.nanoTime();
+        int visible = index.query(-300, -300, 300, 300).size();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(visible + " of " + index.size() +
+                " elements on screen, found in " + (elapsed / 1000) + "us");
+
+        for(DrawnElement element : index.query(25, 25)) {
+            System.out.println("under (25, 25): " + element);
+        }
+    }
+}
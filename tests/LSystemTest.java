@@ -0,0 +1,32 @@
+import turtle.LSystem;
+
+import static turtle.Turtle.*;
+
+public class LSystemTest {
+    public static void main(String[] args) {
+        boolean parallel = args.length > 0 && args[0].equals("parallel");
+        Turtle.speed(SPEED_FASTEST);
+
+        // a dragon curve of a million lines
+        LSystem dragon = new LSystem("FX", 0.5, 90);
+        dragon.rule('X', "X+YF+");
+        dragon.rule('Y', "-FX-Y");
+        Turtle.penColor("purple");
+        long start = System.nanoTime();
+        dragon.draw(Turtle, 20, parallel);
+        Turtle.flush();
+        System.out.println(dragon.length(20) + " symbols drawn in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+
+        // a plant, with branches
+        LSystem plant = new LSystem("X", 3, 25);
+        plant.rule('X', "F+[[X]-X]-F[-FX]+X");
+        plant.rule('F', "FF");
+        Turtle.penUp();
+        Turtle.goTo(-300, -380);
+        Turtle.setHeading(65);
+        Turtle.penDown();
+        Turtle.penColor("green");
+        plant.draw(Turtle, 6, parallel);
+    }
+}
@@ -0,0 +1,15 @@
+import static turtle.Turtle.*;
+
+public class MetricsTest {
+    public static void main(String[] args) {
+        Turtle.speed(0);
+        Turtle.penColor("blue");
+        for(int i=0; i<360; i++) {
+            Turtle.forward(200);
+            Turtle.left(179);
+        }
+        Turtle.flush();
+
+        System.out.println(Turtle.metrics());
+    }
+}
@@ -0,0 +1,47 @@
+import turtle.PngWriter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static turtle.Turtle.*;
+
+public class PngTest {
+    public static void main(String[] args) throws IOException {
+        // the size of the image; try 16000 for a poster
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Turtle.headless(true);
+
+        try(PngWriter png = new PngWriter(new FileOutputStream("test.png"),
+                size, size)) {
+            Turtle.record(png);
+
+            Turtle.bgcolor("lightyellow");
+            Turtle.penColor("blue");
+            Turtle.fillColor("orange");
+            Turtle.beginFill();
+            for(int i=0; i<5; i++) {
+                Turtle.forward(300);
+                Turtle.right(144);
+            }
+            Turtle.endFill();
+
+            Turtle.penUp();
+            Turtle.setPosition(-200, -250);
+            Turtle.penDown();
+            Turtle.penSize(5);
+            Turtle.fillColor("green");
+            Turtle.beginFill();
+            Turtle.circle(80);
+            Turtle.endFill();
+
+            Turtle.penSize(1);
+            Turtle.penColor("red");
+            for(int i=0; i<360; i++) {
+                Turtle.forward(i * 0.5);
+                Turtle.left(59);
+            }
+
+            Turtle.stopRecording(png);
+        }
+    }
+}
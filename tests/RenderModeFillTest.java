@@ -0,0 +1,40 @@
+import static turtle.Turtle.*;
+
+public class RenderModeFillTest {
+    public static void main(String[] args) {
+        Turtle.speed(0);
+        Turtle.penColor("blue");
+        Turtle.fillColor("yellow");
+        // the fill begins on the nodes and ends after the switch, so it
+        // must still be filled beneath the star on the nodes' layer
+        Turtle.beginFill();
+        for(int i=0; i<18; i++) {
+            Turtle.forward(300);
+            Turtle.left(170);
+        }
+        Turtle.renderMode(RENDER_CANVAS);
+        for(int i=0; i<18; i++) {
+            Turtle.forward(300);
+            Turtle.left(170);
+        }
+        Turtle.endFill();
+
+        // and the other way around
+        Turtle.up();
+        Turtle.setPosition(-250, -250);
+        Turtle.down();
+        Turtle.fillColor("red");
+        Turtle.beginFill();
+        for(int i=0; i<2; i++) {
+            Turtle.forward(100);
+            Turtle.left(90);
+        }
+        Turtle.renderMode(RENDER_NODES);
+        for(int i=0; i<2; i++) {
+            Turtle.forward(100);
+            Turtle.left(90);
+        }
+        Turtle.endFill();
+        Turtle.drawText("Filled across render modes");
+    }
+}
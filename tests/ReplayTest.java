@@ -0,0 +1,53 @@
+import turtle.CommandBuffer;
+import turtle.Replay;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static turtle.Turtle.*;
+
+public class ReplayTest {
+    public static void main(String[] args) throws IOException {
+        Turtle.headless(true);
+
+        Turtle.bgcolor("lightyellow");
+        Turtle.fillColor("orange");
+        Turtle.beginFill();
+        Turtle.circle(100);
+        Turtle.endFill();
+        Turtle.penColor("blue");
+        for(int i=0; i<3000; i++) {
+            Turtle.forward(i / 8.0);
+            Turtle.left(91);
+        }
+
+        CommandBuffer commands = Turtle.getCommandBuffer();
+        long start = System.nanoTime();
+        Replay replay = new Replay(commands);
+        System.out.println("indexed " + replay.size() + " commands in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+
+        int[] positions = {4500, 10, replay.size(), 1000};
+        for(int position : positions) {
+            start = System.nanoTime();
+            replay.seek(position);
+            System.out.println("seek to " + position + " in "
+                    + (System.nanoTime() - start) / 1000 + "us: ("
+                    + replay.getX() + ", " + replay.getY() + ") heading "
+                    + replay.getHeading() + ", filling "
+                    + replay.isFilling());
+        }
+
+        replay.speed(1500);
+        replay.seek(0);
+        for(int frame=0; frame<3; frame++) {
+            replay.advance(1.0);
+            try(OutputStream out = new FileOutputStream(
+                    "replay" + frame + ".png")) {
+                replay.writeFrame(out);
+            }
+        }
+        System.out.println("played to " + replay.position());
+    }
+}
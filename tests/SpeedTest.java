@@ -0,0 +1,19 @@
+import static turtle.Turtle.*;
+
+public class SpeedTest {
+    public static void main(String[] args) {
+        Turtle.speed(SPEED_FASTEST);
+        Turtle.penColor("purple");
+
+        long start = System.nanoTime();
+        for(int i=0; i<20000; i++) {
+            Turtle.forward(i / 100.0);
+            Turtle.left(59);
+        }
+        Turtle.flush();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("20000 moves and turns drawn in " +
+                (elapsed / 1000000) + "ms");
+    }
+}
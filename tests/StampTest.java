@@ -0,0 +1,33 @@
+import static turtle.Turtle.*;
+
+public class StampTest {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Turtle.speed(SPEED_FASTEST);
+        Turtle.penUp();
+
+        // a sunflower: every stamp at the golden angle from the one before
+        long start = System.nanoTime();
+        int[] ids = new int[count];
+        for(int i=0; i<count; i++) {
+            double radius = Math.sqrt(i) * 300 / Math.sqrt(count);
+            double angle = Math.toRadians(i * 137.508);
+            Turtle.setPosition(radius * Math.cos(angle),
+                    radius * Math.sin(angle));
+            Turtle.setHeading(i * 137.508);
+            Turtle.fillColor(i % 3 / 2.0, 0.5, 1 - i % 5 / 4.0);
+            ids[i] = Turtle.stamp();
+        }
+        Turtle.flush();
+        System.out.println(count + " stamps drawn in "
+                + (System.nanoTime() - start) / 1000000 + "ms, "
+                + Turtle.metrics().nodeCount() + " nodes");
+
+        // clear every other stamp, then all of them
+        for(int i=0; i<count; i+=2) {
+            Turtle.clearStamp(ids[i]);
+        }
+        Turtle.flush();
+        Turtle.clearStamps();
+    }
+}
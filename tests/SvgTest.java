@@ -0,0 +1,35 @@
+import turtle.SvgWriter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static turtle.Turtle.*;
+
+public class SvgTest {
+    public static void main(String[] args) throws IOException {
+        Turtle.headless(true);
+
+        try(SvgWriter svg = new SvgWriter(new FileOutputStream("test.svg"))) {
+            Turtle.record(svg);
+
+            Turtle.bgcolor("lightyellow");
+            Turtle.penColor("blue");
+            Turtle.fillColor("orange");
+            Turtle.beginFill();
+            for(int i=0; i<5; i++) {
+                Turtle.forward(150);
+                Turtle.right(144);
+            }
+            Turtle.endFill();
+
+            Turtle.penUp();
+            Turtle.setPosition(-200, -200);
+            Turtle.penDown();
+            Turtle.penSize(3);
+            Turtle.circle(50);
+            Turtle.drawText("Hello, SVG & friends");
+
+            Turtle.stopRecording(svg);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+import turtle.Turtle;
+
+public class SwarmTest {
+    public static void main(String[] args) {
+        String[] colors = {"red", "orange", "green", "blue", "purple"};
+        for(int t=0; t<colors.length; t++) {
+            Turtle turtle = new Turtle();
+            turtle.penColor(colors[t]);
+            turtle.left(t * 72);
+            new Thread(() -> {
+                for(int i=0; i<20; i++) {
+                    turtle.forward(150);
+                    turtle.left(162);
+                }
+            }).start();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import static turtle.Turtle.*;
+
+public class ZoomTest {
+    public static void main(String[] args) throws InterruptedException {
+        Turtle.speed(0);
+        Turtle.penColor("purple");
+        for(int i=0; i<2000; i++) {
+            Turtle.forward(i * 0.2);
+            Turtle.left(59);
+        }
+        Turtle.flush();
+
+        // zoom in on the center of the spiral and back out again
+        for(int size=400; size>=25; size/=2) {
+            Thread.sleep(500);
+            Turtle.setWorldCoordinates(-size, -size, size, size);
+        }
+        for(int size=50; size<=800; size*=2) {
+            Thread.sleep(500);
+            Turtle.setWorldCoordinates(-size, -size, size, size);
+        }
+    }
+}